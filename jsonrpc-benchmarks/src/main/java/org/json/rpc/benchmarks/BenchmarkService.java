@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+/**
+ * Methods called by the benchmarks, covering strings, primitives, primitive
+ * arrays and structs.
+ */
+public interface BenchmarkService {
+
+    String echo(String value);
+
+    int sum(int[] values);
+
+    int add(int a, int b);
+
+    Record[] records(int count);
+
+    void ping();
+
+    class Record {
+        int id;
+        String name;
+        double score;
+        boolean active;
+
+        public Record() {
+        }
+    }
+}
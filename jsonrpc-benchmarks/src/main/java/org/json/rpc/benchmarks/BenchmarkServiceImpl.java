@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+public class BenchmarkServiceImpl implements BenchmarkService {
+
+    public String echo(String value) {
+        return value;
+    }
+
+    public int sum(int[] values) {
+        int sum = 0;
+        for (int v : values) {
+            sum += v;
+        }
+        return sum;
+    }
+
+    public int add(int a, int b) {
+        return a + b;
+    }
+
+    public Record[] records(int count) {
+        Record[] records = new Record[count];
+        for (int i = 0; i < count; i++) {
+            Record r = new Record();
+            r.id = i;
+            r.name = "record-" + i;
+            r.score = i * 0.5;
+            r.active = (i % 2 == 0);
+            records[i] = r;
+        }
+        return records;
+    }
+
+    public void ping() {
+    }
+}
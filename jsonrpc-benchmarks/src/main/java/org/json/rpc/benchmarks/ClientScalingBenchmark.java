@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+import org.json.rpc.client.JsonRpcClientTransport;
+import org.json.rpc.client.JsonRpcInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The client alone, one {@link JsonRpcInvoker} and one proxy shared by all
+ * threads, against a transport answering with a canned response. What is left
+ * to contend on is the invoker's shared state: the request ids, its Gson, the
+ * call descriptors and, for {@link #get}, the stubs and validated interfaces.
+ * <p/>
+ * Throughput should grow with the threads up to the number of cores, compare
+ * the variants of each benchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientScalingBenchmark {
+
+    private JsonRpcInvoker invoker;
+    private JsonRpcClientTransport transport;
+    private BenchmarkService service;
+
+    @Setup
+    public void setup() {
+        transport = new JsonRpcClientTransport() {
+            public String call(String requestData) {
+                return "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":42}";
+            }
+        };
+        invoker = new JsonRpcInvoker();
+        service = invoker.get(transport, "bench", BenchmarkService.class);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int call1() {
+        return service.add(40, 2);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public int call2() {
+        return service.add(40, 2);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int call4() {
+        return service.add(40, 2);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int call8() {
+        return service.add(40, 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BenchmarkService get() {
+        return invoker.get(transport, "bench", BenchmarkService.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BenchmarkService get4() {
+        return invoker.get(transport, "bench", BenchmarkService.class);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+import com.google.gson.Gson;
+import org.json.rpc.server.JsonRpcExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JsonRpcExecutor#execute} against an in-memory transport: parsing,
+ * dispatch, invocation and serialization of the response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExecutorBenchmark {
+
+    /**
+     * Approximate size of the parameters or result, in characters.
+     */
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    /**
+     * Handles registered on the executor, each with all methods of
+     * {@link BenchmarkService}.
+     */
+    @Param({"1", "64"})
+    public int handlers;
+
+    private JsonRpcExecutor executor;
+    private InMemoryServerTransport echo;
+    private InMemoryServerTransport sum;
+    private InMemoryServerTransport records;
+    private InMemoryServerTransport invalid;
+
+    @Setup
+    public void setup() {
+        executor = new JsonRpcExecutor();
+        BenchmarkService service = new BenchmarkServiceImpl();
+        for (int i = 0; i < handlers; i++) {
+            executor.addHandler("h" + i, service, BenchmarkService.class);
+        }
+
+        Gson gson = new Gson();
+        String handle = "h" + (handlers - 1);
+        echo = new InMemoryServerTransport(Payloads.request(handle + ".echo",
+                "[" + gson.toJson(Payloads.string(payloadSize)) + "]"));
+        sum = new InMemoryServerTransport(Payloads.request(handle + ".sum",
+                "[" + gson.toJson(Payloads.ints(payloadSize)) + "]"));
+        records = new InMemoryServerTransport(Payloads.request(handle + ".records",
+                "[" + Payloads.records(payloadSize) + "]"));
+        // parameters of the size of echo, with the method missing
+        invalid = new InMemoryServerTransport("{\"jsonrpc\":\"2.0\",\"id\":1,\"params\":["
+                + gson.toJson(Payloads.string(payloadSize)) + "]}");
+    }
+
+    @Benchmark
+    public String echo() {
+        executor.execute(echo);
+        return echo.getResponse();
+    }
+
+    @Benchmark
+    public String sum() {
+        executor.execute(sum);
+        return sum.getResponse();
+    }
+
+    @Benchmark
+    public String records() {
+        executor.execute(records);
+        return records.getResponse();
+    }
+
+    @Benchmark
+    public String invalid() {
+        executor.execute(invalid);
+        return invalid.getResponse();
+    }
+}
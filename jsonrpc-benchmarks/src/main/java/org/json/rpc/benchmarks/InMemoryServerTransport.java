@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+import org.json.rpc.server.JsonRpcServerTransport;
+
+/**
+ * Server transport reading a fixed request and keeping the last response.
+ */
+public class InMemoryServerTransport implements JsonRpcServerTransport {
+
+    private String requestData;
+    private String responseData;
+
+    public InMemoryServerTransport(String requestData) {
+        this.requestData = requestData;
+    }
+
+    public void setRequest(String requestData) {
+        this.requestData = requestData;
+    }
+
+    public String getResponse() {
+        return responseData;
+    }
+
+    public String readRequest() {
+        return requestData;
+    }
+
+    public void writeResponse(String responseData) {
+        this.responseData = responseData;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+import org.json.rpc.client.InProcessJsonRpcClientTransport;
+import org.json.rpc.client.JsonRpcClientTransport;
+import org.json.rpc.client.JsonRpcInvoker;
+import org.json.rpc.commons.JsonRpcCopyStrategy;
+import org.json.rpc.server.JsonRpcExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same proxy calls as {@link InvokerBenchmark}, once through JSON, once
+ * through {@link InProcessJsonRpcClientTransport} with each copy strategy, and
+ * once straight on the handler, which is what the in-process calls aim at.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InProcessBenchmark {
+
+    @Param({"direct", "PASS_THROUGH", "DEEP", "json"})
+    public String path;
+
+    @Param({"16", "1024"})
+    public int payloadSize;
+
+    private BenchmarkService service;
+    private String string;
+    private int count;
+
+    @Setup
+    public void setup() {
+        final JsonRpcExecutor executor = new JsonRpcExecutor();
+        BenchmarkServiceImpl handler = new BenchmarkServiceImpl();
+        executor.addHandler("bench", handler, BenchmarkService.class);
+
+        JsonRpcClientTransport transport;
+        if ("direct".equals(path)) {
+            service = handler;
+            transport = null;
+        } else if ("json".equals(path)) {
+            transport = new JsonRpcClientTransport() {
+                public String call(String requestData) {
+                    InMemoryServerTransport server = new InMemoryServerTransport(requestData);
+                    executor.execute(server);
+                    return server.getResponse();
+                }
+            };
+        } else {
+            transport = new InProcessJsonRpcClientTransport(executor, JsonRpcCopyStrategy.valueOf(path));
+        }
+        if (transport != null) {
+            service = new JsonRpcInvoker().get(transport, "bench", BenchmarkService.class);
+        }
+
+        string = Payloads.string(payloadSize);
+        count = Payloads.records(payloadSize);
+    }
+
+    @Benchmark
+    public int add() {
+        return service.add(40, 2);
+    }
+
+    @Benchmark
+    public String echo() {
+        return service.echo(string);
+    }
+
+    @Benchmark
+    public BenchmarkService.Record[] records() {
+        return service.records(count);
+    }
+}
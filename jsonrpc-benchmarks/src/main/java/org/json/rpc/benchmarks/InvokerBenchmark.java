@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+import org.json.rpc.client.JsonRpcClientTransport;
+import org.json.rpc.client.JsonRpcInvoker;
+import org.json.rpc.server.JsonRpcExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full round trip through a {@link JsonRpcInvoker} proxy and a
+ * {@link JsonRpcExecutor}, connected in memory so only the library is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InvokerBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private BenchmarkService service;
+    private String string;
+    private int[] ints;
+    private int count;
+
+    @Setup
+    public void setup() {
+        final JsonRpcExecutor executor = new JsonRpcExecutor();
+        executor.addHandler("bench", new BenchmarkServiceImpl(), BenchmarkService.class);
+
+        JsonRpcClientTransport transport = new JsonRpcClientTransport() {
+            public String call(String requestData) {
+                InMemoryServerTransport server = new InMemoryServerTransport(requestData);
+                executor.execute(server);
+                return server.getResponse();
+            }
+        };
+        service = new JsonRpcInvoker().get(transport, "bench", BenchmarkService.class);
+
+        string = Payloads.string(payloadSize);
+        ints = Payloads.ints(payloadSize);
+        count = Payloads.records(payloadSize);
+    }
+
+    @Benchmark
+    public String echo() {
+        return service.echo(string);
+    }
+
+    @Benchmark
+    public int sum() {
+        return service.sum(ints);
+    }
+
+    @Benchmark
+    public BenchmarkService.Record[] records() {
+        return service.records(count);
+    }
+}
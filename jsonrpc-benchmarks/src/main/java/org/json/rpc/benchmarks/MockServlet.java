@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Servlet requests and responses backed by memory, for benchmarks of the
+ * servlet transport.
+ */
+final class MockServlet {
+
+    private MockServlet() {
+    }
+
+    /**
+     * @return a request whose body is <code>data</code>, every time it is read
+     */
+    static HttpServletRequest request(final byte[] data) {
+        return mock(HttpServletRequest.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getInputStream".equals(method.getName())) {
+                    return new BytesInputStream(data);
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @return a response discarding what is written to it
+     */
+    static HttpServletResponse response() {
+        return mock(HttpServletResponse.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+                if ("getCharacterEncoding".equals(method.getName())) {
+                    return "UTF-8";
+                }
+                if ("getWriter".equals(method.getName())) {
+                    return new PrintWriter(new OutputStreamWriter(NullOutputStream.INSTANCE, "UTF-8"));
+                }
+                if ("getOutputStream".equals(method.getName())) {
+                    return NullOutputStream.INSTANCE;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private static <T> T mock(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private static final class BytesInputStream extends ServletInputStream {
+
+        private final ByteArrayInputStream in;
+
+        BytesInputStream(byte[] data) {
+            this.in = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, len);
+        }
+    }
+
+    private static final class NullOutputStream extends ServletOutputStream {
+
+        static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
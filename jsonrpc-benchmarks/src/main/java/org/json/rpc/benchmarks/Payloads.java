@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * ASCII string of <code>size</code> characters, without characters gson escapes.
+     */
+    public static String string(int size) {
+        StringBuilder buff = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            buff.append((char) ('a' + i % 26));
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Ints taking roughly <code>size</code> characters once serialized.
+     */
+    public static int[] ints(int size) {
+        int[] values = new int[Math.max(1, size / 8)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000000 + i;
+        }
+        return values;
+    }
+
+    /**
+     * Number of records taking roughly <code>size</code> characters once serialized.
+     */
+    public static int records(int size) {
+        return Math.max(1, size / 64);
+    }
+
+    public static String request(String method, String params) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"" + method + "\",\"params\":" + params + "}";
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.benchmarks;
+
+import org.json.rpc.server.JsonRpcExecutor;
+import org.json.rpc.server.JsonRpcServletTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A method taking and returning only primitives, called alone, which reads
+ * and writes the values directly, and within a one element batch, which goes
+ * through the element trees. The call alone is made in memory and through
+ * the servlet transport. Run with <code>-prof gc</code> to compare the
+ * garbage per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitiveCallBenchmark {
+
+    private JsonRpcExecutor executor;
+    private InMemoryServerTransport add;
+    private InMemoryServerTransport addInBatch;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+
+    @Setup
+    public void setup() {
+        executor = new JsonRpcExecutor();
+        executor.addHandler("h", new BenchmarkServiceImpl(), BenchmarkService.class);
+
+        String request = Payloads.request("h.add", "[40,2]");
+        add = new InMemoryServerTransport(request);
+        addInBatch = new InMemoryServerTransport("[" + request + "]");
+        try {
+            this.request = MockServlet.request(request.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        response = MockServlet.response();
+    }
+
+    @Benchmark
+    public String add() {
+        executor.execute(add);
+        return add.getResponse();
+    }
+
+    @Benchmark
+    public void addOverServlet() {
+        executor.execute(new JsonRpcServletTransport(request, response));
+    }
+
+    @Benchmark
+    public String addInBatch() {
+        executor.execute(addInBatch);
+        return addInBatch.getResponse();
+    }
+}
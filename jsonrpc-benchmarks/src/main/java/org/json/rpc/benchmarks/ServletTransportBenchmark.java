@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+import org.json.rpc.server.JsonRpcExecutor;
+import org.json.rpc.server.JsonRpcServletTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request and response I/O of {@link JsonRpcServletTransport}, and requests
+ * executed through it, against mock servlet requests and responses backed by
+ * memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServletTransportBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private byte[] requestData;
+    private String responseData;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private JsonRpcServletTransport transport;
+    private JsonRpcExecutor executor;
+
+    @Setup
+    public void setup() throws Exception {
+        String payload = "\"" + Payloads.string(payloadSize) + "\"";
+        requestData = Payloads.request("bench.echo", "[" + payload + "]").getBytes("UTF-8");
+        responseData = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":" + payload + "}";
+
+        request = MockServlet.request(requestData);
+        response = MockServlet.response();
+        transport = new JsonRpcServletTransport(request, response);
+
+        executor = new JsonRpcExecutor();
+        executor.addHandler("bench", new BenchmarkServiceImpl(), BenchmarkService.class);
+    }
+
+    @Benchmark
+    public String readRequest() throws Exception {
+        return transport.readRequest();
+    }
+
+    @Benchmark
+    public void writeResponse() throws Exception {
+        transport.writeResponse(responseData);
+    }
+
+    @Benchmark
+    public void execute() {
+        executor.execute(new JsonRpcServletTransport(request, response));
+    }
+}
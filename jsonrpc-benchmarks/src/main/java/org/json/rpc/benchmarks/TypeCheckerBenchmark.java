@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks;
+
+import org.json.rpc.commons.GsonTypeChecker;
+import org.json.rpc.commons.TypeChecker;
+import org.json.rpc.server.JsonRpcExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type validation done when handlers are registered and proxies created, over
+ * many distinct interfaces: copies of {@link BenchmarkService}, each defined
+ * by a class loader of its own. Every benchmark covers all the interfaces.
+ * <p/>
+ * The cold variants validate with a checker which has seen none of them, as
+ * at startup, the cached ones with a checker which has validated them all.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TypeCheckerBenchmark {
+
+    /**
+     * Distinct interfaces, each registered as a handler of its own.
+     */
+    @Param({"100", "500"})
+    public int interfaces;
+
+    private Class<?>[] classes;
+    private Object[] handlers;
+    private TypeChecker cached;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] bytes = readClass(BenchmarkService.class);
+        InvocationHandler unused = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        classes = new Class<?>[interfaces];
+        handlers = new Object[interfaces];
+        cached = new GsonTypeChecker();
+        for (int i = 0; i < interfaces; i++) {
+            InterfaceLoader loader = new InterfaceLoader(BenchmarkService.class, bytes);
+            classes[i] = loader.getInterface();
+            handlers[i] = Proxy.newProxyInstance(loader, new Class<?>[]{classes[i]}, unused);
+            cached.isValidInterface(classes[i], true);
+        }
+    }
+
+    @Benchmark
+    public int validateCold() {
+        return validate(new GsonTypeChecker());
+    }
+
+    @Benchmark
+    public int validateCached() {
+        return validate(cached);
+    }
+
+    /**
+     * Startup cost of an executor with a handler per interface.
+     */
+    @Benchmark
+    public JsonRpcExecutor registerCold() {
+        return register(new JsonRpcExecutor());
+    }
+
+    /**
+     * Same as {@link #registerCold}, with the validation cached, leaving the
+     * rest of the registration.
+     */
+    @Benchmark
+    public JsonRpcExecutor registerCached() {
+        return register(new JsonRpcExecutor(cached));
+    }
+
+    private int validate(TypeChecker checker) {
+        int valid = 0;
+        for (Class<?> clazz : classes) {
+            if (checker.isValidInterface(clazz, true)) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JsonRpcExecutor register(JsonRpcExecutor executor) {
+        for (int i = 0; i < classes.length; i++) {
+            executor.addHandler("h" + i, handlers[i], (Class<Object>) classes[i]);
+        }
+        return executor;
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buff = new byte[4096];
+            for (int n; (n = in.read(buff)) > 0; ) {
+                out.write(buff, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Defines a copy of an interface, the types it refers to come from the
+     * loader of the original.
+     */
+    private static final class InterfaceLoader extends ClassLoader {
+
+        private final String name;
+        private final byte[] bytes;
+        private Class<?> copy;
+
+        InterfaceLoader(Class<?> original, byte[] bytes) {
+            super(original.getClassLoader());
+            this.name = original.getName();
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+            if (!className.equals(name)) {
+                return super.loadClass(className, resolve);
+            }
+            return getInterface();
+        }
+
+        synchronized Class<?> getInterface() {
+            if (copy == null) {
+                copy = defineClass(name, bytes, 0, bytes.length);
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.json.rpc.server.JsonRpcServerTransport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Server transport over an exchange of the JDK built-in HTTP server.
+ */
+class HttpExchangeTransport implements JsonRpcServerTransport {
+
+    private static final int BUFF_LENGTH = 1024;
+
+    private final HttpExchange exchange;
+
+    HttpExchangeTransport(HttpExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    public String readRequest() throws Exception {
+        InputStream in = exchange.getRequestBody();
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buff = new byte[BUFF_LENGTH];
+            int n;
+            while ((n = in.read(buff)) > 0) {
+                bos.write(buff, 0, n);
+            }
+            return bos.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    public void writeResponse(String responseData) throws Exception {
+        byte[] data = responseData.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, data.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.json.rpc.benchmarks.BenchmarkService;
+import org.json.rpc.benchmarks.BenchmarkServiceImpl;
+import org.json.rpc.benchmarks.InMemoryServerTransport;
+import org.json.rpc.client.HttpJsonRpcClientTransport;
+import org.json.rpc.client.JsonRpcClientTransport;
+import org.json.rpc.server.JsonRpcExecutor;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Command line load generator driving a {@link JsonRpcClientTransport}
+ * against the benchmark service, by default served by a local
+ * {@link JsonRpcExecutor} over HTTP.
+ * <p/>
+ * Modes:
+ * <ul>
+ * <li><code>open</code>: requests arrive at random (Poisson) at the given rate,
+ * whether earlier ones completed or not</li>
+ * <li><code>constant</code>: requests are sent at a fixed interval</li>
+ * <li><code>closed</code>: <code>concurrency</code> workers send requests back to back</li>
+ * </ul>
+ * In the open modes latency is measured from the time a request was due, so
+ * a stalled server or generator can't hide its queueing delay (coordinated
+ * omission). In closed mode the correction needs the expected interval,
+ * derived from <code>--rate</code> when given. Corrected and raw latencies are
+ * written as HdrHistogram percentile distributions.
+ * <p/>
+ * Run with
+ * <code>java -cp target/benchmarks.jar org.json.rpc.benchmarks.load.LoadGenerator --mode open --rate 1000</code>
+ */
+public final class LoadGenerator {
+
+    enum Mode {
+        OPEN,
+        CONSTANT,
+        CLOSED
+    }
+
+    private static final String USAGE = "options:\n"
+            + "  --mode open|constant|closed   arrival model (default open)\n"
+            + "  --rate N                      requests per second, all workers together (default 1000)\n"
+            + "  --concurrency N               workers, or requests in flight for open modes (default 16)\n"
+            + "  --warmup S                    seconds of load before recording (default 5)\n"
+            + "  --duration S                  seconds of recorded load (default 30)\n"
+            + "  --mix M                       method weights (default echo=70,sum=20,records=10)\n"
+            + "  --payload P                   fixed:N or uniform:MIN-MAX characters (default fixed:1024)\n"
+            + "  --transport http|loopback     client transport (default http)\n"
+            + "  --url U                       remote server, instead of starting a local one\n"
+            + "  --server-threads N            threads of the local server (default 16)\n"
+            + "  --output F                    corrected histogram file (default latency.hgrm)\n";
+
+    private final JsonRpcClientTransport transport;
+    private final RequestMix mix;
+    private final Mode mode;
+    private final double rate;
+    private final int concurrency;
+    private final long warmup;
+    private final long duration;
+
+    private final Histogram corrected = new ConcurrentHistogram(3);
+    private final Histogram raw = new ConcurrentHistogram(3);
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private volatile long recordFrom;
+
+    LoadGenerator(JsonRpcClientTransport transport, RequestMix mix, Mode mode, double rate, int concurrency,
+                  long warmup, long duration) {
+        if (rate <= 0 && mode != Mode.CLOSED) {
+            throw new IllegalArgumentException("rate should be positive : " + rate);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency should be positive : " + concurrency);
+        }
+        this.transport = transport;
+        this.mix = mix;
+        this.mode = mode;
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.warmup = warmup;
+        this.duration = duration;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options;
+        try {
+            options = parse(args);
+            if (options.containsKey("help")) {
+                System.out.print(USAGE);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        Mode mode = Mode.valueOf(option(options, "mode", "open").toUpperCase());
+        double rate = Double.parseDouble(option(options, "rate", (mode == Mode.CLOSED ? "0" : "1000")));
+        int concurrency = Integer.parseInt(option(options, "concurrency", "16"));
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(option(options, "warmup", "5")));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(option(options, "duration", "30")));
+        RequestMix mix = new RequestMix(option(options, "mix", "echo=70,sum=20,records=10"),
+                option(options, "payload", "fixed:1024"), 42);
+        String output = option(options, "output", "latency.hgrm");
+
+        LocalServer server = null;
+        try {
+            JsonRpcClientTransport transport;
+            String name = option(options, "transport", "http");
+            if ("loopback".equals(name)) {
+                transport = loopback();
+            } else if ("http".equals(name)) {
+                URL url;
+                if (options.containsKey("url")) {
+                    url = new URL(options.get("url"));
+                } else {
+                    server = new LocalServer(Integer.parseInt(option(options, "server-threads", "16")));
+                    server.start();
+                    url = server.getUrl();
+                }
+                transport = new HttpJsonRpcClientTransport(url);
+            } else {
+                throw new IllegalArgumentException("unknown transport : " + name);
+            }
+
+            LoadGenerator generator = new LoadGenerator(transport, mix, mode, rate, concurrency, warmup, duration);
+            generator.run();
+            generator.report(System.out);
+            generator.write(output);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    void run() throws InterruptedException {
+        long start = System.nanoTime();
+        recordFrom = start + warmup;
+        long end = recordFrom + duration;
+        if (mode == Mode.CLOSED) {
+            runClosed(end);
+        } else {
+            runOpen(start, end);
+        }
+    }
+
+    private void runOpen(long start, long end) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        Random random = new Random();
+        double interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long due = start;
+        try {
+            while (due < end) {
+                parkUntil(due);
+                final long intended = due;
+                workers.execute(new Runnable() {
+                    public void run() {
+                        send(intended);
+                    }
+                });
+                if (mode == Mode.CONSTANT) {
+                    due += (long) interval;
+                } else {
+                    due += (long) (-Math.log(1 - random.nextDouble()) * interval);
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private void runClosed(final long end) throws InterruptedException {
+        // each worker is expected to send at its share of the rate, a late
+        // response then stands for the requests it would have sent meanwhile
+        final long expectedInterval = (rate > 0
+                ? TimeUnit.NANOSECONDS.toMicros((long) (TimeUnit.SECONDS.toNanos(1) * concurrency / rate))
+                : 0);
+
+        Thread[] threads = new Thread[concurrency];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread("load-" + i) {
+                @Override
+                public void run() {
+                    long due = System.nanoTime();
+                    while (due < end) {
+                        parkUntil(due);
+                        send(due);
+                        due = (expectedInterval > 0
+                                ? due + TimeUnit.MICROSECONDS.toNanos(expectedInterval)
+                                : System.nanoTime());
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void send(long intended) {
+        Random random = RANDOM.get();
+        long sent = System.nanoTime();
+        try {
+            String responseData = transport.call(mix.next(random));
+            if (responseData.indexOf("\"error\":") >= 0) {
+                errors.incrementAndGet();
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+        }
+        long done = System.nanoTime();
+        if (intended < recordFrom) {
+            return;
+        }
+        completed.incrementAndGet();
+        corrected.recordValue(TimeUnit.NANOSECONDS.toMicros(done - intended));
+        raw.recordValue(TimeUnit.NANOSECONDS.toMicros(done - sent));
+    }
+
+    void report(PrintStream out) {
+        double seconds = (double) duration / TimeUnit.SECONDS.toNanos(1);
+        out.printf("mode %s, rate %.0f/s, concurrency %d, duration %.0f s%n",
+                mode.name().toLowerCase(), rate, concurrency, seconds);
+        out.printf("requests %d, errors %d, throughput %.1f/s%n",
+                completed.get(), errors.get(), completed.get() / seconds);
+        out.printf("%-12s %10s %10s %10s %10s %10s%n", "latency ms", "p50", "p90", "p99", "p99.9", "max");
+        line(out, "corrected", corrected);
+        line(out, "raw", raw);
+    }
+
+    private static void line(PrintStream out, String name, Histogram h) {
+        out.printf("%-12s %10.3f %10.3f %10.3f %10.3f %10.3f%n", name,
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0);
+    }
+
+    void write(String output) throws Exception {
+        write(corrected, output);
+        write(raw, output.replaceFirst("(\\.hgrm)?$", "-raw.hgrm"));
+    }
+
+    private static void write(Histogram histogram, String file) throws Exception {
+        PrintStream out = new PrintStream(new FileOutputStream(file));
+        try {
+            // recorded in microseconds, written in milliseconds
+            histogram.outputPercentileDistribution(out, 1000.0);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void parkUntil(long deadline) {
+        long nanos;
+        while ((nanos = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    private static JsonRpcClientTransport loopback() {
+        final JsonRpcExecutor executor = new JsonRpcExecutor();
+        executor.addHandler(LocalServer.HANDLE, new BenchmarkServiceImpl(), BenchmarkService.class);
+        return new JsonRpcClientTransport() {
+            public String call(String requestData) {
+                InMemoryServerTransport server = new InMemoryServerTransport(requestData);
+                executor.execute(server);
+                return server.getResponse();
+            }
+        };
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i += 2) {
+            if ("--help".equals(args[i])) {
+                options.put("help", "");
+                return options;
+            }
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("invalid option : " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return (value == null ? defaultValue : value);
+    }
+
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.rpc.benchmarks.BenchmarkService;
+import org.json.rpc.benchmarks.BenchmarkServiceImpl;
+import org.json.rpc.server.JsonRpcExecutor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link JsonRpcExecutor} serving {@link BenchmarkService} as
+ * <code>bench</code> over HTTP on a local ephemeral port.
+ */
+class LocalServer {
+
+    static final String HANDLE = "bench";
+
+    private final HttpServer server;
+    private final ExecutorService threads;
+
+    LocalServer(int threadCount) throws IOException {
+        final JsonRpcExecutor executor = new JsonRpcExecutor();
+        executor.addHandler(HANDLE, new BenchmarkServiceImpl(), BenchmarkService.class);
+
+        // without it small responses wait out the client's delayed ack, ~40 ms each
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        threads = Executors.newFixedThreadPool(threadCount);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(threads);
+        server.createContext("/rpc", new HttpHandler() {
+            public void handle(HttpExchange exchange) {
+                executor.execute(new HttpExchangeTransport(exchange));
+            }
+        });
+    }
+
+    void start() {
+        server.start();
+    }
+
+    URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/rpc");
+    }
+
+    void stop() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+}
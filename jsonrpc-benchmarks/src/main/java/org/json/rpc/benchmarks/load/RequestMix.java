@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.benchmarks.load;
+
+import com.google.gson.Gson;
+import org.json.rpc.benchmarks.Payloads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Weighted mix of requests to the methods of the benchmark service.
+ * <p/>
+ * The mix is written <code>echo=70,sum=20,records=10</code> and payload sizes,
+ * in characters, <code>fixed:1024</code> or <code>uniform:16-4096</code>. A pool
+ * of requests is generated up front so building them does not count against
+ * the load generator.
+ */
+class RequestMix {
+
+    private static final int POOL_SIZE = 64;
+
+    private final String[] requests;
+
+    RequestMix(String mix, String payload, long seed) {
+        Random random = new Random(seed);
+        int[] sizes = parsePayload(payload);
+        Gson gson = new Gson();
+
+        List<String> methods = new ArrayList<String>();
+        List<Integer> weights = new ArrayList<Integer>();
+        int total = 0;
+        for (String entry : mix.split(",")) {
+            String[] kv = entry.trim().split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("invalid method mix : " + mix);
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("negative weight : " + entry);
+            }
+            methods.add(kv[0].trim());
+            weights.add(weight);
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("empty method mix : " + mix);
+        }
+
+        // the pool holds each method in proportion to its weight
+        requests = new String[POOL_SIZE * total];
+        int n = 0;
+        for (int i = 0; i < methods.size(); i++) {
+            for (int j = 0; j < POOL_SIZE * weights.get(i); j++) {
+                int size = sizes[0] + random.nextInt(sizes[1] - sizes[0] + 1);
+                requests[n++] = request(methods.get(i), size, gson);
+            }
+        }
+    }
+
+    String next(Random random) {
+        return requests[random.nextInt(requests.length)];
+    }
+
+    private static String request(String method, int size, Gson gson) {
+        String params;
+        if ("echo".equals(method)) {
+            params = "[" + gson.toJson(Payloads.string(size)) + "]";
+        } else if ("sum".equals(method)) {
+            params = "[" + gson.toJson(Payloads.ints(size)) + "]";
+        } else if ("records".equals(method)) {
+            params = "[" + Payloads.records(size) + "]";
+        } else if ("ping".equals(method)) {
+            params = "[]";
+        } else {
+            throw new IllegalArgumentException("unknown method : " + method);
+        }
+        return Payloads.request(LocalServer.HANDLE + "." + method, params);
+    }
+
+    private static int[] parsePayload(String payload) {
+        try {
+            if (payload.startsWith("fixed:")) {
+                int size = Integer.parseInt(payload.substring("fixed:".length()));
+                return new int[]{size, size};
+            }
+            if (payload.startsWith("uniform:")) {
+                String[] range = payload.substring("uniform:".length()).split("-");
+                int min = Integer.parseInt(range[0]);
+                int max = Integer.parseInt(range[1]);
+                if (min <= max) {
+                    return new int[]{min, max};
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid payload : " + payload, e);
+        }
+        throw new IllegalArgumentException("invalid payload : " + payload);
+    }
+}
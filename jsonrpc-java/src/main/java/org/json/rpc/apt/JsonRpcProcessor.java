@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.apt;
+
+import org.json.rpc.client.JsonRpcStub;
+import org.json.rpc.commons.JsonRpcCursor;
+import org.json.rpc.commons.JsonRpcService;
+import org.json.rpc.server.JsonRpcDispatcher;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a client stub and a server dispatcher for every interface
+ * annotated with {@link JsonRpcService}. Both call the interface methods
+ * directly, so neither proxies nor <code>Method.invoke</code> are needed at
+ * runtime.
+ */
+@SupportedAnnotationTypes("org.json.rpc.commons.JsonRpcService")
+public class JsonRpcProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(JsonRpcService.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@JsonRpcService is only allowed on interfaces");
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            List<ExecutableElement> methods = getMethods(type);
+            if (!isSupported(type, methods)) {
+                continue;
+            }
+
+            try {
+                if (isStubPossible(methods)) {
+                    writeStub(type, methods);
+                }
+                writeDispatcher(type, methods);
+            } catch (IOException e) {
+                error(type, "unable to generate sources : " + e);
+            }
+        }
+        return true;
+    }
+
+    private boolean isSupported(TypeElement type, List<ExecutableElement> methods) {
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, "parametrized interfaces not supported");
+            return false;
+        }
+        for (ExecutableElement m : methods) {
+            if (!m.getTypeParameters().isEmpty()) {
+                error(m, "parametrized methods not supported");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false, with a warning, when a method clashes with one of
+     *         {@link JsonRpcStub}, which the stub could not implement; calls
+     *         then go through a proxy
+     */
+    private boolean isStubPossible(List<ExecutableElement> methods) {
+        for (ExecutableElement m : methods) {
+            for (java.lang.reflect.Method base : JsonRpcStub.class.getDeclaredMethods()) {
+                if (!java.lang.reflect.Modifier.isPrivate(base.getModifiers())
+                        && base.getName().contentEquals(m.getSimpleName()) && hasParameters(m, base)) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                            "clashes with " + JsonRpcStub.class.getName() + "." + base.getName()
+                                    + ", no stub generated", m);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean hasParameters(ExecutableElement m, java.lang.reflect.Method base) {
+        List<? extends VariableElement> params = m.getParameters();
+        Class<?>[] types = base.getParameterTypes();
+        if (params.size() != types.length) {
+            return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (!erasure(params.get(i).asType()).equals(types[i].getCanonicalName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<ExecutableElement> getMethods(TypeElement type) {
+        Set<ExecutableElement> methods = new LinkedHashSet<ExecutableElement>();
+        collectMethods(type, methods);
+        return new ArrayList<ExecutableElement>(methods);
+    }
+
+    private void collectMethods(TypeElement type, Set<ExecutableElement> methods) {
+        for (ExecutableElement m : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (!m.getModifiers().contains(Modifier.STATIC)) {
+                methods.add(m);
+            }
+        }
+        for (TypeMirror superType : type.getInterfaces()) {
+            collectMethods((TypeElement) ((DeclaredType) superType).asElement(), methods);
+        }
+    }
+
+    private void writeStub(TypeElement type, List<ExecutableElement> methods) throws IOException {
+        String pkg = getPackage(type);
+        String name = getSimpleBinaryName(type) + JsonRpcStub.SUFFIX;
+
+        PrintWriter out = open(type, pkg, name);
+        try {
+            out.println("@SuppressWarnings(\"unchecked\")");
+            out.println("public final class " + name + " extends " + JsonRpcStub.class.getName()
+                    + " implements " + type.getQualifiedName() + " {");
+            out.println();
+
+            out.print("    private static final String[] METHODS = {");
+            for (int i = 0; i < methods.size(); i++) {
+                out.print((i == 0 ? "" : ", ") + "\"" + methods.get(i).getSimpleName() + "\"");
+            }
+            out.println("};");
+
+            out.print("    private static final Class<?>[] RETURN_TYPES = {");
+            for (int i = 0; i < methods.size(); i++) {
+                out.print((i == 0 ? "" : ", ") + erasure(methods.get(i).getReturnType()) + ".class");
+            }
+            out.println("};");
+
+            out.print("    private static final Class<?>[] ELEMENT_TYPES = {");
+            for (int i = 0; i < methods.size(); i++) {
+                out.print((i == 0 ? "" : ", ") + elementType(methods.get(i).getReturnType()));
+            }
+            out.println("};");
+            out.println();
+
+            out.println("    public " + name + "(org.json.rpc.client.JsonRpcInvoker invoker,"
+                    + " org.json.rpc.client.JsonRpcClientTransport transport, String handle) {");
+            out.println("        super(invoker, transport, handle, METHODS, RETURN_TYPES, ELEMENT_TYPES);");
+            out.println("    }");
+
+            for (int i = 0; i < methods.size(); i++) {
+                ExecutableElement m = methods.get(i);
+                List<? extends VariableElement> params = m.getParameters();
+                TypeMirror returnType = m.getReturnType();
+
+                out.println();
+                out.print("    public " + returnType + " " + m.getSimpleName() + "(");
+                for (int j = 0; j < params.size(); j++) {
+                    out.print((j == 0 ? "" : ", ") + params.get(j).asType() + " p" + j);
+                }
+                out.println(") {");
+
+                StringBuilder call = new StringBuilder("invoke(" + i + ", new Object[]{");
+                for (int j = 0; j < params.size(); j++) {
+                    call.append(j == 0 ? "" : ", ").append("p").append(j);
+                }
+                call.append("})");
+
+                if (returnType.getKind() == TypeKind.VOID) {
+                    out.println("        " + call + ";");
+                } else if (returnType.getKind().isPrimitive()) {
+                    String boxed = processingEnv.getTypeUtils().boxedClass((PrimitiveType) returnType)
+                            .getQualifiedName().toString();
+                    out.println("        return ((" + boxed + ") " + call + ")." + returnType + "Value();");
+                } else {
+                    out.println("        return (" + returnType + ") " + call + ";");
+                }
+                out.println("    }");
+            }
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeDispatcher(TypeElement type, List<ExecutableElement> methods) throws IOException {
+        String pkg = getPackage(type);
+        String name = getSimpleBinaryName(type) + JsonRpcDispatcher.SUFFIX;
+        String iface = type.getQualifiedName().toString();
+
+        PrintWriter out = open(type, pkg, name);
+        try {
+            out.println("@SuppressWarnings(\"unchecked\")");
+            out.println("public final class " + name + " extends "
+                    + JsonRpcDispatcher.class.getName() + "<" + iface + "> {");
+            out.println();
+            out.println("    public Object dispatch(" + iface + " handler, String method,"
+                    + " com.google.gson.JsonArray params) throws Throwable {");
+            out.println("        int n = params.size();");
+
+            for (ExecutableElement m : methods) {
+                List<? extends VariableElement> params = m.getParameters();
+                TypeMirror returnType = m.getReturnType();
+
+                StringBuilder call = new StringBuilder("handler." + m.getSimpleName() + "(");
+                for (int j = 0; j < params.size(); j++) {
+                    TypeMirror t = params.get(j).asType();
+                    call.append(j == 0 ? "" : ", ");
+                    String element = elementType(t);
+                    if (t.getKind().isPrimitive()) {
+                        call.append("param(params, ").append(j).append(", ").append(t).append(".class)");
+                    } else if (!"null".equals(element)) {
+                        call.append("elements(params, ").append(j).append(", ").append(element).append(")");
+                    } else {
+                        call.append("(").append(t).append(") param(params, ").append(j)
+                                .append(", ").append(erasure(t)).append(".class)");
+                    }
+                }
+                call.append(")");
+
+                out.println("        if (n == " + params.size() + " && \"" + m.getSimpleName() + "\".equals(method)) {");
+                if (returnType.getKind() == TypeKind.VOID) {
+                    out.println("            " + call + ";");
+                    out.println("            return null;");
+                } else {
+                    out.println("            return " + call + ";");
+                }
+                out.println("        }");
+            }
+
+            out.println("        return NO_SUCH_METHOD;");
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private PrintWriter open(TypeElement type, String pkg, String name) throws IOException {
+        String qualifiedName = (pkg.length() == 0 ? name : pkg + "." + name);
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter());
+        out.println("// Generated by " + getClass().getName() + " from " + type.getQualifiedName() + ", do not edit.");
+        if (pkg.length() > 0) {
+            out.println("package " + pkg + ";");
+        }
+        out.println();
+        return out;
+    }
+
+    private String getPackage(TypeElement type) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        return pkg.getQualifiedName().toString();
+    }
+
+    /**
+     * Binary name without the package, so <code>Outer$Inner</code> for a nested
+     * interface. The runtime derives the generated names the same way from
+     * <code>Class.getName()</code>.
+     */
+    private String getSimpleBinaryName(TypeElement type) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String pkg = getPackage(type);
+        return (pkg.length() == 0 ? binaryName : binaryName.substring(pkg.length() + 1));
+    }
+
+    /**
+     * Class literal of the elements of a sequence type, <code>null</code>
+     * for other types.
+     */
+    private String elementType(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return "null";
+        }
+        DeclaredType declared = (DeclaredType) type;
+        String name = ((TypeElement) declared.asElement()).getQualifiedName().toString();
+        if (!name.equals(Iterator.class.getName()) && !name.equals(JsonRpcCursor.class.getName())) {
+            return "null";
+        }
+        List<? extends TypeMirror> args = declared.getTypeArguments();
+        return (args.size() == 1 ? erasure(args.get(0)) + ".class" : "null");
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
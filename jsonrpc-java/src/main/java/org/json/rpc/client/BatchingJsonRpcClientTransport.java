@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.json.rpc.commons.JsonRpcClientException;
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcDeadlineExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport decorator which collects the requests issued by concurrent callers
+ * within a short window and sends them to the underlying transport as a single
+ * JSON-RPC 2.0 batch. Responses are handed back to the waiting callers by id.
+ * <p/>
+ * A batch is sent as soon as it holds <code>maxBatchSize</code> requests or
+ * <code>maxDelay</code> milliseconds after its first request, whichever
+ * happens first. The first caller of a batch does the sending, so no
+ * background thread is needed. A caller with a {@link JsonRpcDeadline} waits
+ * for its response no longer than the deadline, and when first of a batch,
+ * sends it before the deadline rather than after the whole window.
+ */
+public class BatchingJsonRpcClientTransport implements JsonRpcClientTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingJsonRpcClientTransport.class);
+
+    private final JsonRpcClientTransport transport;
+    private final long maxDelay;
+    private final int maxBatchSize;
+
+    private final Object lock = new Object();
+    private Batch current;
+
+    public BatchingJsonRpcClientTransport(JsonRpcClientTransport transport, long maxDelay, int maxBatchSize) {
+        if (transport == null) {
+            throw new NullPointerException("transport");
+        }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("maxDelay should not be negative : " + maxDelay);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize should be positive : " + maxBatchSize);
+        }
+        this.transport = transport;
+        this.maxDelay = maxDelay;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public String call(String requestData) throws Exception {
+        Call call = new Call(requestData);
+
+        Batch batch;
+        boolean leader;
+        synchronized (lock) {
+            leader = (current == null);
+            if (leader) {
+                current = new Batch();
+            }
+            batch = current;
+            batch.calls.add(call);
+            if (batch.calls.size() >= maxBatchSize) {
+                current = null;
+                lock.notifyAll();
+            }
+        }
+
+        if (leader) {
+            try {
+                synchronized (lock) {
+                    // a call with less time left than the window does not wait for it
+                    long delay = Math.min(maxDelay, JsonRpcDeadline.remaining());
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                    long remaining;
+                    while (current == batch && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                }
+            } finally {
+                // even when interrupted, the batch is closed and its callers answered
+                synchronized (lock) {
+                    if (current == batch) {
+                        current = null;
+                    }
+                }
+                batch.send();
+            }
+        }
+
+        return call.await();
+    }
+
+    private final class Batch {
+
+        private final List<Call> calls = new ArrayList<Call>();
+
+        void send() {
+            try {
+                if (calls.size() == 1) {
+                    Call call = calls.get(0);
+                    call.complete(transport.call(call.requestData), null);
+                    return;
+                }
+                sendBatch();
+            } catch (Throwable t) {
+                for (Call call : calls) {
+                    call.complete(null, t);
+                }
+            }
+        }
+
+        private void sendBatch() throws Exception {
+            JsonParser parser = new JsonParser();
+
+            // ids are rewritten to the position in the batch, the ones chosen
+            // by independent callers are not guaranteed to be unique
+            JsonArray batch = new JsonArray();
+            JsonElement[] ids = new JsonElement[calls.size()];
+            for (int i = 0; i < ids.length; i++) {
+                JsonObject req = (JsonObject) parser.parse(new StringReader(calls.get(i).requestData));
+                ids[i] = req.get("id");
+                req.addProperty("id", i);
+                batch.add(req);
+            }
+
+            String requestData = batch.toString();
+            LOG.debug("JSON-RPC batch of {} >>  {}", ids.length, requestData);
+            String responseData = transport.call(requestData);
+
+            JsonElement resp = parser.parse(new StringReader(responseData));
+            if (!resp.isJsonArray()) {
+                // a server without batch support answers with a single error
+                throw new JsonRpcClientException("batch request not supported by server : " + responseData);
+            }
+
+            for (JsonElement e : resp.getAsJsonArray()) {
+                JsonObject o = e.getAsJsonObject();
+                JsonElement id = o.get("id");
+                if (id == null || !id.isJsonPrimitive() || !((JsonPrimitive) id).isNumber()) {
+                    continue;
+                }
+                int index = id.getAsInt();
+                if (index < 0 || index >= ids.length || calls.get(index).isDone()) {
+                    continue;
+                }
+                o.remove("id");
+                if (ids[index] != null) {
+                    o.add("id", ids[index]);
+                }
+                calls.get(index).complete(o.toString(), null);
+            }
+
+            for (Call call : calls) {
+                if (!call.isDone()) {
+                    call.complete(null, new JsonRpcClientException("no response for request in batch : " + call.requestData));
+                }
+            }
+        }
+    }
+
+    private static final class Call {
+
+        private final String requestData;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private String responseData;
+        private Throwable error;
+
+        Call(String requestData) {
+            this.requestData = requestData;
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        void complete(String responseData, Throwable error) {
+            this.responseData = responseData;
+            this.error = error;
+            done.countDown();
+        }
+
+        String await() throws Exception {
+            long remaining = JsonRpcDeadline.remaining();
+            if (remaining == Long.MAX_VALUE) {
+                done.await();
+            } else if (!done.await(remaining, TimeUnit.MILLISECONDS)) {
+                throw new JsonRpcDeadlineExceededException("deadline exceeded waiting for batch response : " + requestData);
+            }
+            if (error instanceof Exception) {
+                throw (Exception) error;
+            }
+            if (error != null) {
+                throw new JsonRpcClientException("batch request failed", error);
+            }
+            return responseData;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.json.rpc.commons.TypeChecker;
+
+import java.lang.reflect.Method;
+
+/**
+ * Everything about a proxied method which does not change between calls,
+ * computed once per method instead of on every invocation.
+ */
+final class CallDescriptor {
+
+    private final String name;
+    private final Class<?> returnType;
+    private final Class<?> elementType;
+    private final boolean isVoid;
+
+    CallDescriptor(String handle, Method method) {
+        this(handle, method.getName(), method.getReturnType(),
+                TypeChecker.isSequenceType(method.getReturnType()) ? TypeChecker.getElementType(method) : null);
+    }
+
+    /**
+     * @param elementType element class when the method returns a sequence,
+     *                    null otherwise
+     */
+    CallDescriptor(String handle, String methodName, Class<?> returnType, Class<?> elementType) {
+        this.name = handle + "." + methodName;
+        this.returnType = returnType;
+        this.elementType = elementType;
+        this.isVoid = (returnType == void.class);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Class<?> getReturnType() {
+        return returnType;
+    }
+
+    Class<?> getElementType() {
+        return elementType;
+    }
+
+    boolean isVoid() {
+        return isVoid;
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.json.rpc.commons.JsonRpcCircuitOpenException;
+import org.json.rpc.commons.JsonRpcRemoteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport decorator failing fast with {@link JsonRpcCircuitOpenException}
+ * while the endpoint behind it, or a single method of it, is unhealthy.
+ * <p/>
+ * Each circuit tracks the outcome of the last <code>windowSize</code> calls.
+ * Once at least <code>minimumCalls</code> were seen and the rate of transport
+ * failures or of calls slower than <code>slowCallTime</code> reaches its
+ * threshold, the circuit opens. After <code>openTime</code> milliseconds it
+ * lets <code>halfOpenCalls</code> trial calls through: if all of them succeed
+ * it closes again, otherwise it reopens.
+ * <p/>
+ * Error responses from the server are successful calls as far as the breaker
+ * is concerned, the endpoint did answer.
+ */
+public class CircuitBreakerJsonRpcClientTransport implements ObjectCallTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreakerJsonRpcClientTransport.class);
+
+    /**
+     * Name of the circuit covering every call to the endpoint.
+     */
+    public static final String ENDPOINT = "*";
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public interface Listener {
+        void stateChanged(String circuit, State from, State to);
+    }
+
+    private final JsonRpcClientTransport transport;
+    private final Circuit endpoint;
+    private final ConcurrentMap<String, Circuit> methods = new ConcurrentHashMap<String, Circuit>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private volatile int windowSize = 100;
+    private volatile int minimumCalls = 20;
+    private volatile double failureRateThreshold = 0.5;
+    private volatile long slowCallTime = Long.MAX_VALUE;
+    private volatile double slowCallRateThreshold = 1.0;
+    private volatile long openTime = 10000;
+    private volatile int halfOpenCalls = 5;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    public CircuitBreakerJsonRpcClientTransport(JsonRpcClientTransport transport) {
+        if (transport == null) {
+            throw new NullPointerException("transport");
+        }
+        this.transport = transport;
+        this.endpoint = new Circuit(ENDPOINT);
+    }
+
+    public void setFailureRate(int windowSize, int minimumCalls, double failureRateThreshold) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("invalid window : " + windowSize + ", " + minimumCalls);
+        }
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public void setSlowCallRate(long slowCallTime, double slowCallRateThreshold) {
+        this.slowCallTime = slowCallTime;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public void setOpenTime(long openTime, int halfOpenCalls) {
+        if (halfOpenCalls < 1) {
+            throw new IllegalArgumentException("halfOpenCalls should be positive : " + halfOpenCalls);
+        }
+        this.openTime = openTime;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param circuit {@link #ENDPOINT} or a full method name
+     */
+    public State getState(String circuit) {
+        Circuit c = (ENDPOINT.equals(circuit) ? endpoint : methods.get(circuit));
+        return (c == null ? State.CLOSED : c.getState());
+    }
+
+    public long getRejectedCalls() {
+        return rejected.get();
+    }
+
+    public long getOpenedCount() {
+        return opened.get();
+    }
+
+    public String call(String requestData) throws Exception {
+        List<String> names = JsonRpcRequests.getMethods(requestData);
+        Circuit method = (names.size() == 1 ? getCircuit(names.get(0)) : null);
+        acquire(method);
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            String responseData = transport.call(requestData);
+            failed = false;
+            return responseData;
+        } finally {
+            record(method, start, failed);
+        }
+    }
+
+    public boolean isInProcess() {
+        return transport instanceof ObjectCallTransport && ((ObjectCallTransport) transport).isInProcess();
+    }
+
+    public Object invoke(CallDescriptor descriptor, Object[] args) throws Exception {
+        Circuit method = getCircuit(descriptor.getName());
+        acquire(method);
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = ((ObjectCallTransport) transport).invoke(descriptor, args);
+            failed = false;
+            return result;
+        } catch (JsonRpcRemoteException e) {
+            // the error response of a remote call
+            failed = false;
+            throw e;
+        } finally {
+            record(method, start, failed);
+        }
+    }
+
+    /**
+     * @param method circuit of the method called, null for a batch
+     */
+    private void acquire(Circuit method) {
+        if (!endpoint.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new JsonRpcCircuitOpenException(endpoint.name);
+        }
+        if (method != null && !method.tryAcquire()) {
+            endpoint.release();
+            rejected.incrementAndGet();
+            throw new JsonRpcCircuitOpenException(method.name);
+        }
+    }
+
+    private void record(Circuit method, long start, boolean failed) {
+        boolean slow = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= slowCallTime;
+        endpoint.record(failed, slow);
+        if (method != null) {
+            method.record(failed, slow);
+        }
+    }
+
+    private Circuit getCircuit(String name) {
+        Circuit circuit = methods.get(name);
+        if (circuit == null) {
+            circuit = new Circuit(name);
+            Circuit existing = methods.putIfAbsent(name, circuit);
+            if (existing != null) {
+                circuit = existing;
+            }
+        }
+        return circuit;
+    }
+
+    private void fire(String circuit, State from, State to) {
+        if (to == State.OPEN) {
+            opened.incrementAndGet();
+            LOG.warn("circuit {} opened", circuit);
+        } else {
+            LOG.info("circuit {} : {} -> {}", new Object[]{circuit, from, to});
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.stateChanged(circuit, from, to);
+            } catch (RuntimeException e) {
+                LOG.warn("circuit breaker listener failed", e);
+            }
+        }
+    }
+
+    private final class Circuit {
+
+        private final String name;
+
+        private State state = State.CLOSED;
+        private boolean[] failures = new boolean[0];
+        private boolean[] slow = new boolean[0];
+        private int calls;
+        private int failureCount;
+        private int slowCount;
+
+        private long openedAt;
+        private int trialsStarted;
+        private int trialsSucceeded;
+
+        Circuit(String name) {
+            this.name = name;
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        boolean tryAcquire() {
+            State from;
+            synchronized (this) {
+                if (state == State.CLOSED) {
+                    return true;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (trialsStarted < halfOpenCalls) {
+                        trialsStarted++;
+                        return true;
+                    }
+                    return false;
+                }
+                if (System.currentTimeMillis() - openedAt < openTime) {
+                    return false;
+                }
+                from = state;
+                state = State.HALF_OPEN;
+                trialsStarted = 1;
+                trialsSucceeded = 0;
+            }
+            fire(name, from, State.HALF_OPEN);
+            return true;
+        }
+
+        synchronized void release() {
+            if (state == State.HALF_OPEN && trialsStarted > 0) {
+                trialsStarted--;
+            }
+        }
+
+        void record(boolean failed, boolean slowCall) {
+            State from;
+            State to;
+            synchronized (this) {
+                from = state;
+                if (state == State.HALF_OPEN) {
+                    if (failed || slowCall) {
+                        open();
+                    } else if (++trialsSucceeded >= halfOpenCalls) {
+                        reset();
+                        state = State.CLOSED;
+                    }
+                } else if (state == State.CLOSED) {
+                    add(failed, slowCall);
+                    if (calls >= minimumCalls) {
+                        int n = Math.min(calls, failures.length);
+                        if ((double) failureCount / n >= failureRateThreshold
+                                || (double) slowCount / n >= slowCallRateThreshold) {
+                            open();
+                        }
+                    }
+                }
+                to = state;
+            }
+            if (from != to) {
+                fire(name, from, to);
+            }
+        }
+
+        private void add(boolean failed, boolean slowCall) {
+            if (failures.length != windowSize) {
+                reset();
+            }
+            int i = calls % failures.length;
+            if (calls >= failures.length) {
+                failureCount -= (failures[i] ? 1 : 0);
+                slowCount -= (slow[i] ? 1 : 0);
+            }
+            failures[i] = failed;
+            slow[i] = slowCall;
+            failureCount += (failed ? 1 : 0);
+            slowCount += (slowCall ? 1 : 0);
+            calls++;
+            if (calls == 2 * failures.length) {
+                // keep the counter bounded, position in the ring is unchanged
+                calls = failures.length;
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+
+        private void reset() {
+            failures = new boolean[windowSize];
+            slow = new boolean[windowSize];
+            calls = 0;
+            failureCount = 0;
+            slowCount = 0;
+        }
+    }
+}
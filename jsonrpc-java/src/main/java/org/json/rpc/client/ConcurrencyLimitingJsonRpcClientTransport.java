@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.json.rpc.commons.JsonRpcLimitExceededException;
+import org.json.rpc.commons.JsonRpcRemoteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transport decorator limiting the requests outstanding to one endpoint,
+ * with a limit which adapts to the round trip times it measures.
+ * <p/>
+ * Calls over the limit wait in a bounded queue for at most
+ * <code>maxWait</code> milliseconds, and are rejected with
+ * {@link JsonRpcLimitExceededException} when the queue is full or the wait
+ * times out.
+ */
+public class ConcurrencyLimitingJsonRpcClientTransport implements ObjectCallTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimitingJsonRpcClientTransport.class);
+
+    public enum Algorithm {
+        /**
+         * Grows the limit by one per limit's worth of successful calls, and
+         * multiplies it by <code>backoffRatio</code> on failures and on calls
+         * slower than <code>slowCallTime</code>.
+         */
+        AIMD,
+        /**
+         * Vegas style: scales the limit by the ratio of the lowest observed round
+         * trip time to the current one, plus a small allowance for queueing, so
+         * the limit follows the point where latency starts to grow.
+         */
+        GRADIENT
+    }
+
+    private static final double RTT_DECAY = 0.1;
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final int MIN_RTT_RESET = 1000;
+
+    private final JsonRpcClientTransport transport;
+    private final Algorithm algorithm;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private volatile int minLimit = 1;
+    private volatile int maxLimit = 1000;
+    private volatile int maxQueue = 0;
+    private volatile long maxWait = 0;
+    private volatile double backoffRatio = 0.9;
+    private volatile long slowCallTime = Long.MAX_VALUE;
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+
+    private long minRtt = Long.MAX_VALUE;
+    private double rtt;
+    private int samples;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConcurrencyLimitingJsonRpcClientTransport(JsonRpcClientTransport transport, Algorithm algorithm,
+                                                     int initialLimit) {
+        if (transport == null) {
+            throw new NullPointerException("transport");
+        }
+        if (algorithm == null) {
+            throw new NullPointerException("algorithm");
+        }
+        if (initialLimit < 1) {
+            throw new IllegalArgumentException("initialLimit should be positive : " + initialLimit);
+        }
+        this.transport = transport;
+        this.algorithm = algorithm;
+        this.limit = initialLimit;
+    }
+
+    public void setLimits(int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("invalid limits : " + minLimit + ", " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param maxQueue calls allowed to wait for a free slot, zero rejects at once
+     * @param maxWait  milliseconds a call waits for a free slot
+     */
+    public void setQueue(int maxQueue, long maxWait) {
+        this.maxQueue = maxQueue;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Settings of {@link Algorithm#AIMD}.
+     */
+    public void setBackoff(double backoffRatio, long slowCallTime) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio should be in (0, 1) : " + backoffRatio);
+        }
+        this.backoffRatio = backoffRatio;
+        this.slowCallTime = slowCallTime;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public String call(String requestData) throws Exception {
+        acquire();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            String responseData = transport.call(requestData);
+            failed = false;
+            return responseData;
+        } finally {
+            release(System.nanoTime() - start, failed);
+        }
+    }
+
+    public boolean isInProcess() {
+        return transport instanceof ObjectCallTransport && ((ObjectCallTransport) transport).isInProcess();
+    }
+
+    public Object invoke(CallDescriptor descriptor, Object[] args) throws Exception {
+        acquire();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = ((ObjectCallTransport) transport).invoke(descriptor, args);
+            failed = false;
+            return result;
+        } catch (JsonRpcRemoteException e) {
+            // the error response of a remote call
+            failed = false;
+            throw e;
+        } finally {
+            release(System.nanoTime() - start, failed);
+        }
+    }
+
+    private void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (waiting >= maxQueue) {
+                    reject();
+                }
+                long nanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+                waiting++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        if (nanos <= 0) {
+                            reject();
+                        }
+                        nanos = available.awaitNanos(nanos);
+                    }
+                } finally {
+                    waiting--;
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reject() {
+        rejected.incrementAndGet();
+        throw new JsonRpcLimitExceededException("concurrency limit reached : " + (int) limit);
+    }
+
+    private void release(long nanos, boolean failed) {
+        lock.lock();
+        try {
+            inFlight--;
+            int before = (int) limit;
+            if (algorithm == Algorithm.AIMD) {
+                updateAimd(nanos, failed);
+            } else {
+                updateGradient(nanos, failed);
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, limit));
+            if ((int) limit != before) {
+                LOG.debug("concurrency limit {} -> {}", before, (int) limit);
+            }
+            if ((int) limit > before) {
+                available.signalAll();
+            } else {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateAimd(long nanos, boolean failed) {
+        if (failed || TimeUnit.NANOSECONDS.toMillis(nanos) >= slowCallTime) {
+            limit = limit * backoffRatio;
+        } else if (inFlight + 1 >= (int) limit / 2) {
+            // only grow while the limit is actually being used
+            limit += 1.0 / limit;
+        }
+    }
+
+    private void updateGradient(long nanos, boolean failed) {
+        if (failed) {
+            limit = limit * backoffRatio;
+            return;
+        }
+
+        // the lowest rtt is forgotten now and then, so it follows changes
+        // in the endpoint rather than sticking to a lucky sample
+        if (++samples >= MIN_RTT_RESET) {
+            samples = 0;
+            minRtt = Long.MAX_VALUE;
+        }
+        minRtt = Math.min(minRtt, nanos);
+        rtt = (rtt == 0 ? nanos : rtt + RTT_DECAY * (nanos - rtt));
+
+        // some jitter above the lowest rtt is not taken as queueing
+        double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * minRtt / rtt));
+        double queueSize = Math.sqrt(limit);
+        double newLimit = limit * gradient + queueSize;
+        limit = limit + RTT_DECAY * (newLimit - limit);
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.json.rpc.commons.JsonRpcClientException;
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcDeadlineExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport decorator which cuts tail latency of idempotent methods.
+ * <p/>
+ * When a request to an idempotent method has not been answered within the
+ * configured percentile of recently observed latencies, a duplicate is sent
+ * to the next endpoint and whichever answers first wins. Failed idempotent
+ * requests are retried with jittered exponential backoff. Hedges and retries
+ * both draw from a retry budget which only grows with the number of
+ * requests, so a struggling cluster does not get amplified load. No retry is
+ * made when the {@link JsonRpcDeadline} of the caller would pass during the
+ * backoff. The deadline applies to the requests sent on its behalf, and a
+ * retry tells the server the time left rather than that of the first try.
+ * <p/>
+ * Requests to methods which are not marked idempotent are sent once.
+ */
+public class HedgingJsonRpcClientTransport implements JsonRpcClientTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingJsonRpcClientTransport.class);
+
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final int LATENCY_REFRESH = 64;
+
+    private final JsonRpcClientTransport[] endpoints;
+    private final ExecutorService executor;
+    private final Set<String> idempotentMethods = new CopyOnWriteArraySet<String>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Random random = new Random();
+
+    private volatile double hedgePercentile = 0.95;
+    private volatile long minHedgeDelay = 1;
+    private volatile int maxRetries = 2;
+    private volatile long baseBackoff = 10;
+    private volatile long maxBackoff = 1000;
+
+    private final RetryBudget budget = new RetryBudget(0.1, 10);
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private volatile long hedgeDelay = -1;
+
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    /**
+     * @param endpoints transports of the nodes serving the same methods
+     * @param executor  runs the requests, needs at least two threads per
+     *                  concurrent caller for hedging to take effect
+     */
+    public HedgingJsonRpcClientTransport(List<? extends JsonRpcClientTransport> endpoints, ExecutorService executor) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("at least one endpoint has to be mentioned");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.endpoints = endpoints.toArray(new JsonRpcClientTransport[endpoints.size()]);
+        this.executor = executor;
+    }
+
+    /**
+     * Marks methods, by full name (<code>handle.method</code>), as safe to send
+     * more than once.
+     */
+    public void addIdempotentMethods(String... methods) {
+        idempotentMethods.addAll(Arrays.asList(methods));
+    }
+
+    public void setHedgePercentile(double hedgePercentile) {
+        if (hedgePercentile <= 0 || hedgePercentile > 1) {
+            throw new IllegalArgumentException("percentile should be in (0, 1] : " + hedgePercentile);
+        }
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * Hedge delay used until enough latencies have been observed, and lower
+     * bound of the percentile based delay, in milliseconds.
+     */
+    public void setMinHedgeDelay(long minHedgeDelay) {
+        this.minHedgeDelay = minHedgeDelay;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public void setBackoff(long baseBackoff, long maxBackoff) {
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @param ratio     hedges and retries allowed per request
+     * @param maxTokens hedges and retries allowed in a burst
+     */
+    public void setRetryBudget(double ratio, int maxTokens) {
+        budget.configure(ratio, maxTokens);
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    public long getHedgesWon() {
+        return hedgesWon.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getBudgetExhausted() {
+        return budgetExhausted.get();
+    }
+
+    public String call(String requestData) throws Exception {
+        budget.deposit();
+
+        if (!isIdempotent(requestData)) {
+            return endpoints[nextEndpoint()].call(requestData);
+        }
+
+        String data = requestData;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return hedgedCall(data);
+            } catch (Exception e) {
+                if (attempt >= maxRetries || e instanceof JsonRpcDeadlineExceededException) {
+                    throw e;
+                }
+                long backoff = Math.min(maxBackoff, baseBackoff << Math.min(attempt, 30));
+                long sleep;
+                synchronized (random) {
+                    sleep = (long) (random.nextDouble() * backoff);
+                }
+                if (sleep >= JsonRpcDeadline.remaining()) {
+                    LOG.debug("not retrying, deadline passes within {} ms : {}", sleep, e);
+                    throw e;
+                }
+                if (!budget.withdraw()) {
+                    budgetExhausted.incrementAndGet();
+                    throw e;
+                }
+                retries.incrementAndGet();
+                LOG.debug("retrying after {} ms : {}", sleep, e);
+                Thread.sleep(sleep);
+                if (JsonRpcDeadline.isSet()) {
+                    // the server is told the budget left, not the one of the first attempt
+                    long remaining = JsonRpcDeadline.remaining();
+                    if (remaining <= 0) {
+                        throw new JsonRpcDeadlineExceededException("deadline exceeded before retrying", e);
+                    }
+                    data = JsonRpcRequests.withTimeout(requestData, remaining);
+                }
+            }
+        }
+    }
+
+    private String hedgedCall(final String requestData) throws Exception {
+        CompletionService<String> completion = new ExecutorCompletionService<String>(executor);
+        List<Future<String>> futures = new ArrayList<Future<String>>(2);
+        List<Attempt> attempts = new ArrayList<Attempt>(2);
+        // attempts run on other threads, the deadline of the caller goes with them
+        Long deadline = null;
+        if (JsonRpcDeadline.isSet()) {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(JsonRpcDeadline.remaining());
+        }
+        int endpoint = nextEndpoint();
+        try {
+            attempts.add(new Attempt(endpoints[endpoint], requestData, deadline));
+            futures.add(completion.submit(attempts.get(0)));
+
+            Future<String> done = completion.poll(getHedgeDelay(), TimeUnit.MILLISECONDS);
+            if (done == null) {
+                if (budget.withdraw()) {
+                    hedges.incrementAndGet();
+                    JsonRpcClientTransport other = endpoints[(endpoint + 1) % endpoints.length];
+                    attempts.add(new Attempt(other, requestData, deadline));
+                    futures.add(completion.submit(attempts.get(1)));
+                } else {
+                    budgetExhausted.incrementAndGet();
+                }
+                done = take(completion);
+            }
+
+            Exception failure;
+            try {
+                String result = done.get();
+                if (done != futures.get(0)) {
+                    hedgesWon.incrementAndGet();
+                }
+                return result;
+            } catch (ExecutionException e) {
+                failure = unwrap(e);
+            }
+
+            // first answer was a failure, the other one may still succeed
+            if (futures.size() > 1) {
+                try {
+                    return take(completion).get();
+                } catch (ExecutionException e) {
+                    failure = unwrap(e);
+                }
+            }
+            throw failure;
+        } finally {
+            for (int i = 0; i < futures.size(); i++) {
+                if (futures.get(i).cancel(true)) {
+                    // the slow attempt would be missing from the latencies otherwise
+                    attempts.get(i).recordLatency();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the next attempt done, waiting no longer than the deadline
+     */
+    private Future<String> take(CompletionService<String> completion) throws Exception {
+        long remaining = JsonRpcDeadline.remaining();
+        if (remaining == Long.MAX_VALUE) {
+            return completion.take();
+        }
+        Future<String> done = completion.poll(remaining, TimeUnit.MILLISECONDS);
+        if (done == null) {
+            throw new JsonRpcDeadlineExceededException("deadline exceeded waiting for hedged request");
+        }
+        return done;
+    }
+
+    private Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return new JsonRpcClientException("request failed", cause);
+    }
+
+    private int nextEndpoint() {
+        return (next.getAndIncrement() & Integer.MAX_VALUE) % endpoints.length;
+    }
+
+    private boolean isIdempotent(String requestData) {
+        if (idempotentMethods.isEmpty()) {
+            return false;
+        }
+        List<String> methods = JsonRpcRequests.getMethods(requestData);
+        return !methods.isEmpty() && idempotentMethods.containsAll(methods);
+    }
+
+    long getHedgeDelay() {
+        long delay = hedgeDelay;
+        return (delay < minHedgeDelay ? minHedgeDelay : delay);
+    }
+
+    private void recordLatency(long millis) {
+        synchronized (latencies) {
+            latencies[latencyCount % LATENCY_SAMPLES] = millis;
+            latencyCount++;
+            if (latencyCount % LATENCY_REFRESH != 0) {
+                return;
+            }
+            int n = Math.min(latencyCount, LATENCY_SAMPLES);
+            long[] sorted = new long[n];
+            System.arraycopy(latencies, 0, sorted, 0, n);
+            Arrays.sort(sorted);
+            hedgeDelay = sorted[Math.min(n - 1, (int) (hedgePercentile * n))];
+        }
+    }
+
+    private final class Attempt implements Callable<String> {
+
+        private final JsonRpcClientTransport transport;
+        private final String requestData;
+        private final Long deadline;
+        private volatile boolean started;
+        private long start;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        /**
+         * @param deadline <code>System.nanoTime()</code> of the deadline of the
+         *                 caller, null when it has none
+         */
+        Attempt(JsonRpcClientTransport transport, String requestData, Long deadline) {
+            this.transport = transport;
+            this.requestData = requestData;
+            this.deadline = deadline;
+        }
+
+        public String call() throws Exception {
+            start = System.nanoTime();
+            started = true;
+            Long previous = null;
+            if (deadline != null) {
+                previous = JsonRpcDeadline.start(deadline - start, TimeUnit.NANOSECONDS);
+            }
+            try {
+                String responseData = transport.call(requestData);
+                recordLatency();
+                return responseData;
+            } finally {
+                if (deadline != null) {
+                    JsonRpcDeadline.restore(previous);
+                }
+            }
+        }
+
+        /**
+         * Records the time taken so far, a lower bound of the latency when the
+         * attempt is cancelled, once per attempt.
+         */
+        void recordLatency() {
+            if (started && recorded.compareAndSet(false, true)) {
+                HedgingJsonRpcClientTransport.this.recordLatency(
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+    }
+
+    /**
+     * Token bucket which gains <code>ratio</code> tokens per request and
+     * loses one per hedge or retry.
+     */
+    private static final class RetryBudget {
+
+        private double ratio;
+        private double maxTokens;
+        private double tokens;
+
+        RetryBudget(double ratio, int maxTokens) {
+            configure(ratio, maxTokens);
+            this.tokens = maxTokens;
+        }
+
+        synchronized void configure(double ratio, int maxTokens) {
+            if (ratio < 0 || maxTokens < 0) {
+                throw new IllegalArgumentException("invalid retry budget : " + ratio + ", " + maxTokens);
+            }
+            this.ratio = ratio;
+            this.maxTokens = maxTokens;
+            this.tokens = Math.min(tokens, maxTokens);
+        }
+
+        synchronized void deposit() {
+            tokens = Math.min(maxTokens, tokens + ratio);
+        }
+
+        synchronized boolean withdraw() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
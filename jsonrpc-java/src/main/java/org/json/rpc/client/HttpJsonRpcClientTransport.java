@@ -17,6 +17,8 @@
 package org.json.rpc.client;
 
 import org.json.rpc.commons.JsonRpcClientException;
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcDeadlineExceededException;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
@@ -29,6 +31,15 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
+/**
+ * Posts requests over HTTP.
+ * <p/>
+ * A call made under a {@link JsonRpcDeadline} is bounded on a best-effort
+ * basis: connecting is given the time left, reading the time left once
+ * connected, and the deadline is checked between reads of the response. A
+ * single read can still block for the read timeout, so a response arriving in
+ * small pieces may end past the deadline by that much.
+ */
 public class HttpJsonRpcClientTransport implements JsonRpcClientTransport {
 
     private URL url;
@@ -61,9 +72,20 @@ public class HttpJsonRpcClientTransport implements JsonRpcClientTransport {
 
         connection.addRequestProperty("Accept-Encoding", "gzip");
 
+        boolean bounded = JsonRpcDeadline.isSet();
+        if (bounded) {
+            int timeout = toTimeout(JsonRpcDeadline.remaining());
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+        }
+
         connection.setRequestMethod("POST");
         connection.setDoOutput(true);
         connection.connect();
+        if (bounded) {
+            // the time taken to connect is not left to read
+            connection.setReadTimeout(toTimeout(JsonRpcDeadline.remaining()));
+        }
 
         OutputStream out = null;
 
@@ -101,6 +123,9 @@ public class HttpJsonRpcClientTransport implements JsonRpcClientTransport {
             int n;
             while ((n = in.read(buff)) > 0) {
                 bos.write(buff, 0, n);
+                if (bounded && JsonRpcDeadline.isExpired()) {
+                    throw new JsonRpcDeadlineExceededException("deadline exceeded reading response from " + url);
+                }
             }
             bos.flush();
             bos.close();
@@ -112,4 +137,8 @@ public class HttpJsonRpcClientTransport implements JsonRpcClientTransport {
 
         return bos.toString();
     }
+
+    private static int toTimeout(long remaining) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining));
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.client;
+
+import org.json.rpc.commons.JsonRpcCopyStrategy;
+import org.json.rpc.commons.JsonRpcCursor;
+import org.json.rpc.commons.JsonRpcErrorCodes;
+import org.json.rpc.commons.JsonRpcRemoteException;
+import org.json.rpc.server.JsonRpcExecutor;
+import org.json.rpc.server.JsonRpcServerTransport;
+
+import java.util.Iterator;
+
+/**
+ * Transport to an executor in the same JVM. Calls made through
+ * {@link JsonRpcInvoker} proxies and stubs hand their arguments and results
+ * over as objects, copied with the given {@link JsonRpcCopyStrategy}, without
+ * any json. Errors are thrown as the same {@link JsonRpcRemoteException} a
+ * remote call would get. Sequences are read from the handler as the caller
+ * goes, a {@link JsonRpcCursor} which is read to its end or closed.
+ * <p/>
+ * Calls are still passed as objects through the circuit breaker and the
+ * concurrency limiting decorators. Requests sent as json, by decorators
+ * batching, balancing or hedging calls for instance, are executed as they
+ * would be by a remote server.
+ */
+public class InProcessJsonRpcClientTransport implements ObjectCallTransport {
+
+    private final JsonRpcExecutor executor;
+    private final JsonRpcCopyStrategy copy;
+
+    public InProcessJsonRpcClientTransport(JsonRpcExecutor executor, JsonRpcCopyStrategy copy) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if (copy == null) {
+            throw new NullPointerException("copy");
+        }
+        this.executor = executor;
+        this.copy = copy;
+    }
+
+    public JsonRpcCopyStrategy getCopyStrategy() {
+        return copy;
+    }
+
+    public String call(final String requestData) throws Exception {
+        final StringBuilder responseData = new StringBuilder();
+        executor.execute(new JsonRpcServerTransport() {
+            public String readRequest() {
+                return requestData;
+            }
+
+            public void writeResponse(String data) {
+                responseData.append(data);
+            }
+        });
+        return responseData.toString();
+    }
+
+    public boolean isInProcess() {
+        return true;
+    }
+
+    public Object invoke(CallDescriptor descriptor, Object[] args) {
+        Object result = executor.invoke(descriptor.getName(), args, copy);
+        if (descriptor.isVoid()) {
+            return null;
+        }
+        Class<?> elementType = descriptor.getElementType();
+        if (elementType != null) {
+            return (result == null ? null : new CopyingCursor((Iterator<?>) result, elementType));
+        }
+        try {
+            return copy.copy(result, descriptor.getReturnType());
+        } catch (RuntimeException e) {
+            throw newWriteError(e);
+        }
+    }
+
+    /**
+     * @return the error of the server failing to write the result
+     */
+    private static JsonRpcRemoteException newWriteError(RuntimeException e) {
+        return new JsonRpcRemoteException(JsonRpcErrorCodes.getServerError(1), e.getMessage(), null);
+    }
+
+    /**
+     * Copies the elements of a sequence as the caller reads them.
+     */
+    private final class CopyingCursor implements JsonRpcCursor<Object> {
+
+        private final Iterator<?> elements;
+        private final Class<?> elementType;
+
+        CopyingCursor(Iterator<?> elements, Class<?> elementType) {
+            this.elements = elements;
+            this.elementType = elementType;
+        }
+
+        public boolean hasNext() {
+            return elements.hasNext();
+        }
+
+        public Object next() {
+            Object element = elements.next();
+            try {
+                return copy.copy(element, elementType);
+            } catch (RuntimeException e) {
+                close();
+                throw newWriteError(e);
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            if (elements instanceof JsonRpcCursor) {
+                ((JsonRpcCursor<?>) elements).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import com.google.gson.JsonElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizing cache for the results of idempotent remote methods, used by
+ * {@link JsonRpcInvoker#setCache}. Caching is enabled per method, by its
+ * full name (<code>handle.method</code>), and entries are keyed on the method
+ * and its serialized parameters.
+ * <p/>
+ * Entries are evicted least recently used first once the cache is full. A
+ * method enabled with a stale window keeps serving an expired entry for that
+ * long while it is refreshed in the background on the given executor.
+ */
+public class JsonRpcClientCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonRpcClientCache.class);
+
+    interface Loader {
+        JsonElement load() throws Throwable;
+    }
+
+    private final int maxEntries;
+    private final Executor refreshExecutor;
+    private final ConcurrentMap<String, Policy> policies = new ConcurrentHashMap<String, Policy>();
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public JsonRpcClientCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    public JsonRpcClientCache(final int maxEntries, Executor refreshExecutor) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries should be positive : " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.refreshExecutor = refreshExecutor;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > JsonRpcClientCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public void enable(String method, long ttl) {
+        enable(method, ttl, 0);
+    }
+
+    /**
+     * @param method full method name, <code>handle.method</code>
+     * @param ttl    milliseconds a result is served without asking the server
+     * @param stale  milliseconds after <code>ttl</code> during which an expired
+     *               result is still served while it is refreshed in the background
+     */
+    public void enable(String method, long ttl, long stale) {
+        if (method == null) {
+            throw new NullPointerException("method");
+        }
+        if (ttl <= 0 || stale < 0) {
+            throw new IllegalArgumentException("invalid ttl or stale window : " + ttl + ", " + stale);
+        }
+        if (stale > 0 && refreshExecutor == null) {
+            throw new IllegalStateException("stale window needs a refresh executor");
+        }
+        policies.put(method, new Policy(ttl, stale));
+    }
+
+    public void disable(String method) {
+        policies.remove(method);
+        invalidate(method);
+    }
+
+    public boolean isEnabled(String method) {
+        return policies.containsKey(method);
+    }
+
+    public void invalidate(String method) {
+        String prefix = method + "(";
+        synchronized (entries) {
+            entries.keySet().removeAll(keysWithPrefix(prefix));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Fraction of lookups answered from the cache, stale hits included.
+     */
+    public double getHitRatio() {
+        long served = hits.get() + staleHits.get();
+        long total = served + misses.get();
+        return (total == 0 ? 0.0 : (double) served / total);
+    }
+
+    JsonElement get(String method, String params, final Loader loader) throws Throwable {
+        final Policy policy = policies.get(method);
+        if (policy == null) {
+            return loader.load();
+        }
+
+        final String key = method + "(" + params + ")";
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expires) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+
+        if (entry != null && now < entry.expires + policy.stale) {
+            staleHits.incrementAndGet();
+            if (entry.startRefresh()) {
+                final Entry stale = entry;
+                refreshExecutor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            put(key, loader.load(), policy);
+                        } catch (Throwable t) {
+                            LOG.warn("unable to refresh cached result : " + key, t);
+                            stale.refreshing = false;
+                        }
+                    }
+                });
+            }
+            return entry.value;
+        }
+
+        misses.incrementAndGet();
+        JsonElement value = loader.load();
+        put(key, value, policy);
+        return value;
+    }
+
+    private void put(String key, JsonElement value, Policy policy) {
+        Entry entry = new Entry(value, System.currentTimeMillis() + policy.ttl);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private List<String> keysWithPrefix(String prefix) {
+        List<String> keys = new ArrayList<String>();
+        for (String key : entries.keySet()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static final class Policy {
+        private final long ttl;
+        private final long stale;
+
+        Policy(long ttl, long stale) {
+            this.ttl = ttl;
+            this.stale = stale;
+        }
+    }
+
+    private static final class Entry {
+        private final JsonElement value;
+        private final long expires;
+        private volatile boolean refreshing;
+
+        Entry(JsonElement value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        synchronized boolean startRefresh() {
+            if (refreshing) {
+                return false;
+            }
+            refreshing = true;
+            return true;
+        }
+    }
+}
@@ -23,25 +23,50 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.json.rpc.commons.GsonTypeChecker;
 import org.json.rpc.commons.JsonRpcClientException;
+import org.json.rpc.commons.JsonRpcCursor;
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcDeadlineExceededException;
+import org.json.rpc.commons.JsonRpcException;
 import org.json.rpc.commons.JsonRpcRemoteException;
 import org.json.rpc.commons.TypeChecker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class JsonRpcInvoker {
 
     private static final Logger LOG = LoggerFactory.getLogger(JsonRpcInvoker.class);
 
-    private final Random rand = new Random();
+    private final AtomicInteger ids = new AtomicInteger(new Random().nextInt(Integer.MAX_VALUE));
+
+    private final Gson gson = new Gson();
+
+    private static final Object NO_STUB = new Object();
+
+    private final ConcurrentMap<Class<?>, Object> stubs = new ConcurrentHashMap<Class<?>, Object>();
+
+    private final ConcurrentMap<String, ConcurrentMap<Method, CallDescriptor>> descriptors =
+            new ConcurrentHashMap<String, ConcurrentMap<Method, CallDescriptor>>();
 
     private final TypeChecker typeChecker;
 
+    private volatile JsonRpcClientCache cache;
+
+    private volatile long timeout;
+
     public JsonRpcInvoker() {
         this(new GsonTypeChecker());
     }
@@ -50,44 +75,237 @@ public final class JsonRpcInvoker {
         this.typeChecker = typeChecker;
     }
 
+    /**
+     * Results of the methods enabled in the given cache are served from it
+     * instead of the transport. <code>null</code> disables caching.
+     */
+    public void setCache(JsonRpcClientCache cache) {
+        this.cache = cache;
+    }
+
+    public JsonRpcClientCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Deadline, in milliseconds, of calls made while the calling thread has no
+     * {@link JsonRpcDeadline} of its own. Zero, the default, means no deadline.
+     */
+    public void setTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout should not be negative : " + timeout);
+        }
+        this.timeout = timeout;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
     public <T> T get(final JsonRpcClientTransport transport, final String handle, final Class<T>... classes) {
         for (Class<T> clazz : classes) {
             typeChecker.isValidInterface(clazz);
         }
-        return (T) Proxy.newProxyInstance(JsonRpcInvoker.class.getClassLoader(), classes, new InvocationHandler() {
 
-            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                return JsonRpcInvoker.this.invoke(handle, transport, method, args);
+        if (classes.length == 1) {
+            Constructor<?> stub = getStub(classes[0]);
+            if (stub != null) {
+                try {
+                    return classes[0].cast(stub.newInstance(this, transport, handle));
+                } catch (Exception e) {
+                    throw new JsonRpcClientException("unable to create stub for " + classes[0], e);
+                }
+            }
+        }
+
+        return (T) Proxy.newProxyInstance(JsonRpcInvoker.class.getClassLoader(), classes,
+                new ProxyHandler(handle, transport, getDescriptors(handle)));
+    }
+
+    private Constructor<?> getStub(Class<?> clazz) {
+        Object stub = stubs.get(clazz);
+        if (stub == null) {
+            try {
+                Class<?> stubClass = Class.forName(clazz.getName() + JsonRpcStub.SUFFIX, true, clazz.getClassLoader());
+                stub = stubClass.getConstructor(JsonRpcInvoker.class, JsonRpcClientTransport.class, String.class);
+                LOG.debug("using generated stub {}", stubClass.getName());
+            } catch (ClassNotFoundException e) {
+                stub = NO_STUB;
+            } catch (NoSuchMethodException e) {
+                LOG.warn("ignoring stub without expected constructor : " + clazz.getName() + JsonRpcStub.SUFFIX, e);
+                stub = NO_STUB;
+            }
+            stubs.put(clazz, stub);
+        }
+        return (stub == NO_STUB ? null : (Constructor<?>) stub);
+    }
+
+    private ConcurrentMap<Method, CallDescriptor> getDescriptors(String handle) {
+        ConcurrentMap<Method, CallDescriptor> map = descriptors.get(handle);
+        if (map == null) {
+            map = new ConcurrentHashMap<Method, CallDescriptor>();
+            ConcurrentMap<Method, CallDescriptor> existing = descriptors.putIfAbsent(handle, map);
+            if (existing != null) {
+                map = existing;
             }
-        });
+        }
+        return map;
     }
 
-    private Object invoke(String handleName,
-                          JsonRpcClientTransport transport, Method method,
-                          Object[] args) throws Throwable {
-        int id = rand.nextInt(Integer.MAX_VALUE);
-        String methodName = handleName + "." + method.getName();
+    private int nextId() {
+        return ids.incrementAndGet() & Integer.MAX_VALUE;
+    }
 
-        Gson gson = new Gson();
+    private final class ProxyHandler implements InvocationHandler {
 
-        JsonObject req = new JsonObject();
-        req.addProperty("id", id);
-        req.addProperty("method", methodName);
+        private final String handle;
+        private final JsonRpcClientTransport transport;
+        private final ConcurrentMap<Method, CallDescriptor> descriptors;
 
-        JsonArray params = new JsonArray();
+        ProxyHandler(String handle, JsonRpcClientTransport transport,
+                     ConcurrentMap<Method, CallDescriptor> descriptors) {
+            this.handle = handle;
+            this.transport = transport;
+            this.descriptors = descriptors;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            CallDescriptor descriptor = descriptors.get(method);
+            if (descriptor == null) {
+                descriptor = new CallDescriptor(handle, method);
+                descriptors.put(method, descriptor);
+            }
+            return JsonRpcInvoker.this.invoke(transport, descriptor, args);
+        }
+    }
+
+    Object invoke(final JsonRpcClientTransport transport, final CallDescriptor descriptor,
+                  Object[] args) throws Throwable {
+        if (TypeChecker.isPublisherType(descriptor.getReturnType())) {
+            // the response would never end, subscriptions are read as an event stream
+            throw new JsonRpcClientException("subscriptions can't be called through a proxy : " + descriptor.getName());
+        }
+        if (transport instanceof ObjectCallTransport && ((ObjectCallTransport) transport).isInProcess()) {
+            return invoke((ObjectCallTransport) transport, descriptor, args);
+        }
+
+        final JsonArray params = new JsonArray();
         if (args != null) {
             for (Object o : args) {
-                params.add(gson.toJsonTree(o));
+                if (o instanceof Iterator) {
+                    JsonArray elements = new JsonArray();
+                    for (Iterator<?> it = (Iterator<?>) o; it.hasNext(); ) {
+                        elements.add(gson.toJsonTree(it.next()));
+                    }
+                    params.add(elements);
+                } else {
+                    params.add(gson.toJsonTree(o));
+                }
             }
         }
+
+        JsonElement result;
+        JsonRpcClientCache cache = this.cache;
+        if (cache != null && cache.isEnabled(descriptor.getName())) {
+            result = cache.get(descriptor.getName(), params.toString(), new JsonRpcClientCache.Loader() {
+                public JsonElement load() throws Throwable {
+                    return call(transport, descriptor.getName(), params);
+                }
+            });
+        } else {
+            result = call(transport, descriptor.getName(), params);
+        }
+
+        if (descriptor.isVoid()) {
+            return null;
+        }
+
+        Class<?> elementType = descriptor.getElementType();
+        if (elementType != null) {
+            // sequences are streamed by the server but read here in one go
+            Object[] elements = (Object[]) gson.fromJson(result.toString(),
+                    Array.newInstance(elementType, 0).getClass());
+            if (elements == null) {
+                return null;
+            }
+            Iterator<Object> iterator = Arrays.asList(elements).iterator();
+            return (descriptor.getReturnType() == JsonRpcCursor.class ? new IteratorCursor(iterator) : iterator);
+        }
+
+        return gson.fromJson(result.toString(), descriptor.getReturnType());
+    }
+
+    /**
+     * Passes the call as objects, not cached, as it costs about as much as a
+     * lookup in the cache would.
+     */
+    private Object invoke(ObjectCallTransport transport, CallDescriptor descriptor, Object[] args) {
+        long timeout = this.timeout;
+        Long previousDeadline = null;
+        if (timeout > 0) {
+            previousDeadline = JsonRpcDeadline.start(timeout, TimeUnit.MILLISECONDS);
+        }
+        try {
+            if (JsonRpcDeadline.remaining() <= 0) {
+                throw new JsonRpcDeadlineExceededException("deadline exceeded before calling " + descriptor.getName());
+            }
+            try {
+                return transport.invoke(descriptor, args);
+            } catch (JsonRpcException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new JsonRpcClientException("unable to call " + descriptor.getName(), e);
+            }
+        } finally {
+            if (timeout > 0) {
+                JsonRpcDeadline.restore(previousDeadline);
+            }
+        }
+    }
+
+    private JsonElement call(JsonRpcClientTransport transport, String methodName,
+                             JsonArray params) throws Throwable {
+        long timeout = this.timeout;
+        Long previousDeadline = null;
+        if (timeout > 0) {
+            previousDeadline = JsonRpcDeadline.start(timeout, TimeUnit.MILLISECONDS);
+        }
+        try {
+            return call(transport, methodName, params, JsonRpcDeadline.remaining());
+        } finally {
+            if (timeout > 0) {
+                JsonRpcDeadline.restore(previousDeadline);
+            }
+        }
+    }
+
+    private JsonElement call(JsonRpcClientTransport transport, String methodName,
+                             JsonArray params, long remaining) throws Throwable {
+        if (remaining <= 0) {
+            throw new JsonRpcDeadlineExceededException("deadline exceeded before calling " + methodName);
+        }
+
+        int id = nextId();
+
+        JsonObject req = new JsonObject();
+        req.addProperty("id", id);
+        req.addProperty("method", methodName);
         req.add("params", params);
+        if (remaining != Long.MAX_VALUE) {
+            req.addProperty("timeout", remaining);
+        }
 
         String requestData = req.toString();
         LOG.debug("JSON-RPC >>  {}", requestData);
         String responseData;
         try {
             responseData = transport.call(requestData);
+        } catch (JsonRpcClientException e) {
+            throw e;
         } catch (Exception e) {
+            if (JsonRpcDeadline.isExpired()) {
+                throw new JsonRpcDeadlineExceededException("deadline exceeded calling " + methodName, e);
+            }
             throw new JsonRpcClientException("unable to get data from transport", e);
         }
         LOG.debug("JSON-RPC <<  {}", responseData);
@@ -112,10 +330,30 @@ public final class JsonRpcInvoker {
             }
         }
 
-        if (method.getReturnType() == void.class) {
-            return null;
+        return result;
+    }
+
+    static final class IteratorCursor implements JsonRpcCursor<Object> {
+
+        private final Iterator<Object> iterator;
+
+        IteratorCursor(Iterator<Object> iterator) {
+            this.iterator = iterator;
+        }
+
+        public boolean hasNext() {
+            return iterator.hasNext();
         }
 
-        return gson.fromJson(result.toString(), method.getReturnType());
+        public Object next() {
+            return iterator.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+        }
     }
 }
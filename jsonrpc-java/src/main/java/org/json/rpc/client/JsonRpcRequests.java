@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers for transport decorators which need to look into the request.
+ */
+final class JsonRpcRequests {
+
+    private JsonRpcRequests() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Method names of a single or batch request, empty when the request can't
+     * be read.
+     */
+    static List<String> getMethods(String requestData) {
+        try {
+            JsonElement req = new JsonParser().parse(new StringReader(requestData));
+            if (req.isJsonObject()) {
+                return Collections.singletonList(getMethod(req));
+            }
+            List<String> methods = new ArrayList<String>();
+            for (JsonElement e : req.getAsJsonArray()) {
+                methods.add(getMethod(e));
+            }
+            return methods;
+        } catch (RuntimeException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return the request with the <code>timeout</code> of each call which has
+     *         one set to <code>remaining</code>, unchanged when it can't be read
+     */
+    static String withTimeout(String requestData, long remaining) {
+        JsonElement req;
+        try {
+            req = new JsonParser().parse(new StringReader(requestData));
+        } catch (RuntimeException e) {
+            return requestData;
+        }
+        boolean changed = false;
+        for (JsonElement e : (req.isJsonArray() ? req.getAsJsonArray() : Collections.singletonList(req))) {
+            if (e.isJsonObject() && e.getAsJsonObject().has("timeout")) {
+                e.getAsJsonObject().addProperty("timeout", remaining);
+                changed = true;
+            }
+        }
+        return (changed ? req.toString() : requestData);
+    }
+
+    private static String getMethod(JsonElement req) {
+        return req.getAsJsonObject().getAsJsonPrimitive("method").getAsString();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.json.rpc.commons.JsonRpcClientException;
+
+/**
+ * Base class of the client stubs generated for interfaces annotated with
+ * {@link org.json.rpc.commons.JsonRpcService}. A stub for interface
+ * <code>Foo</code> is named <code>Foo_JsonRpcStub</code> and is picked up by
+ * {@link JsonRpcInvoker#get} instead of a reflection proxy.
+ */
+public abstract class JsonRpcStub {
+
+    public static final String SUFFIX = "_JsonRpcStub";
+
+    private final JsonRpcInvoker invoker;
+    private final JsonRpcClientTransport transport;
+    private final CallDescriptor[] descriptors;
+
+    /**
+     * @param elementTypes element classes of the methods returning sequences,
+     *                     null for the others
+     */
+    protected JsonRpcStub(JsonRpcInvoker invoker, JsonRpcClientTransport transport, String handle,
+                          String[] methodNames, Class<?>[] returnTypes, Class<?>[] elementTypes) {
+        this.invoker = invoker;
+        this.transport = transport;
+        this.descriptors = new CallDescriptor[methodNames.length];
+        for (int i = 0; i < methodNames.length; i++) {
+            descriptors[i] = new CallDescriptor(handle, methodNames[i], returnTypes[i], elementTypes[i]);
+        }
+    }
+
+    protected final Object invoke(int method, Object[] args) {
+        try {
+            return invoker.invoke(transport, descriptors[method], args);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new JsonRpcClientException("unable to invoke " + descriptors[method].getName(), t);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport spreading requests over several endpoints serving the same
+ * methods, so no extra proxy hop is needed in front of them.
+ * <p/>
+ * An endpoint failing <code>maxFailures</code> times in a row is ejected for
+ * <code>ejectionTime</code> milliseconds. After that a single probe request is
+ * let through; it either restores the endpoint or ejects it again. When every
+ * endpoint is ejected requests still go to the one ejected first rather than
+ * failing without trying.
+ */
+public class LoadBalancingJsonRpcClientTransport implements JsonRpcClientTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadBalancingJsonRpcClientTransport.class);
+
+    public enum Strategy {
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING,
+        /**
+         * Picks the better of two random endpoints, comparing observed
+         * latency weighted by outstanding requests.
+         */
+        POWER_OF_TWO_CHOICES
+    }
+
+    private static final double LATENCY_DECAY = 0.3;
+
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final Endpoint[] endpoints;
+    private final Strategy strategy;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile int maxFailures = 5;
+    private volatile long ejectionTime = 10000;
+
+    public LoadBalancingJsonRpcClientTransport(List<? extends JsonRpcClientTransport> endpoints, Strategy strategy) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("at least one endpoint has to be mentioned");
+        }
+        if (strategy == null) {
+            throw new NullPointerException("strategy");
+        }
+        this.endpoints = new Endpoint[endpoints.size()];
+        for (int i = 0; i < this.endpoints.length; i++) {
+            this.endpoints[i] = new Endpoint(endpoints.get(i));
+        }
+        this.strategy = strategy;
+    }
+
+    public void setEjection(int maxFailures, long ejectionTime) {
+        if (maxFailures < 1) {
+            throw new IllegalArgumentException("maxFailures should be positive : " + maxFailures);
+        }
+        this.maxFailures = maxFailures;
+        this.ejectionTime = ejectionTime;
+    }
+
+    public boolean isEjected(int endpoint) {
+        return endpoints[endpoint].ejectedUntil != 0;
+    }
+
+    public int getOutstanding(int endpoint) {
+        return endpoints[endpoint].outstanding.get();
+    }
+
+    public String call(String requestData) throws Exception {
+        Endpoint endpoint = select();
+        endpoint.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            String responseData = endpoint.transport.call(requestData);
+            endpoint.succeeded(System.nanoTime() - start);
+            return responseData;
+        } catch (Exception e) {
+            endpoint.failed();
+            throw e;
+        } finally {
+            endpoint.outstanding.decrementAndGet();
+        }
+    }
+
+    private Endpoint select() {
+        long now = System.currentTimeMillis();
+        List<Endpoint> available = new ArrayList<Endpoint>(endpoints.length);
+        Endpoint firstEjected = null;
+        for (Endpoint e : endpoints) {
+            if (e.isAvailable(now)) {
+                available.add(e);
+            } else if (firstEjected == null || e.ejectedUntil < firstEjected.ejectedUntil) {
+                firstEjected = e;
+            }
+        }
+
+        // a probe goes out as soon as an ejection expires
+        for (Endpoint e : available) {
+            if (e.ejectedUntil != 0 && e.probing.compareAndSet(false, true)) {
+                LOG.debug("probing ejected endpoint {}", e.transport);
+                return e;
+            }
+        }
+
+        List<Endpoint> healthy = new ArrayList<Endpoint>(available.size());
+        for (Endpoint e : available) {
+            if (e.ejectedUntil == 0) {
+                healthy.add(e);
+            }
+        }
+        if (healthy.isEmpty()) {
+            return (firstEjected != null ? firstEjected : endpoints[0]);
+        }
+
+        switch (strategy) {
+            case LEAST_OUTSTANDING:
+                return leastOutstanding(healthy);
+            case POWER_OF_TWO_CHOICES:
+                return powerOfTwoChoices(healthy);
+            default:
+                return healthy.get((next.getAndIncrement() & Integer.MAX_VALUE) % healthy.size());
+        }
+    }
+
+    private Endpoint leastOutstanding(List<Endpoint> healthy) {
+        // start at a rotating offset so ties don't always go to the first endpoint
+        int offset = (next.getAndIncrement() & Integer.MAX_VALUE) % healthy.size();
+        Endpoint best = null;
+        for (int i = 0; i < healthy.size(); i++) {
+            Endpoint e = healthy.get((offset + i) % healthy.size());
+            if (best == null || e.outstanding.get() < best.outstanding.get()) {
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    private Endpoint powerOfTwoChoices(List<Endpoint> healthy) {
+        int n = healthy.size();
+        if (n == 1) {
+            return healthy.get(0);
+        }
+        Random random = RANDOM.get();
+        int a = random.nextInt(n);
+        int b = random.nextInt(n - 1);
+        if (b >= a) {
+            b++;
+        }
+        Endpoint x = healthy.get(a);
+        Endpoint y = healthy.get(b);
+        return (x.cost() <= y.cost() ? x : y);
+    }
+
+    private final class Endpoint {
+
+        private final JsonRpcClientTransport transport;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean();
+
+        private volatile double latency;
+        private volatile long ejectedUntil;
+        private int failures;
+
+        Endpoint(JsonRpcClientTransport transport) {
+            this.transport = transport;
+        }
+
+        boolean isAvailable(long now) {
+            long until = ejectedUntil;
+            return until == 0 || (until <= now && !probing.get());
+        }
+
+        double cost() {
+            return (latency + 1) * (outstanding.get() + 1);
+        }
+
+        synchronized void succeeded(long nanos) {
+            double millis = (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+            latency = (latency == 0 ? millis : latency + LATENCY_DECAY * (millis - latency));
+            failures = 0;
+            if (ejectedUntil != 0) {
+                LOG.info("endpoint restored : {}", transport);
+                ejectedUntil = 0;
+            }
+            probing.set(false);
+        }
+
+        synchronized void failed() {
+            failures++;
+            if (probing.get() || failures >= maxFailures) {
+                if (ejectedUntil == 0) {
+                    LOG.warn("ejecting endpoint after {} failures : {}", failures, transport);
+                }
+                ejectedUntil = System.currentTimeMillis() + ejectionTime;
+            }
+            probing.set(false);
+        }
+    }
+}
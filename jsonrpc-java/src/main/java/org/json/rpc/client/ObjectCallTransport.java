@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+/**
+ * Transport able to hand calls over as objects, to an executor in the same
+ * JVM, rather than as json. Decorators of a single transport implement it to
+ * apply their policy to such calls as well.
+ */
+interface ObjectCallTransport extends JsonRpcClientTransport {
+
+    /**
+     * @return false when calls have to be sent as json, the transport behind
+     *         a decorator not being in the same JVM
+     */
+    boolean isInProcess();
+
+    /**
+     * @return the result, copied for the caller
+     * @throws org.json.rpc.commons.JsonRpcRemoteException the error a remote
+     *                                                     call would get
+     */
+    Object invoke(CallDescriptor descriptor, Object[] args) throws Exception;
+}
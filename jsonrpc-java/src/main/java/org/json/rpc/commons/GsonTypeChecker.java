@@ -22,12 +22,24 @@ import java.lang.reflect.Modifier;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class GsonTypeChecker extends TypeChecker {
 
+    private final ConcurrentMap<Class<?>, Boolean> validTypes = new ConcurrentHashMap<Class<?>, Boolean>();
+    private final ConcurrentMap<Class<?>, String> typeNames = new ConcurrentHashMap<Class<?>, String>();
+
     @Override
     public boolean isValidType(Class<?> clazz, boolean throwException) {
-        return isValidType(clazz, throwException, null);
+        if (validTypes.containsKey(clazz)) {
+            return true;
+        }
+        boolean result = isValidType(clazz, throwException, null);
+        if (result) {
+            validTypes.put(clazz, Boolean.TRUE);
+        }
+        return result;
     }
 
     private boolean isValidType(Class<?> clazz, boolean throwException, Set<Class<?>> visited) {
@@ -148,6 +160,15 @@ public class GsonTypeChecker extends TypeChecker {
 
     @Override
     public String getTypeName(Class<?> clazz) {
+        String name = typeNames.get(clazz);
+        if (name == null) {
+            name = typeName(clazz);
+            typeNames.put(clazz, name);
+        }
+        return name;
+    }
+
+    private String typeName(Class<?> clazz) {
         if (clazz == void.class || clazz == Void.class) {
             return void.class.getName();
         }
@@ -170,10 +191,14 @@ public class GsonTypeChecker extends TypeChecker {
             return "string";
         }
 
-        if (clazz.isArray()) {
+        if (clazz.isArray() || isSequenceType(clazz)) {
             return "array";
         }
 
+        if (isPublisherType(clazz)) {
+            return "subscription";
+        }
+
         return "struct";
     }
 }
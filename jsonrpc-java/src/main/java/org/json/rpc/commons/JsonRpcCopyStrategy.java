@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.commons;
+
+import com.google.gson.Gson;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * How arguments and results cross between a client and an executor in the
+ * same JVM, which share objects instead of json.
+ */
+public enum JsonRpcCopyStrategy {
+
+    /**
+     * Copies every value through a json tree, so caller and handler never
+     * share an object, as over the wire.
+     */
+    DEEP {
+        @Override
+        public Object copy(Object value, Type type) {
+            if (value == null) {
+                return null;
+            }
+            return GSON.fromJson(GSON.toJsonTree(value), type);
+        }
+    },
+
+    /**
+     * Passes values of the expected type as they are, only values of another
+     * type are copied. Caller and handler have to treat what they pass as
+     * immutable.
+     */
+    PASS_THROUGH {
+        @Override
+        public Object copy(Object value, Type type) {
+            if (value == null || isInstance(type, value)) {
+                return value;
+            }
+            return DEEP.copy(value, type);
+        }
+    };
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * @return the value, or a copy of it, as a value of <code>type</code>
+     */
+    public abstract Object copy(Object value, Type type);
+
+    private static boolean isInstance(Type type, Object value) {
+        if (type instanceof ParameterizedType) {
+            type = ((ParameterizedType) type).getRawType();
+        }
+        if (!(type instanceof Class)) {
+            return true;
+        }
+        Class<?> clazz = (Class<?>) type;
+        if (!clazz.isPrimitive()) {
+            return clazz.isInstance(value);
+        }
+        Class<?> valueClass = value.getClass();
+        return (clazz == int.class && valueClass == Integer.class)
+                || (clazz == long.class && valueClass == Long.class)
+                || (clazz == boolean.class && valueClass == Boolean.class)
+                || (clazz == double.class && valueClass == Double.class)
+                || (clazz == float.class && valueClass == Float.class)
+                || (clazz == short.class && valueClass == Short.class)
+                || (clazz == byte.class && valueClass == Byte.class)
+                || (clazz == char.class && valueClass == Character.class);
+    }
+}
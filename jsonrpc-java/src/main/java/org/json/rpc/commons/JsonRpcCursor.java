@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.commons;
+
+import java.util.Iterator;
+
+/**
+ * Lazy sequence of results which holds resources, like an open database
+ * cursor. Handler methods may return it, or a plain {@link Iterator}, to have
+ * large results written to the response element by element instead of being
+ * built in memory first.
+ * <p/>
+ * The executor calls {@link #close()} once the response is written or has
+ * failed.
+ */
+public interface JsonRpcCursor<T> extends Iterator<T> {
+
+    void close();
+}
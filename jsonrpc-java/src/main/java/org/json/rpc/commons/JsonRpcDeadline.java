@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.commons;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline of the rpc work done by the current thread.
+ * <p/>
+ * On the client, calls made while a deadline is set carry the remaining time
+ * to the server and give up once it has passed. On the server, the executor
+ * sets the deadline received with a request while its handler runs, so the
+ * handler can check its remaining budget and any call it makes in turn
+ * inherits the deadline.
+ */
+public final class JsonRpcDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<Long>();
+
+    private JsonRpcDeadline() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Sets the deadline of the current thread to <code>timeout</code> from now,
+     * unless an earlier one is already set.
+     *
+     * @return the previous deadline, to be passed to {@link #restore}
+     */
+    public static Long start(long timeout, TimeUnit unit) {
+        Long previous = DEADLINE.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (previous == null || deadline - previous < 0) {
+            DEADLINE.set(deadline);
+        }
+        return previous;
+    }
+
+    public static void restore(Long previous) {
+        if (previous == null) {
+            DEADLINE.remove();
+        } else {
+            DEADLINE.set(previous);
+        }
+    }
+
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    public static boolean isSet() {
+        return DEADLINE.get() != null;
+    }
+
+    /**
+     * @return milliseconds left, <code>Long.MAX_VALUE</code> if no deadline is
+     *         set and zero or less once it has passed
+     */
+    public static long remaining() {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    public static boolean isExpired() {
+        return remaining() <= 0;
+    }
+}
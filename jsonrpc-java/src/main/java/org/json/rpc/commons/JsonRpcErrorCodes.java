@@ -24,6 +24,16 @@ public final class JsonRpcErrorCodes {
     public static final int INVALID_PARAMS_ERROR_CODE = -32602;
     public static final int INTERNAL_ERROR_CODE = -32603;
 
+    /**
+     * Request dropped because its deadline passed before it was executed
+     */
+    public static final int DEADLINE_EXCEEDED_ERROR_CODE = -32002;
+
+    /**
+     * Request rejected because the queue of its priority class was full
+     */
+    public static final int OVERLOADED_ERROR_CODE = -32003;
+
     private static final int SERVER_ERROR_START = -32000;
 
 
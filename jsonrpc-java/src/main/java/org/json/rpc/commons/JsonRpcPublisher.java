@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.commons;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of server pushed notifications. A handler method returns a publisher
+ * to open a subscription: instead of a single response the executor keeps the
+ * connection open, as a <code>text/event-stream</code> with the servlet
+ * transport, and every event published afterwards is sent to it as a
+ * JSON-RPC notification <code>{"method": method, "params": [event]}</code>.
+ * <p/>
+ * Each subscriber has a bounded buffer drained on the given executor, so
+ * {@link #publish} never waits for a client. When a buffer is full the
+ * {@link Overflow} policy decides between dropping events and disconnecting
+ * the subscriber.
+ */
+public class JsonRpcPublisher<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonRpcPublisher.class);
+
+    public enum Overflow {
+        /**
+         * Discards the oldest buffered event, the subscriber sees the latest ones.
+         */
+        DROP_OLDEST,
+        /**
+         * Discards the event being published.
+         */
+        DROP_NEWEST,
+        /**
+         * Closes the subscription, the client has to subscribe again.
+         */
+        DISCONNECT
+    }
+
+    /**
+     * Connection of one subscriber, provided by the server transport.
+     */
+    public interface Sink {
+
+        /**
+         * Sends a notification, blocking while the client does not keep up.
+         */
+        void send(String notification) throws Exception;
+
+        void close();
+    }
+
+    private final String method;
+    private final Executor executor;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private final Gson gson = new Gson();
+
+    private volatile int bufferSize = 64;
+    private volatile Overflow overflow = Overflow.DROP_OLDEST;
+    private volatile boolean closed;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+
+    /**
+     * @param method   name of the notifications sent to subscribers
+     * @param executor writes the buffered events to subscribers
+     */
+    public JsonRpcPublisher(String method, Executor executor) {
+        if (method == null) {
+            throw new NullPointerException("method");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.method = method;
+        this.executor = executor;
+    }
+
+    public void setBuffer(int bufferSize, Overflow overflow) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize should be positive : " + bufferSize);
+        }
+        if (overflow == null) {
+            throw new NullPointerException("overflow");
+        }
+        this.bufferSize = bufferSize;
+        this.overflow = overflow;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public int getSubscribers() {
+        return subscribers.size();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getDisconnected() {
+        return disconnected.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Queues <code>event</code> for every current subscriber, it is serialized
+     * once whatever their number.
+     */
+    public void publish(T event) {
+        if (closed) {
+            throw new IllegalStateException("publisher has been closed : " + method);
+        }
+        published.incrementAndGet();
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        JsonObject notification = new JsonObject();
+        notification.addProperty("jsonrpc", "2.0");
+        notification.addProperty("method", method);
+        JsonArray params = new JsonArray();
+        params.add(gson.toJsonTree(event));
+        notification.add("params", params);
+        String data = notification.toString();
+
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(data);
+        }
+    }
+
+    /**
+     * Used by the executor to attach a subscription opened by a client.
+     */
+    public void subscribe(Sink sink) {
+        Subscriber subscriber = new Subscriber(sink);
+        subscribers.add(subscriber);
+        if (closed) {
+            subscriber.close();
+        }
+    }
+
+    /**
+     * Closes every subscription once its buffered events are sent.
+     */
+    public void close() {
+        closed = true;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    private final class Subscriber implements Runnable {
+
+        private final Sink sink;
+        private final Queue<String> buffer = new LinkedList<String>();
+        private boolean draining;
+        private boolean closing;
+        private boolean closed;
+
+        Subscriber(Sink sink) {
+            this.sink = sink;
+        }
+
+        void offer(String data) {
+            synchronized (this) {
+                if (closing) {
+                    return;
+                }
+                if (buffer.size() >= bufferSize) {
+                    Overflow policy = overflow;
+                    if (policy == Overflow.DISCONNECT) {
+                        LOG.info("disconnecting slow subscriber of {}", method);
+                        disconnected.incrementAndGet();
+                        buffer.clear();
+                        closing = true;
+                        schedule();
+                        return;
+                    }
+                    dropped.incrementAndGet();
+                    if (policy == Overflow.DROP_NEWEST) {
+                        return;
+                    }
+                    buffer.poll();
+                }
+                buffer.add(data);
+                schedule();
+            }
+        }
+
+        synchronized void close() {
+            closing = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (draining || closed) {
+                return;
+            }
+            draining = true;
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                draining = false;
+                LOG.warn("unable to deliver events of " + method, e);
+            }
+        }
+
+        public void run() {
+            while (true) {
+                String data;
+                synchronized (this) {
+                    data = buffer.poll();
+                    if (data == null) {
+                        draining = false;
+                        if (!closing || closed) {
+                            return;
+                        }
+                        closed = true;
+                    }
+                }
+                if (data == null) {
+                    end();
+                    return;
+                }
+
+                try {
+                    sink.send(data);
+                } catch (Exception e) {
+                    LOG.debug("subscriber of {} went away : {}", method, e);
+                    synchronized (this) {
+                        buffer.clear();
+                        closing = true;
+                        closed = true;
+                        draining = false;
+                    }
+                    end();
+                    return;
+                }
+            }
+        }
+
+        private void end() {
+            subscribers.remove(this);
+            try {
+                sink.close();
+            } catch (RuntimeException e) {
+                LOG.warn("unable to close subscription of " + method, e);
+            }
+        }
+    }
+}
@@ -18,9 +18,20 @@ package org.json.rpc.commons;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public abstract class TypeChecker {
 
+    /**
+     * Interfaces found valid, only positive results are kept so invalid ones
+     * still get reported with the reason.
+     */
+    private final ConcurrentMap<Class<?>, Boolean> validInterfaces = new ConcurrentHashMap<Class<?>, Boolean>();
+
     public boolean isValidType(Class<?> clazz) {
         return isValidType(clazz, false);
     }
@@ -37,8 +48,65 @@ public abstract class TypeChecker {
         return isValidInterface(clazz, false);
     }
 
+    /**
+     * Whether methods returning <code>clazz</code> return a lazy sequence,
+     * {@link Iterator} or {@link JsonRpcCursor}, serialized as an array.
+     */
+    public static boolean isSequenceType(Class<?> clazz) {
+        return clazz == Iterator.class || clazz == JsonRpcCursor.class;
+    }
+
+    /**
+     * Whether methods returning <code>clazz</code> open a subscription to
+     * notifications, see {@link JsonRpcPublisher}.
+     */
+    public static boolean isPublisherType(Class<?> clazz) {
+        return clazz == JsonRpcPublisher.class;
+    }
+
+    /**
+     * @return element class of a sequence or publisher returned by <code>method</code>, null
+     *         when it is raw or not a class
+     */
+    public static Class<?> getElementType(Method method) {
+        return getElementType(method.getGenericReturnType());
+    }
+
+    /**
+     * Whether the last parameter of <code>method</code> is an {@link Iterator},
+     * which can be fed from the request while it is still being read.
+     */
+    public static boolean hasLazyParameter(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        return types.length > 0 && types[types.length - 1] == Iterator.class;
+    }
+
+    /**
+     * @return element class of a parameterized sequence type, null when it is
+     *         raw or not a class
+     */
+    public static Class<?> getElementType(Type type) {
+        if (type instanceof ParameterizedType) {
+            Type element = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (element instanceof Class) {
+                return (Class<?>) element;
+            }
+        }
+        return null;
+    }
+
     public boolean isValidMethod(Method method, boolean throwException) {
         Class<?> returnType = method.getReturnType();
+        if (isSequenceType(returnType) || isPublisherType(returnType)) {
+            returnType = getElementType(method);
+            if (returnType == null) {
+                if (throwException) {
+                    throw new IllegalArgumentException("element class missing from return type : " + method);
+                }
+                return false;
+            }
+        }
+
         boolean result = false;
         try {
             result = isValidType(returnType, throwException);
@@ -57,7 +125,21 @@ public abstract class TypeChecker {
             }
         }
 
-        for (Class<?> paramType : method.getParameterTypes()) {
+        Class<?>[] paramTypes = method.getParameterTypes();
+        for (int i = 0; i < paramTypes.length; i++) {
+            Class<?> paramType = paramTypes[i];
+            if (paramType == Iterator.class) {
+                paramType = (i == paramTypes.length - 1
+                        ? getElementType(method.getGenericParameterTypes()[i]) : null);
+                if (paramType == null) {
+                    if (throwException) {
+                        throw new IllegalArgumentException(
+                                "iterator parameter should be last and have an element class : " + method);
+                    }
+                    return false;
+                }
+            }
+
             result = false;
             try {
                 result = isValidType(paramType, throwException);
@@ -81,6 +163,10 @@ public abstract class TypeChecker {
     }
 
     public boolean isValidInterface(Class<?> clazz, boolean throwException) {
+        if (validInterfaces.containsKey(clazz)) {
+            return true;
+        }
+
         if (!clazz.isInterface()) {
             if (throwException) {
                 throw new IllegalArgumentException("not an interface : " + clazz);
@@ -113,6 +199,7 @@ public abstract class TypeChecker {
             }
         }
 
+        validInterfaces.put(clazz, Boolean.TRUE);
         return true;
     }
 
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.commons;
+
+/**
+ * Introspection of servers which also tell the version of their methods,
+ * kept apart from {@link RpcIntroSpection} so its implementations need not
+ * change.
+ */
+public interface VersionedRpcIntroSpection extends RpcIntroSpection {
+
+    /**
+     * Hash of the methods and their signatures, which changes whenever they
+     * do, so clients can keep the method list between sessions.
+     */
+    String methodsVersion();
+
+}
@@ -17,6 +17,8 @@
 package org.json.rpc.server;
 
 import org.json.rpc.commons.TypeChecker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -27,12 +29,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class HandleEntry<T> {
 
+        private static final Logger LOG = LoggerFactory.getLogger(HandleEntry.class);
+
         private final T handler;
+        private final Class<?>[] classes;
+        private final List<JsonRpcDispatcher<Object>> dispatchers;
         private final Map<String, String[]> signatures;
         private final Set<Method> methods;
+        private final Map<String, PrimitiveCodec> codecs;
+        private final Map<String, Method> bulks;
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean retired;
 
         public HandleEntry(TypeChecker typeChecker, T handler, Class<T>... classes) {
             if (handler == null) {
@@ -45,9 +58,11 @@ class HandleEntry<T> {
             }
 
             this.handler = handler;
+            this.classes = classes.clone();
 
             Map<String, List<String>> map = new HashMap<String, List<String>>();
             Set<Method> set = new HashSet<Method>();
+            List<JsonRpcDispatcher<Object>> dispatcherList = new ArrayList<JsonRpcDispatcher<Object>>();
 
             for (Class<?> clazz : classes) {
                 typeChecker.isValidInterface(clazz, true);
@@ -57,6 +72,11 @@ class HandleEntry<T> {
                             "class should be an interface : " + clazz);
                 }
 
+                JsonRpcDispatcher<Object> dispatcher = getDispatcher(clazz);
+                if (dispatcher != null) {
+                    dispatcherList.add(dispatcher);
+                }
+
                 for (Method m : clazz.getMethods()) {
                     set.add(m);
                     Class<?>[] params = m.getParameterTypes();
@@ -82,14 +102,98 @@ class HandleEntry<T> {
                 signs.put(e.getKey(), e.getValue().toArray(arr));
             }
 
+            // overloads are told apart by the parameters, which only the tree shows
+            Map<String, PrimitiveCodec> codecMap = new HashMap<String, PrimitiveCodec>();
+            for (Method m : set) {
+                if (map.get(m.getName()).size() == 1) {
+                    PrimitiveCodec codec = PrimitiveCodec.forMethod(m);
+                    if (codec != null) {
+                        codecMap.put(m.getName(), codec);
+                    }
+                }
+            }
+
+            this.dispatchers = Collections.unmodifiableList(dispatcherList);
             this.methods = Collections.unmodifiableSet(set);
             this.signatures = Collections.unmodifiableMap(signs);
+            this.codecs = codecMap;
+            this.bulks = getBulks(handler, map);
+        }
+
+        /**
+         * Entry of another handler of the same interfaces, which shares the
+         * dispatchers and codecs of <code>entry</code> and has no bulk variants.
+         */
+        HandleEntry(HandleEntry<?> entry, T handler) {
+            if (handler == null) {
+                throw new NullPointerException("handler");
+            }
+            this.handler = handler;
+            this.classes = entry.classes;
+            this.dispatchers = entry.dispatchers;
+            this.methods = entry.methods;
+            this.signatures = entry.signatures;
+            this.codecs = entry.codecs;
+            this.bulks = Collections.emptyMap();
+        }
+
+        private static Map<String, Method> getBulks(Object handler, Map<String, List<String>> signatures) {
+            Map<String, Method> bulkMap = new HashMap<String, Method>();
+            for (Method m : handler.getClass().getMethods()) {
+                JsonRpcBulk bulk = m.getAnnotation(JsonRpcBulk.class);
+                if (bulk == null) {
+                    continue;
+                }
+                List<String> signs = signatures.get(bulk.value());
+                if (signs == null || signs.size() != 1) {
+                    throw new IllegalArgumentException(
+                            "bulk variant should be of a method which is not overloaded : " + m);
+                }
+                Class<?>[] params = m.getParameterTypes();
+                if (params.length != 1 || params[0] != Object[][].class || !m.getReturnType().isArray()) {
+                    throw new IllegalArgumentException(
+                            "bulk variant should take an Object[][] and return an array : " + m);
+                }
+                if (bulkMap.put(bulk.value(), m) != null) {
+                    throw new IllegalArgumentException("more than one bulk variant of " + bulk.value());
+                }
+                // handlers are often instances of classes which aren't public
+                m.setAccessible(true);
+            }
+            return bulkMap;
         }
 
         public T getHandler() {
             return handler;
         }
 
+        /**
+         * @return the rpc interfaces the handler was added with
+         */
+        Class<?>[] getClasses() {
+            return classes.clone();
+        }
+
+        // the dispatcher generated for an interface takes any handler implementing it
+        @SuppressWarnings("unchecked")
+        private static JsonRpcDispatcher<Object> getDispatcher(Class<?> clazz) {
+            String name = clazz.getName() + JsonRpcDispatcher.SUFFIX;
+            try {
+                Class<?> dispatcherClass = Class.forName(name, true, clazz.getClassLoader());
+                LOG.debug("using generated dispatcher {}", name);
+                return (JsonRpcDispatcher<Object>) dispatcherClass.getConstructor().newInstance();
+            } catch (ClassNotFoundException e) {
+                return null;
+            } catch (Exception e) {
+                LOG.warn("ignoring dispatcher which can't be instantiated : " + name, e);
+                return null;
+            }
+        }
+
+        public List<JsonRpcDispatcher<Object>> getDispatchers() {
+            return dispatchers;
+        }
+
         public java.util.Map<String, String[]> getSignatures() {
             return signatures;
         }
@@ -97,4 +201,57 @@ class HandleEntry<T> {
         public java.util.Set<java.lang.reflect.Method> getMethods() {
             return methods;
         }
+
+        /**
+         * Counts a call to the handler, until the matching {@link #exit()}.
+         */
+        void enter() {
+            calls.incrementAndGet();
+        }
+
+        void exit() {
+            if (calls.decrementAndGet() == 0 && retired) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Marks the entry as replaced or removed, calls which found it before
+         * keep running on it.
+         */
+        void retire() {
+            retired = true;
+        }
+
+        /**
+         * @return false when calls are still running once the deadline, in
+         *         {@link System#nanoTime()} terms, passed
+         */
+        synchronized boolean awaitCalls(long deadline) throws InterruptedException {
+            while (calls.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        /**
+         * @return the bulk variant of the method, null when it has none
+         */
+        Method getBulk(String method) {
+            return bulks.get(method);
+        }
+
+        /**
+         * @return the codec of the method, null when it is overloaded or takes
+         *         or returns anything but primitives and strings
+         */
+        PrimitiveCodec getCodec(String method) {
+            return codecs.get(method);
+        }
     }
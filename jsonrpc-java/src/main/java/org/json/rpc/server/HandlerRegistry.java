@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Handlers of an executor as published to the requests. A registry is never
+ * modified, a change of handlers publishes a new one, so requests read it
+ * without locking and see the handlers of one moment throughout.
+ */
+final class HandlerRegistry {
+
+    static final HandlerRegistry EMPTY = new HandlerRegistry(new HashMap<String, HandleEntry<?>>());
+
+    private final Map<String, HandleEntry<?>> handlers;
+    private final MethodTable methods;
+    private volatile String version;
+
+    private HandlerRegistry(Map<String, HandleEntry<?>> handlers) {
+        this(handlers, new MethodTable(handlers));
+    }
+
+    private HandlerRegistry(Map<String, HandleEntry<?>> handlers, MethodTable methods) {
+        this.handlers = Collections.unmodifiableMap(handlers);
+        this.methods = methods;
+    }
+
+    HandleEntry<?> get(String name) {
+        return handlers.get(name);
+    }
+
+    Map<String, HandleEntry<?>> getHandlers() {
+        return handlers;
+    }
+
+    MethodTable getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return the digest of the methods, null until set
+     */
+    String getVersion() {
+        return version;
+    }
+
+    void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * @param entry the new entry of the handle, null to remove it
+     */
+    HandlerRegistry with(String name, HandleEntry<?> entry) {
+        Map<String, HandleEntry<?>> copy = new HashMap<String, HandleEntry<?>>(handlers);
+        if (entry == null) {
+            copy.remove(name);
+        } else {
+            copy.put(name, entry);
+        }
+        return new HandlerRegistry(copy, methods.with(name, entry));
+    }
+}
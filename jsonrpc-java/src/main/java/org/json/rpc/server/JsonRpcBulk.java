@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a handler's class as the bulk variant of an rpc method,
+ * which {@link JsonRpcExecutor} calls once for all the calls to that method
+ * in a batch, rather than once per call.
+ * <p/>
+ * The variant takes an <code>Object[][]</code> holding the parameters of
+ * each call, in batch order, and returns an array of as many results in the
+ * same order. A {@link Throwable} in place of a result fails that call
+ * alone. The variant is not part of the rpc interfaces, so it can't be
+ * called remotely, and the rpc method must not be overloaded.
+ * <pre>
+ * &#64;JsonRpcBulk("getById")
+ * public Object[] getByIds(Object[][] calls)
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface JsonRpcBulk {
+
+    /**
+     * @return name of the rpc method
+     */
+    String value();
+}
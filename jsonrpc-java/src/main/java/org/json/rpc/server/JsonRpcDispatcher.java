@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Base class of the server dispatchers generated for interfaces annotated with
+ * {@link org.json.rpc.commons.JsonRpcService}. A dispatcher for interface
+ * <code>Foo</code> is named <code>Foo_JsonRpcDispatcher</code> and is picked
+ * up by {@link JsonRpcExecutor#addHandler} instead of reflective invocation,
+ * except for the methods taken by the primitive fast path of the executor.
+ */
+public abstract class JsonRpcDispatcher<T> {
+
+    public static final String SUFFIX = "_JsonRpcDispatcher";
+
+    /**
+     * Returned by {@link #dispatch} when the interface has no method with the
+     * given name and number of parameters.
+     */
+    protected static final Object NO_SUCH_METHOD = new Object();
+
+    private final Gson gson = new Gson();
+
+    public abstract Object dispatch(T handler, String method, JsonArray params) throws Throwable;
+
+    @SuppressWarnings("unchecked")
+    protected final <P> P param(JsonArray params, int index, Class<P> type) {
+        // the Type overload, as Class.cast() fails for primitive types
+        return (P) gson.fromJson(params.get(index), (Type) type);
+    }
+
+    /**
+     * Reads an array parameter passed to an {@link Iterator} parameter.
+     */
+    @SuppressWarnings("unchecked")
+    protected final <E> Iterator<E> elements(JsonArray params, int index, Class<E> type) {
+        E[] elements = (E[]) gson.fromJson(params.get(index), Array.newInstance(type, 0).getClass());
+        return (elements == null ? null : Arrays.asList(elements).iterator());
+    }
+
+    static boolean isNoSuchMethod(Object result) {
+        return result == NO_SUCH_METHOD;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import org.json.rpc.commons.JsonRpcPublisher;
+
+/**
+ * Server transport which can keep the connection open after the response and
+ * push notifications to the client, used for methods returning a
+ * {@link JsonRpcPublisher}.
+ */
+public interface JsonRpcEventServerTransport extends JsonRpcServerTransport {
+
+    /**
+     * Turns the connection into an event stream. The response to the request
+     * is the first event sent to the returned sink, notifications follow.
+     */
+    JsonRpcPublisher.Sink openEvents() throws Exception;
+}
@@ -21,42 +21,73 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.json.rpc.commons.GsonTypeChecker;
+import org.json.rpc.commons.JsonRpcCopyStrategy;
+import org.json.rpc.commons.JsonRpcCursor;
+import org.json.rpc.commons.JsonRpcDeadline;
 import org.json.rpc.commons.JsonRpcErrorCodes;
 import org.json.rpc.commons.JsonRpcException;
+import org.json.rpc.commons.JsonRpcPublisher;
 import org.json.rpc.commons.JsonRpcRemoteException;
-import org.json.rpc.commons.RpcIntroSpection;
 import org.json.rpc.commons.TypeChecker;
+import org.json.rpc.commons.VersionedRpcIntroSpection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 
-public final class JsonRpcExecutor implements RpcIntroSpection {
+public final class JsonRpcExecutor implements VersionedRpcIntroSpection {
 
     private static final Logger LOG = LoggerFactory.getLogger(JsonRpcExecutor.class);
 
     private static final Pattern METHOD_PATTERN = Pattern
             .compile("([_a-zA-Z][_a-zA-Z0-9]*)\\.([_a-zA-Z][_a-zA-Z0-9]*)");
 
-    private final Map<String, HandleEntry<?>> handlers;
+    private static final ThreadLocal<PendingCalls> PENDING = new ThreadLocal<PendingCalls>() {
+        @Override
+        protected PendingCalls initialValue() {
+            return new PendingCalls();
+        }
+    };
 
     private final TypeChecker typeChecker;
+    private final Gson gson = new Gson();
     private volatile boolean locked;
 
+    private volatile HandlerRegistry registry = HandlerRegistry.EMPTY;
+    private final Object registryLock = new Object();
+    // replaced and removed entries, until their calls are done
+    private final List<HandleEntry<?>> retired = new ArrayList<HandleEntry<?>>();
+
+    private volatile JsonRpcScheduler scheduler;
+
     public JsonRpcExecutor() {
         this(new GsonTypeChecker());
     }
@@ -64,66 +95,903 @@ public final class JsonRpcExecutor implements RpcIntroSpection {
     @SuppressWarnings("unchecked")
     public JsonRpcExecutor(TypeChecker typeChecker) {
         this.typeChecker = typeChecker;
-        this.handlers = new HashMap<String, HandleEntry<?>>();
-        addHandler("system", this, RpcIntroSpection.class);
+        addHandler("system", this, VersionedRpcIntroSpection.class);
     }
 
+    /**
+     * @return true once a request has been executed
+     * @deprecated handlers can be added, replaced and removed at any time,
+     *             executing requests no longer locks the executor
+     */
+    @Deprecated
     public boolean isLocked() {
         return locked;
     }
 
     public <T> void addHandler(String name, T handler, Class<T>... classes) {
-        if (locked) {
-            throw new JsonRpcException("executor has been locked, can't add more handlers");
-        }
+        addEntry(name, new HandleEntry<T>(typeChecker, handler, classes));
+    }
 
-        synchronized (handlers) {
-            HandleEntry<T> handleEntry = new HandleEntry<T>(typeChecker, handler, classes);
-            if (this.handlers.containsKey(name)) {
+    void addEntry(String name, HandleEntry<?> handleEntry) {
+        synchronized (registryLock) {
+            if (registry.get(name) != null) {
                 throw new IllegalArgumentException("handler already exists");
             }
-            this.handlers.put(name, handleEntry);
+            registry = registry.with(name, handleEntry);
+        }
+    }
+
+    /**
+     * Adds the handler, or replaces the one of the same name. Calls already
+     * running on the replaced handler finish on it, see {@link #awaitDrain}.
+     *
+     * @return the replaced handler, null when there was none
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Object replaceHandler(String name, T handler, Class<T>... classes) {
+        HandleEntry<T> handleEntry = new HandleEntry<T>(typeChecker, handler, classes);
+        synchronized (registryLock) {
+            HandleEntry<?> previous = registry.get(name);
+            registry = registry.with(name, handleEntry);
+            LOG.info("{} handler {}", (previous == null ? "added" : "replaced"), name);
+            return retire(previous);
+        }
+    }
+
+    /**
+     * Removes the handler, calls already running on it finish on it, see
+     * {@link #awaitDrain}.
+     *
+     * @return the removed handler, null when there was none
+     */
+    public Object removeHandler(String name) {
+        synchronized (registryLock) {
+            HandleEntry<?> previous = registry.get(name);
+            if (previous != null) {
+                registry = registry.with(name, null);
+                LOG.info("removed handler {}", name);
+            }
+            return retire(previous);
         }
     }
 
+    private Object retire(HandleEntry<?> entry) {
+        if (entry == null) {
+            return null;
+        }
+        entry.retire();
+        retired.add(entry);
+        return entry.getHandler();
+    }
+
+    /**
+     * Waits for the calls to replaced and removed handlers to finish, so they
+     * can be disposed of. A call finishes once its response is written, a
+     * streamed result or cursor read to its end. Calls which found such a
+     * handler just before it was replaced may still be starting on it.
+     *
+     * @return false when calls are still running after the timeout
+     */
+    public boolean awaitDrain(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<HandleEntry<?>> entries;
+        synchronized (registryLock) {
+            entries = new ArrayList<HandleEntry<?>>(retired);
+        }
+        boolean drained = true;
+        for (HandleEntry<?> entry : entries) {
+            if (entry.awaitCalls(deadline)) {
+                synchronized (registryLock) {
+                    retired.remove(entry);
+                }
+            } else {
+                drained = false;
+            }
+        }
+        return drained;
+    }
+
+    TypeChecker getTypeChecker() {
+        return typeChecker;
+    }
+
+    HandlerRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @param scheduler orders the calls of the requests executed from now on,
+     *                  null to run them as they come
+     */
+    public void setScheduler(JsonRpcScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public JsonRpcScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Reads a request from the transport and writes its response.
+     *
+     * @throws JsonRpcException when a streamed result fails once its response
+     *                          has started, the response being left unfinished
+     */
     public void execute(JsonRpcServerTransport transport) {
-        if (!locked) {
-            synchronized (handlers) {
-                locked = true;
+        locked = true;
+
+        PendingCalls pending = PENDING.get();
+        int mark = pending.open();
+        try {
+            JsonRpcScheduler scheduler = this.scheduler;
+            if (scheduler == null) {
+                executeTransport(transport);
+                return;
+            }
+            String previousCaller = scheduler.startRequest(transport);
+            try {
+                executeTransport(transport);
+            } finally {
+                scheduler.endRequest(previousCaller);
             }
-            LOG.info("locking executor to avoid modification");
+        } finally {
+            pending.close(mark);
         }
+    }
 
-        String methodName = null;
-        JsonArray params = null;
+    /**
+     * Calls a method with objects rather than json, for a caller in the same
+     * JVM. Each argument is copied to its parameter type, the elements of an
+     * iterator as the handler reads them, as the arguments of a request would
+     * be. The handler runs under the deadline of the current thread.
+     *
+     * @return the result, or a {@link JsonRpcCursor} over the elements of a
+     *         sequence, read from the handler as the caller goes. The call
+     *         stays counted on its handler, see {@link #awaitDrain}, until the
+     *         cursor is read to its end or closed, without holding a slot of
+     *         the scheduler meanwhile.
+     * @throws JsonRpcRemoteException the error a remote caller would read
+     *                                from the response
+     */
+    public Object invoke(String methodName, Object[] args, JsonRpcCopyStrategy copy) {
+        if (args == null) {
+            args = new Object[0];
+        }
+        MethodTable.Entry entry = registry.getMethods().get(methodName);
+        if (entry == null) {
+            // names the table does not know are matched by pattern, as in a tree
+            return invokeTree(methodName, args);
+        }
+        Method method = null;
+        for (Method m : entry.getMethods()) {
+            if (m.getParameterTypes().length == args.length) {
+                method = m;
+                break;
+            }
+        }
+        if (method == null) {
+            JsonRpcRemoteException e = new JsonRpcRemoteException(
+                    JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE, "no such method exists", null);
+            logError(methodName, e);
+            throw newError(e);
+        }
+        if (JsonRpcDeadline.isExpired()) {
+            LOG.debug("dropping {}, deadline passed", methodName);
+            throw new JsonRpcRemoteException(JsonRpcErrorCodes.DEADLINE_EXCEEDED_ERROR_CODE, "deadline exceeded", null);
+        }
 
-        JsonObject resp = new JsonObject();
-        resp.addProperty("jsonrpc", "2.0");
+        HandleEntry<?> handleEntry = entry.getHandleEntry();
+        Object result;
+        try {
+            // a value which can't be copied fails the call, as one which can't be read would
+            Object[] params = getParameters(method, args, copy);
+            JsonRpcScheduler scheduler = enter(handleEntry, methodName);
+            boolean sequence = false;
+            try {
+                result = method.invoke(handleEntry.getHandler(), params);
+                sequence = (result instanceof Iterator);
+            } finally {
+                if (!sequence) {
+                    exit(handleEntry, scheduler);
+                } else if (scheduler != null) {
+                    // the handler stays counted until the sequence is closed
+                    scheduler.release();
+                }
+            }
+        } catch (Throwable t) {
+            logError(methodName, t);
+            throw newError(toRemoteException(t));
+        }
+        if (!(result instanceof Iterator)) {
+            return result;
+        }
+
+        InvokedSequence sequence = new InvokedSequence(methodName, handleEntry, (Iterator<?>) result);
+        // a failure on the first element is reported as an error, as on the wire
+        sequence.hasNext();
+        return sequence;
+    }
+
+    private static Object[] getParameters(Method method, Object[] args, final JsonRpcCopyStrategy copy) {
+        Object[] params = new Object[args.length];
+        Class<?>[] types = method.getParameterTypes();
+        Type[] genericTypes = method.getGenericParameterTypes();
+        for (int i = 0; i < args.length; i++) {
+            if (types[i] == Iterator.class && args[i] instanceof Iterator) {
+                final Class<?> elementType = TypeChecker.getElementType(genericTypes[i]);
+                final Iterator<?> elements = (Iterator<?>) args[i];
+                params[i] = new Iterator<Object>() {
+                    public boolean hasNext() {
+                        return elements.hasNext();
+                    }
 
-        String errorMessage = null;
-        Integer errorCode = null;
-        String errorData = null;
+                    public Object next() {
+                        return copy.copy(elements.next(), elementType);
+                    }
 
-        JsonObject req = null;
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            } else {
+                params[i] = copy.copy(args[i], genericTypes[i]);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Sequence returned by {@link #invoke}, read from the handler as the caller
+     * goes and closed once read to its end.
+     */
+    private final class InvokedSequence implements JsonRpcCursor<Object> {
+
+        private final String methodName;
+        private final HandleEntry<?> handleEntry;
+        private final Iterator<?> sequence;
+        private boolean closed;
+
+        InvokedSequence(String methodName, HandleEntry<?> handleEntry, Iterator<?> sequence) {
+            this.methodName = methodName;
+            this.handleEntry = handleEntry;
+            this.sequence = sequence;
+        }
+
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            boolean hasNext;
+            try {
+                hasNext = sequence.hasNext();
+            } catch (Throwable t) {
+                close();
+                logError(methodName, t);
+                throw newError(t);
+            }
+            if (!hasNext) {
+                close();
+            }
+            return hasNext;
+        }
+
+        public Object next() {
+            if (closed) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return sequence.next();
+            } catch (Throwable t) {
+                close();
+                logError(methodName, t);
+                throw newError(t);
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (sequence instanceof JsonRpcCursor) {
+                    ((JsonRpcCursor<?>) sequence).close();
+                }
+            } finally {
+                handleEntry.exit();
+            }
+        }
+    }
+
+    private Object invokeTree(String methodName, Object[] args) {
+        JsonArray params = new JsonArray();
+        for (Object arg : args) {
+            if (arg instanceof Iterator) {
+                JsonArray elements = new JsonArray();
+                for (Iterator<?> it = (Iterator<?>) arg; it.hasNext(); ) {
+                    elements.add(gson.toJsonTree(it.next()));
+                }
+                params.add(elements);
+            } else {
+                params.add(gson.toJsonTree(arg));
+            }
+        }
+        try {
+            return executeMethod(methodName, params);
+        } catch (Throwable t) {
+            logError(methodName, t);
+            throw newError(t);
+        }
+    }
+
+    /**
+     * Logs a failure of an in-process call, which is thrown at the caller
+     * anyway, only failures of the handler itself as warnings.
+     */
+    private static void logError(String methodName, Throwable t) {
+        if (t instanceof InvocationTargetException) {
+            t = ((InvocationTargetException) t).getTargetException();
+        }
+        if (t instanceof JsonRpcRemoteException) {
+            // no such method, deadline passed and the like
+            LOG.debug("error executing {} : {}", methodName, t.getMessage());
+        } else {
+            LOG.warn("exception occured while executing : " + methodName, t);
+        }
+    }
+
+    /**
+     * @return the exception a remote caller would make of the error response
+     */
+    private JsonRpcRemoteException newError(Throwable t) {
+        if (t instanceof JsonRpcRemoteException) {
+            JsonRpcRemoteException e = (JsonRpcRemoteException) t;
+            return new JsonRpcRemoteException(e.getCode(), e.getMessage(), e.getData());
+        }
+        return new JsonRpcRemoteException(JsonRpcErrorCodes.getServerError(1), t.getMessage(), getStackTrace(t));
+    }
+
+    private void executeTransport(JsonRpcServerTransport transport) {
+        if (transport instanceof JsonRpcStreamingServerTransport) {
+            executeStreaming((JsonRpcStreamingServerTransport) transport);
+            return;
+        }
+
+        JsonElement req = null;
+        long received;
         try {
             String requestData = transport.readRequest();
+            received = System.nanoTime();
             LOG.debug("JSON-RPC >>  {}", requestData);
+            if (requestData != null && executeScanned(transport, new JsonScanner(requestData), received, false)) {
+                return;
+            }
             JsonParser parser = new JsonParser();
-            req = (JsonObject) parser.parse(new StringReader(requestData));
+            req = parser.parse(new StringReader(requestData));
+            if (!req.isJsonObject() && !req.isJsonArray()) {
+                throw new JsonRpcException("request is neither an object nor an array");
+            }
         } catch (Throwable t) {
-            errorCode = JsonRpcErrorCodes.PARSE_ERROR_CODE;
-            errorMessage = "unable to parse json-rpc request";
-            errorData = getStackTrace(t);
+            writeParseError(transport, t);
+            return;
+        }
 
-            LOG.warn(errorMessage, t);
+        execute(transport, req, received);
+    }
+
+    /**
+     * Scans the request as it arrives from the transport, as its
+     * {@link RequestEnvelope}, so it is executed the way a request read as a
+     * whole is. A request to a method taking an iterator, and one which is not
+     * strict json, is read again from its start as a tree: the members of a
+     * single request one by one, so the parameters of a method taking an
+     * iterator are fed to it without building the array first.
+     */
+    private void executeStreaming(JsonRpcStreamingServerTransport transport) {
+        Reader source = null;
+        try {
+            JsonObject req = new JsonObject();
+            long received;
+            try {
+                source = transport.openRequest();
+                RequestText text = new RequestText(source);
+                JsonScanner scanner = new JsonScanner(text);
+                scanner.peek();
+                received = System.nanoTime();
+                if (executeScanned(transport, scanner, received, true)) {
+                    return;
+                }
+
+                JsonReader reader = new JsonReader(text.openReader());
+                reader.setLenient(true);
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    JsonElement batch = new JsonParser().parse(reader);
+                    if (!batch.isJsonArray()) {
+                        throw new JsonRpcException("request is neither an object nor an array");
+                    }
+                    execute(transport, batch, received);
+                    return;
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("params".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY
+                            && executeLazy(transport, reader, req, received)) {
+                        return;
+                    }
+                    req.add(name, new JsonParser().parse(reader));
+                }
+                reader.endObject();
+            } catch (ResponseAbortedException e) {
+                throw e;
+            } catch (Throwable t) {
+                writeParseError(transport, t);
+                return;
+            }
+            LOG.debug("JSON-RPC >>  {}", req);
+
+            execute(transport, req, received);
+        } finally {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (Exception e) {
+                    LOG.warn("unable to close request", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes the request from its {@link RequestEnvelope}, without a tree of
+     * the request. Malformed envelopes are answered from the scan alone.
+     *
+     * @param streamed true when the request is read from the transport as it
+     *                 is scanned, so lazy parameters are left unread
+     * @return false, with nothing executed, when the request is not strict json
+     *         and is left to the lenient tree parser, or when its parameters
+     *         are lazy
+     */
+    private boolean executeScanned(JsonRpcServerTransport transport, JsonScanner scanner, long received,
+                                   boolean streamed) {
+        MethodTable table = registry.getMethods();
+        RequestEnvelope single = null;
+        List<RequestEnvelope> batch = null;
+        try {
+            int c = scanner.peek();
+            if (c == '{') {
+                single = RequestEnvelope.scan(scanner, (streamed ? table : null));
+                if (single.isLazy()) {
+                    return false;
+                }
+            } else if (c == '[') {
+                batch = RequestEnvelope.scanBatch(scanner);
+            } else {
+                return false;
+            }
+            scanner.end();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (streamed) {
+            LOG.debug("JSON-RPC >>  {}", scanner.getText());
+        }
+
+        if (single != null) {
+            if (!executeFast(transport, single, table, received)) {
+                JsonObject resp = executeRequest(single, table, received, transport);
+                if (resp != null) {
+                    writeResponse(transport, resp);
+                }
+            }
+            return true;
+        }
+
+        if (batch.isEmpty()) {
+            writeEmptyBatchError(transport);
+            return true;
+        }
+        JsonObject[] bulk = executeBulk(batch, table, received);
+        JsonArray responses = new JsonArray();
+        for (int i = 0; i < batch.size(); i++) {
+            JsonObject resp = (bulk == null ? null : bulk[i]);
+            responses.add(resp != null ? resp : executeRequest(batch.get(i), table, received, null));
+        }
+        writeResponse(transport, responses);
+        return true;
+    }
+
+    /**
+     * Executes a single request to a method having a {@link PrimitiveCodec}
+     * without building the response tree either. Streaming transports, the
+     * servlet one included, get here as well, see {@link #executeStreaming},
+     * and have the response encoded straight into their writer; others are
+     * handed it as a string. What the transport allocates itself, such as the
+     * reader and writer of a servlet request, is not saved.
+     * The method is invoked reflectively even when the handler has a generated
+     * {@link JsonRpcDispatcher}, as that one reads its parameters off a tree.
+     *
+     * @return false, with nothing executed, when the request has to take the
+     *         regular path
+     */
+    private boolean executeFast(JsonRpcServerTransport transport, RequestEnvelope env, MethodTable table,
+                                long received) {
+        MethodTable.Entry entry = (env.hasMethod()
+                ? table.get(env.getText(), env.getMethodStart(), env.getMethodEnd()) : null);
+        PrimitiveCodec codec = (entry == null ? null : entry.getCodec());
+        if (codec == null || !env.hasParams()) {
+            return false;
+        }
+
+        Object[] args;
+        Object id = null;
+        Long deadline;
+        try {
+            JsonScanner params = env.getParamsScanner();
+            if (params != null) {
+                args = codec.readParams(params);
+            } else if (codec.getParameterCount() == 0) {
+                args = new Object[0];
+            } else {
+                return false;
+            }
+            JsonScanner idScanner = env.getIdScanner();
+            if (idScanner != null) {
+                if (idScanner.peek() == '"') {
+                    id = idScanner.readString();
+                } else if (!idScanner.isNull()) {
+                    id = idScanner.readLong();
+                }
+            }
+            deadline = env.getDeadline(received);
+        } catch (Exception e) {
+            return false;
+        }
+
+        String methodName = entry.getName();
+        JsonObject resp = null;
+        if (deadline != null) {
+            resp = newResponse(id);
+            if (isExpired(resp, methodName, deadline)) {
+                writeResponse(transport, resp);
+                return true;
+            }
+            resp = null;
+        }
+        Object result = null;
+        HandleEntry<?> handleEntry = entry.getHandleEntry();
+        Long previousDeadline = startDeadline(deadline);
+        try {
+            JsonRpcScheduler scheduler = enter(handleEntry, methodName);
+            try {
+                result = codec.getMethod().invoke(handleEntry.getHandler(), args);
+            } finally {
+                exit(handleEntry, scheduler);
+            }
+        } catch (Throwable t) {
+            resp = newResponse(id);
+            setError(resp, methodName, toRemoteException(t));
+        } finally {
+            if (deadline != null) {
+                JsonRpcDeadline.restore(previousDeadline);
+            }
+        }
+
+        if (resp == null) {
+            if (codec.isWritable(result)) {
+                writeResponse(transport, id, codec, result);
+                return true;
+            }
+
+            // a value Gson refuses, reported the way the regular path does
+            resp = newResponse(id);
+            try {
+                setResult(resp, result, null);
+            } catch (Throwable t) {
+                setError(resp, methodName, t);
+            }
+        }
+        writeResponse(transport, resp);
+        return true;
+    }
+
+    /**
+     * Writes the response of a call executed by {@link #executeFast}, straight
+     * to the writer of a streaming transport.
+     */
+    private void writeResponse(JsonRpcServerTransport transport, Object id, PrimitiveCodec codec, Object result) {
+        if (!(transport instanceof JsonRpcStreamingServerTransport)) {
+            writeResponse(transport, toResponse(id, codec, result));
+            return;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("JSON-RPC <<  {}", toResponse(id, codec, result));
+        }
+        Writer out = null;
+        try {
+            out = ((JsonRpcStreamingServerTransport) transport).openResponse();
+            writeResponse(out, id, codec, result);
+        } catch (Exception e) {
+            LOG.warn("unable to write response of " + codec.getMethod().getName(), e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (Exception e) {
+                    LOG.warn("unable to close response", e);
+                }
+            }
+        }
+    }
+
+    private static String toResponse(Object id, PrimitiveCodec codec, Object result) {
+        StringBuilder out = new StringBuilder(64);
+        try {
+            writeResponse(out, id, codec, result);
+        } catch (IOException e) {
+            // not thrown by a StringBuilder
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    private static void writeResponse(Appendable out, Object id, PrimitiveCodec codec, Object result)
+            throws IOException {
+        out.append("{\"jsonrpc\":\"2.0\",\"id\":");
+        if (id instanceof String) {
+            PrimitiveCodec.writeString(out, (String) id);
+        } else {
+            out.append(String.valueOf(id));
+        }
+        out.append(",\"result\":");
+        codec.writeResult(out, result);
+        out.append('}');
+    }
+
+    private JsonObject newResponse(Object id) {
+        JsonObject resp = newResponse();
+        if (id instanceof String) {
+            resp.addProperty("id", (String) id);
+        } else {
+            resp.addProperty("id", (Number) id);
+        }
+        return resp;
+    }
+
+    private void execute(JsonRpcServerTransport transport, JsonElement req, long received) {
+        if (req.isJsonObject()) {
+            JsonObject resp = executeRequest(req, received, transport);
+            if (resp != null) {
+                writeResponse(transport, resp);
+            }
+            return;
+        }
+
+        JsonArray batch = req.getAsJsonArray();
+        if (batch.size() == 0) {
+            writeEmptyBatchError(transport);
+            return;
+        }
+
+        JsonObject[] bulk = executeBulk(batch, received);
+        JsonArray responses = new JsonArray();
+        for (int i = 0; i < batch.size(); i++) {
+            JsonObject resp = (bulk == null ? null : bulk[i]);
+            responses.add(resp != null ? resp : executeRequest(batch.get(i), received));
+        }
+        writeResponse(transport, responses);
+    }
+
+    /**
+     * Runs the calls of a batch to methods having a {@link JsonRpcBulk}
+     * variant through the variant, once per method, ahead of the other calls.
+     * Calls which can't be read, or whose deadline passed, are left to run one
+     * by one, so their errors are the ones they would get anyway.
+     *
+     * @return the responses by position in the batch, null where the call is
+     *         left to run one by one, or null when all of them are
+     */
+    private JsonObject[] executeBulk(List<RequestEnvelope> batch, MethodTable table, long received) {
+        Map<MethodTable.Entry, List<BulkCall>> groups = null;
+        for (int i = 0; i < batch.size(); i++) {
+            RequestEnvelope env = batch.get(i);
+            MethodTable.Entry entry = (env != null && env.hasMethod()
+                    ? table.get(env.getText(), env.getMethodStart(), env.getMethodEnd()) : null);
+            if (entry == null || entry.getBulk() == null) {
+                continue;
+            }
+            try {
+                Method m = entry.getMethods().get(0);
+                if (env.getParamCount() == m.getParameterTypes().length) {
+                    groups = addBulkCall(groups, entry,
+                            new BulkCall(i, env.getId(), getParameters(m, env), env.getDeadline(received)));
+                }
+            } catch (Exception e) {
+                // left to run one by one
+            }
+        }
+        return executeBulk(groups, batch.size());
+    }
+
+    private JsonObject[] executeBulk(JsonArray batch, long received) {
+        MethodTable table = registry.getMethods();
+        Map<MethodTable.Entry, List<BulkCall>> groups = null;
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                JsonObject req = (JsonObject) batch.get(i);
+                MethodTable.Entry entry = table.get(req.getAsJsonPrimitive("method").getAsString());
+                if (entry == null || entry.getBulk() == null) {
+                    continue;
+                }
+                Method m = entry.getMethods().get(0);
+                JsonArray params = (JsonArray) req.get("params");
+                if (params == null) {
+                    params = new JsonArray();
+                }
+                if (params.size() == m.getParameterTypes().length) {
+                    groups = addBulkCall(groups, entry,
+                            new BulkCall(i, req.get("id"), getParameters(m, params), getDeadline(req, received)));
+                }
+            } catch (Exception e) {
+                // left to run one by one
+            }
+        }
+        return executeBulk(groups, batch.size());
+    }
+
+    private static Map<MethodTable.Entry, List<BulkCall>> addBulkCall(Map<MethodTable.Entry, List<BulkCall>> groups,
+                                                                      MethodTable.Entry entry, BulkCall call) {
+        if (call.deadline != null && call.deadline - System.nanoTime() <= 0) {
+            return groups;
+        }
+        if (groups == null) {
+            groups = new LinkedHashMap<MethodTable.Entry, List<BulkCall>>();
+        }
+        List<BulkCall> calls = groups.get(entry);
+        if (calls == null) {
+            calls = new ArrayList<BulkCall>();
+            groups.put(entry, calls);
+        }
+        calls.add(call);
+        return groups;
+    }
+
+    private JsonObject[] executeBulk(Map<MethodTable.Entry, List<BulkCall>> groups, int size) {
+        if (groups == null) {
+            return null;
+        }
+        JsonObject[] responses = null;
+        for (Map.Entry<MethodTable.Entry, List<BulkCall>> group : groups.entrySet()) {
+            List<BulkCall> calls = group.getValue();
+            if (calls.size() < 2) {
+                // nothing to gain for a lone call
+                continue;
+            }
+            if (responses == null) {
+                responses = new JsonObject[size];
+            }
+            invokeBulk(group.getKey(), calls);
+            for (BulkCall call : calls) {
+                responses[call.position] = call.resp;
+            }
+        }
+        return responses;
+    }
 
-            sendError(transport, resp, errorCode, errorMessage, errorData);
+    /**
+     * Calls the bulk variant under the earliest deadline of the calls, and
+     * sets the response of each call from its result.
+     */
+    private void invokeBulk(MethodTable.Entry entry, List<BulkCall> calls) {
+        String methodName = entry.getName();
+        HandleEntry<?> handleEntry = entry.getHandleEntry();
+        Object[][] args = new Object[calls.size()][];
+        Long deadline = null;
+        for (int i = 0; i < args.length; i++) {
+            BulkCall call = calls.get(i);
+            args[i] = call.args;
+            if (call.deadline != null && (deadline == null || call.deadline - deadline < 0)) {
+                deadline = call.deadline;
+            }
+        }
+
+        Object results;
+        Long previousDeadline = startDeadline(deadline);
+        try {
+            JsonRpcScheduler scheduler = enter(handleEntry, methodName);
+            try {
+                results = entry.getBulk().invoke(handleEntry.getHandler(), new Object[]{args});
+            } finally {
+                exit(handleEntry, scheduler);
+            }
+            if (results == null || Array.getLength(results) != args.length) {
+                throw new IllegalStateException("bulk variant of " + methodName + " returned "
+                        + (results == null ? "null" : Array.getLength(results) + " results")
+                        + " for " + args.length + " calls");
+            }
+        } catch (Throwable t) {
+            JsonRpcRemoteException e = toRemoteException(t);
+            for (BulkCall call : calls) {
+                setError(call.resp, methodName, e);
+            }
             return;
+        } finally {
+            if (deadline != null) {
+                JsonRpcDeadline.restore(previousDeadline);
+            }
         }
 
+        for (int i = 0; i < args.length; i++) {
+            BulkCall call = calls.get(i);
+            try {
+                Object result = Array.get(results, i);
+                if (result instanceof Throwable) {
+                    throw (Throwable) result;
+                }
+                setResult(call.resp, result, null);
+            } catch (Throwable t) {
+                setError(call.resp, methodName, toRemoteException(t));
+            }
+        }
+    }
+
+    /**
+     * A call of a batch to be run through a bulk variant.
+     */
+    private final class BulkCall {
+
+        private final int position;
+        private final JsonObject resp;
+        private final Object[] args;
+        private final Long deadline;
+
+        BulkCall(int position, JsonElement id, Object[] args, Long deadline) {
+            this.position = position;
+            this.resp = newResponse();
+            this.resp.add("id", id);
+            this.args = args;
+            this.deadline = deadline;
+        }
+    }
+
+    private void writeEmptyBatchError(JsonRpcServerTransport transport) {
+        JsonObject resp = newResponse();
+        setError(resp, JsonRpcErrorCodes.INVALID_REQUEST_ERROR_CODE, "empty batch request", null);
+        writeResponse(transport, resp);
+    }
+
+    private void writeParseError(JsonRpcServerTransport transport, Throwable t) {
+        String errorMessage = "unable to parse json-rpc request";
+        LOG.warn(errorMessage, t);
+
+        JsonObject resp = newResponse();
+        setError(resp, JsonRpcErrorCodes.PARSE_ERROR_CODE, errorMessage, getStackTrace(t));
+        writeResponse(transport, resp);
+    }
 
+    private JsonObject executeRequest(JsonElement element, long received) {
+        return executeRequest(element, received, null);
+    }
+
+    /**
+     * @param transport transport of a single request, to stream a lazy result
+     *                  or open a subscription on, null within a batch
+     * @return the response, null when it has been sent already
+     */
+    private JsonObject executeRequest(JsonElement element, long received, JsonRpcServerTransport transport) {
+        JsonObject resp = newResponse();
+
+        String methodName;
+        JsonArray params;
+        Long deadline;
         try {
-            assert req != null;
+            JsonObject req = (JsonObject) element;
             resp.add("id", req.get("id"));
 
             methodName = req.getAsJsonPrimitive("method").getAsString();
@@ -131,47 +999,314 @@ public final class JsonRpcExecutor implements RpcIntroSpection {
             if (params == null) {
                 params = new JsonArray();
             }
+            deadline = getDeadline(req, received);
         } catch (Throwable t) {
-            errorCode = JsonRpcErrorCodes.INVALID_REQUEST_ERROR_CODE;
-            errorMessage = "unable to read request";
-            errorData = getStackTrace(t);
+            String errorMessage = "unable to read request";
+            LOG.warn(errorMessage, t);
+            setError(resp, JsonRpcErrorCodes.INVALID_REQUEST_ERROR_CODE, errorMessage, getStackTrace(t));
+            return resp;
+        }
 
+        if (isExpired(resp, methodName, deadline)) {
+            return resp;
+        }
+        Long previousDeadline = startDeadline(deadline);
+        try {
+            if (setResult(resp, executeMethod(methodName, params), transport)) {
+                return null;
+            }
+        } catch (ResponseAbortedException e) {
+            throw e;
+        } catch (Throwable t) {
+            setError(resp, methodName, t);
+        } finally {
+            if (deadline != null) {
+                JsonRpcDeadline.restore(previousDeadline);
+            }
+        }
+        return resp;
+    }
+
+    /**
+     * Same as the tree counterpart, reading the members from the envelope.
+     *
+     * @param env request, null for a batch element which is not an object
+     */
+    private JsonObject executeRequest(RequestEnvelope env, MethodTable table, long received,
+                                      JsonRpcServerTransport transport) {
+        JsonObject resp = newResponse();
 
+        MethodTable.Entry entry;
+        String methodName;
+        Long deadline;
+        try {
+            if (env == null) {
+                throw new JsonRpcException("request should be an object");
+            }
+            resp.add("id", env.getId());
+
+            entry = (env.hasMethod() ? table.get(env.getText(), env.getMethodStart(), env.getMethodEnd()) : null);
+            methodName = (entry != null ? entry.getName() : env.getMethod());
+            env.getParamCount();
+            deadline = env.getDeadline(received);
+        } catch (Throwable t) {
+            String errorMessage = "unable to read request";
             LOG.warn(errorMessage, t);
-            sendError(transport, resp, errorCode, errorMessage, errorData);
-            return;
+            setError(resp, JsonRpcErrorCodes.INVALID_REQUEST_ERROR_CODE, errorMessage, getStackTrace(t));
+            return resp;
         }
 
+        if (isExpired(resp, methodName, deadline)) {
+            return resp;
+        }
+        Long previousDeadline = startDeadline(deadline);
         try {
-            JsonElement result = executeMethod(methodName, params);
-            resp.add("result", result);
+            // names the table does not know are matched by pattern, as in a tree
+            Object result = (entry != null
+                    ? executeMethod(entry, env) : executeMethod(methodName, env.getParams()));
+            if (setResult(resp, result, transport)) {
+                return null;
+            }
+        } catch (ResponseAbortedException e) {
+            throw e;
         } catch (Throwable t) {
-            LOG.warn("exception occured while executing : " + methodName, t);
-            if (t instanceof JsonRpcRemoteException) {
-                sendError(transport, resp, (JsonRpcRemoteException) t);
-                return;
+            setError(resp, methodName, t);
+        } finally {
+            if (deadline != null) {
+                JsonRpcDeadline.restore(previousDeadline);
             }
-            errorCode = JsonRpcErrorCodes.getServerError(1);
-            errorMessage = t.getMessage();
-            errorData = getStackTrace(t);
-            sendError(transport, resp, errorCode, errorMessage, errorData);
-            return;
         }
+        return resp;
+    }
 
+    /**
+     * Calls the method named by the request, if its last parameter is an
+     * iterator, while the parameters are still being read. Members following
+     * <code>params</code>, the id included, are read after the method returned.
+     *
+     * @return false, with nothing read, when the method does not take an iterator
+     */
+    private boolean executeLazy(JsonRpcStreamingServerTransport transport, JsonReader reader, JsonObject req,
+                                long received) {
+        JsonElement method = req.get("method");
+        if (method == null || !method.isJsonPrimitive()) {
+            return false;
+        }
+        String methodName = method.getAsString();
+        Matcher mat = METHOD_PATTERN.matcher(methodName);
+        if (!mat.find()) {
+            return false;
+        }
+        HandleEntry<?> handleEntry = registry.get(mat.group(1));
+        if (handleEntry == null) {
+            return false;
+        }
+
+        // overloads are told apart by the number of parameters, unknown here
+        Method lazyMethod = null;
+        for (Method m : handleEntry.getMethods()) {
+            if (m.getName().equals(mat.group(2))) {
+                if (lazyMethod != null || !TypeChecker.hasLazyParameter(m)) {
+                    return false;
+                }
+                lazyMethod = m;
+            }
+        }
+        if (lazyMethod == null) {
+            return false;
+        }
+
+        JsonObject resp = newResponse();
+        resp.add("id", req.get("id"));
+        JsonRpcStreamingServerTransport stream = transport;
+        Long deadline = null;
         try {
-            String responseData = resp.toString();
-            LOG.debug("JSON-RPC result <<  {}", responseData);
-            transport.writeResponse(responseData);
+            deadline = getDeadline(req, received);
+        } catch (Throwable t) {
+            LOG.warn("unable to read request", t);
+            setError(resp, JsonRpcErrorCodes.INVALID_REQUEST_ERROR_CODE, "unable to read request", getStackTrace(t));
+            stream = null;
+        }
+
+        if (stream != null && !isExpired(resp, methodName, deadline)) {
+            Long previousDeadline = startDeadline(deadline);
+            try {
+                Object result;
+                JsonRpcScheduler scheduler = enter(handleEntry, methodName);
+                try {
+                    result = invokeLazy(handleEntry.getHandler(), lazyMethod, reader);
+                } finally {
+                    exit(handleEntry, scheduler);
+                }
+                while (reader.hasNext()) {
+                    if ("id".equals(reader.nextName())) {
+                        resp.add("id", new JsonParser().parse(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (setResult(resp, result, stream)) {
+                    return true;
+                }
+            } catch (ResponseAbortedException e) {
+                throw e;
+            } catch (Throwable t) {
+                setError(resp, methodName, t);
+            } finally {
+                if (deadline != null) {
+                    JsonRpcDeadline.restore(previousDeadline);
+                }
+            }
+        }
+
+        writeResponse(transport, resp);
+        return true;
+    }
+
+    private Object invokeLazy(Object handler, Method method, JsonReader reader) throws Throwable {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] args = new Object[types.length];
+
+        reader.beginArray();
+        for (int i = 0; i < types.length - 1; i++) {
+            if (!reader.hasNext()) {
+                throw new JsonRpcRemoteException(JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE, "no such method exists", null);
+            }
+            args[i] = gson.fromJson(reader, types[i]);
+        }
+        if (!reader.hasNext()) {
+            throw new JsonRpcRemoteException(JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE, "no such method exists", null);
+        }
+
+        Class<?> elementType = TypeChecker.getElementType(method.getGenericParameterTypes()[types.length - 1]);
+        ReaderIterator elements = new ReaderIterator(reader, elementType, gson);
+        args[types.length - 1] = elements;
+
+        Object result;
+        try {
+            result = method.invoke(handler, args);
+        } catch (Throwable t) {
+            throw toRemoteException(t);
+        }
+
+        // whatever the handler left unread is skipped
+        while (elements.hasNext()) {
+            reader.skipValue();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return result;
+    }
+
+    private Long getDeadline(JsonObject req, long received) {
+        JsonElement timeout = req.get("timeout");
+        if (timeout == null) {
+            return null;
+        }
+        return received + TimeUnit.MILLISECONDS.toNanos(timeout.getAsLong());
+    }
+
+    private boolean isExpired(JsonObject resp, String methodName, Long deadline) {
+        if (deadline == null) {
+            return false;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            return false;
+        }
+        LOG.debug("dropping {}, deadline passed {} ms ago", methodName, TimeUnit.NANOSECONDS.toMillis(-remaining));
+        setError(resp, JsonRpcErrorCodes.DEADLINE_EXCEEDED_ERROR_CODE, "deadline exceeded", null);
+        return true;
+    }
+
+    private Long startDeadline(Long deadline) {
+        if (deadline == null) {
+            return null;
+        }
+        return JsonRpcDeadline.start(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return true when the response has been sent to <code>transport</code>
+     *         already, streamed or as the start of a subscription
+     */
+    private boolean setResult(JsonObject resp, Object result, JsonRpcServerTransport transport) throws Exception {
+        if (result instanceof JsonRpcPublisher) {
+            subscribe(resp, (JsonRpcPublisher<?>) result, transport);
+            return true;
+        }
+        if (!(result instanceof Iterator)) {
+            resp.add("result", gson.toJsonTree(result));
+            return false;
+        }
+
+        Iterator<?> sequence = (Iterator<?>) result;
+        try {
+            if (transport instanceof JsonRpcStreamingServerTransport) {
+                // a failure on the first element can still be reported as an error
+                String first = (sequence.hasNext() ? gson.toJson(sequence.next()) : null);
+                writeResponse((JsonRpcStreamingServerTransport) transport, resp, first, sequence);
+                return true;
+            }
+            JsonArray array = new JsonArray();
+            while (sequence.hasNext()) {
+                array.add(gson.toJsonTree(sequence.next()));
+            }
+            resp.add("result", array);
+            return false;
+        } finally {
+            if (sequence instanceof JsonRpcCursor) {
+                ((JsonRpcCursor<?>) sequence).close();
+            }
+        }
+    }
+
+    /**
+     * Sends the response, naming the notifications to expect, as the first
+     * event of the stream and hands the stream over to the publisher.
+     */
+    private void subscribe(JsonObject resp, JsonRpcPublisher<?> publisher, JsonRpcServerTransport transport)
+            throws Exception {
+        if (!(transport instanceof JsonRpcEventServerTransport)) {
+            throw new JsonRpcRemoteException(JsonRpcErrorCodes.INVALID_REQUEST_ERROR_CODE,
+                    "subscription needs an event stream transport", null);
+        }
+
+        resp.addProperty("result", publisher.getMethod());
+        String responseData = resp.toString();
+        LOG.debug("JSON-RPC <<  {} subscribed", responseData);
+        JsonRpcPublisher.Sink sink = ((JsonRpcEventServerTransport) transport).openEvents();
+        try {
+            sink.send(responseData);
         } catch (Exception e) {
-            LOG.warn("unable to write response : " + resp, e);
+            LOG.warn("unable to start subscription : " + responseData, e);
+            sink.close();
+            return;
+        }
+        publisher.subscribe(sink);
+    }
+
+    private void setError(JsonObject resp, String methodName, Throwable t) {
+        LOG.warn("exception occured while executing : " + methodName, t);
+        if (t instanceof JsonRpcRemoteException) {
+            JsonRpcRemoteException e = (JsonRpcRemoteException) t;
+            setError(resp, e.getCode(), e.getMessage(), e.getData());
+        } else {
+            setError(resp, JsonRpcErrorCodes.getServerError(1), t.getMessage(), getStackTrace(t));
         }
     }
 
-    private void sendError(JsonRpcServerTransport transport, JsonObject resp, JsonRpcRemoteException e) {
-        sendError(transport, resp, e.getCode(), e.getMessage(), e.getData());
+    private JsonObject newResponse() {
+        JsonObject resp = new JsonObject();
+        resp.addProperty("jsonrpc", "2.0");
+        return resp;
     }
 
-    private void sendError(JsonRpcServerTransport transport, JsonObject resp, Integer code, String message, String data) {
+    private void setError(JsonObject resp, Integer code, String message, String data) {
         JsonObject error = new JsonObject();
         if (code != null) {
             error.addProperty("code", code);
@@ -187,13 +1322,70 @@ public final class JsonRpcExecutor implements RpcIntroSpection {
 
         resp.add("error", error);
         resp.remove("result");
-        String responseData = resp.toString();
+    }
 
-        LOG.debug("JSON-RPC error <<  {}", responseData);
+    private void writeResponse(JsonRpcServerTransport transport, JsonElement resp) {
+        writeResponse(transport, resp.toString());
+    }
+
+    private void writeResponse(JsonRpcServerTransport transport, String responseData) {
+        LOG.debug("JSON-RPC <<  {}", responseData);
         try {
             transport.writeResponse(responseData);
         } catch (Exception e) {
-            LOG.error("unable to write error response : " + responseData, e);
+            LOG.warn("unable to write response : " + responseData, e);
+        }
+    }
+
+    /**
+     * Writes the response around the elements of the result as they come.
+     * Once started there is no way left to report an error, a failure leaves
+     * the response unfinished and is thrown out of {@link #execute} so the
+     * transport is not ended as if the response were complete.
+     *
+     * @param first the first element, as json, null when there is none
+     */
+    private void writeResponse(JsonRpcStreamingServerTransport transport, JsonObject resp, String first,
+                               Iterator<?> rest) {
+        String head = resp.toString();
+        LOG.debug("JSON-RPC <<  {} streamed", head);
+        Writer out;
+        try {
+            out = transport.openResponse();
+        } catch (Exception e) {
+            LOG.warn("unable to write streamed response : " + head, e);
+            return;
+        }
+        try {
+            out.write(head, 0, head.length() - 1);
+            out.write(",\"result\":[");
+            if (first != null) {
+                out.write(first);
+                while (rest.hasNext()) {
+                    out.write(',');
+                    gson.toJson(rest.next(), out);
+                }
+            }
+            out.write("]}");
+        } catch (Exception e) {
+            LOG.warn("unable to write streamed response : " + head, e);
+            throw new ResponseAbortedException(e);
+        }
+        try {
+            out.close();
+        } catch (Exception e) {
+            LOG.warn("unable to close streamed response", e);
+        }
+    }
+
+    /**
+     * A streamed response failed after it started, let through the handling
+     * of the request up to the caller of {@link #execute}.
+     */
+    private static final class ResponseAbortedException extends JsonRpcException {
+
+        ResponseAbortedException(Throwable cause) {
+            super("streamed response aborted", cause);
         }
     }
 
@@ -205,52 +1397,170 @@ public final class JsonRpcExecutor implements RpcIntroSpection {
         return str.toString();
     }
 
-    private JsonElement executeMethod(String methodName, JsonArray params) throws Throwable {
+    private Object executeMethod(String fullName, JsonArray params) throws Throwable {
         try {
-            Matcher mat = METHOD_PATTERN.matcher(methodName);
+            Matcher mat = METHOD_PATTERN.matcher(fullName);
             if (!mat.find()) {
                 throw new JsonRpcRemoteException(JsonRpcErrorCodes.INVALID_REQUEST_ERROR_CODE, "invalid method name", null);
             }
 
             String handleName = mat.group(1);
-            methodName = mat.group(2);
+            String methodName = mat.group(2);
 
-            HandleEntry<?> handleEntry = handlers.get(handleName);
+            HandleEntry<?> handleEntry = registry.get(handleName);
             if (handleEntry == null) {
                 throw new JsonRpcRemoteException(JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE, "no such method exists", null);
             }
 
-            Method executableMethod = null;
-            for (Method m : handleEntry.getMethods()) {
-                if (!m.getName().equals(methodName)) {
-                    continue;
+            JsonRpcScheduler scheduler = enter(handleEntry, fullName);
+            try {
+                for (JsonRpcDispatcher<Object> dispatcher : handleEntry.getDispatchers()) {
+                    Object result = dispatcher.dispatch(handleEntry.getHandler(), methodName, params);
+                    if (!JsonRpcDispatcher.isNoSuchMethod(result)) {
+                        return result;
+                    }
                 }
 
-                if (canExecute(m, params)) {
-                    executableMethod = m;
-                    break;
+                Method executableMethod = null;
+                for (Method m : handleEntry.getMethods()) {
+                    if (!m.getName().equals(methodName)) {
+                        continue;
+                    }
+
+                    if (canExecute(m, params)) {
+                        executableMethod = m;
+                        break;
+                    }
                 }
+
+                if (executableMethod == null) {
+                    throw new JsonRpcRemoteException(JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE, "no such method exists", null);
+                }
+
+                return executableMethod.invoke(
+                        handleEntry.getHandler(), getParameters(executableMethod, params));
+            } finally {
+                exit(handleEntry, scheduler);
             }
+        } catch (Throwable t) {
+            throw toRemoteException(t);
+        }
+    }
 
-            if (executableMethod == null) {
+    private Object executeMethod(MethodTable.Entry entry, RequestEnvelope env) throws Throwable {
+        HandleEntry<?> handleEntry = entry.getHandleEntry();
+        if (!handleEntry.getDispatchers().isEmpty()) {
+            // generated dispatchers read their parameters from a tree
+            return executeMethod(entry.getName(), env.getParams());
+        }
+        try {
+            JsonRpcScheduler scheduler = enter(handleEntry, entry.getName());
+            try {
+                for (Method m : entry.getMethods()) {
+                    if (m.getParameterTypes().length == env.getParamCount()) {
+                        return m.invoke(handleEntry.getHandler(), getParameters(m, env));
+                    }
+                }
                 throw new JsonRpcRemoteException(JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE, "no such method exists", null);
+            } finally {
+                exit(handleEntry, scheduler);
             }
+        } catch (Throwable t) {
+            throw toRemoteException(t);
+        }
+    }
 
-            Object result = executableMethod.invoke(
-                    handleEntry.getHandler(), getParameters(executableMethod, params));
+    /**
+     * Waits for the scheduler, if any, to let the call run, and counts the
+     * call on its handler, until {@link #exit} and the response is written,
+     * when the slot of the call is released as well.
+     *
+     * @return the scheduler the call has to be released to
+     */
+    private JsonRpcScheduler enter(HandleEntry<?> handleEntry, String methodName) {
+        JsonRpcScheduler scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.acquire(methodName);
+        }
+        handleEntry.enter();
+        return scheduler;
+    }
 
-            return new Gson().toJsonTree(result);
-        } catch (Throwable t) {
-            if (t instanceof InvocationTargetException) {
-                t = ((InvocationTargetException) t).getTargetException();
+    private static void exit(HandleEntry<?> handleEntry, JsonRpcScheduler scheduler) {
+        PendingCalls pending = PENDING.get();
+        if (pending.isOpen()) {
+            // the result may still be read from the handler, a cursor say
+            pending.add(handleEntry, scheduler);
+        } else {
+            release(handleEntry, scheduler);
+        }
+    }
+
+    private static void release(HandleEntry<?> handleEntry, JsonRpcScheduler scheduler) {
+        handleEntry.exit();
+        if (scheduler != null) {
+            scheduler.release();
+        }
+    }
+
+    /**
+     * Calls of the requests executed on a thread whose handler returned, kept
+     * counted and in their slot until the response of the request is written.
+     */
+    private static final class PendingCalls {
+
+        private HandleEntry<?>[] entries = new HandleEntry<?>[4];
+        private JsonRpcScheduler[] schedulers = new JsonRpcScheduler[4];
+        private int size;
+        private int requests;
+
+        /**
+         * @return the mark to {@link #close} the request with
+         */
+        int open() {
+            requests++;
+            return size;
+        }
+
+        boolean isOpen() {
+            return requests > 0;
+        }
+
+        void add(HandleEntry<?> entry, JsonRpcScheduler scheduler) {
+            if (size == entries.length) {
+                HandleEntry<?>[] grownEntries = new HandleEntry<?>[size * 2];
+                System.arraycopy(entries, 0, grownEntries, 0, size);
+                entries = grownEntries;
+                JsonRpcScheduler[] grownSchedulers = new JsonRpcScheduler[size * 2];
+                System.arraycopy(schedulers, 0, grownSchedulers, 0, size);
+                schedulers = grownSchedulers;
             }
-            if (t instanceof JsonRpcRemoteException) {
-                throw (JsonRpcRemoteException) t;
+            entries[size] = entry;
+            schedulers[size++] = scheduler;
+        }
+
+        void close(int mark) {
+            while (size > mark) {
+                HandleEntry<?> entry = entries[--size];
+                JsonRpcScheduler scheduler = schedulers[size];
+                entries[size] = null;
+                schedulers[size] = null;
+                release(entry, scheduler);
             }
-            throw new JsonRpcRemoteException(JsonRpcErrorCodes.getServerError(0), t.getMessage(), getStackTrace(t));
+            requests--;
         }
     }
 
+    private JsonRpcRemoteException toRemoteException(Throwable t) {
+        if (t instanceof InvocationTargetException) {
+            t = ((InvocationTargetException) t).getTargetException();
+        }
+        if (t instanceof JsonRpcRemoteException) {
+            return (JsonRpcRemoteException) t;
+        }
+        return new JsonRpcRemoteException(JsonRpcErrorCodes.getServerError(0), t.getMessage(), getStackTrace(t));
+    }
+
     public boolean canExecute(Method method, JsonArray params) {
         if (method.getParameterTypes().length != params.size()) {
             return false;
@@ -261,20 +1571,51 @@ public final class JsonRpcExecutor implements RpcIntroSpection {
 
     public Object[] getParameters(Method method, JsonArray params) {
         List<Object> list = new ArrayList<Object>();
-        Gson gson = new Gson();
         Class<?>[] types = method.getParameterTypes();
         for (int i = 0; i < types.length; i++) {
             JsonElement p = params.get(i);
-            Object o = gson.fromJson(p.toString(), types[i]);
+            Object o;
+            if (types[i] == Iterator.class) {
+                Class<?> elementType = TypeChecker.getElementType(method.getGenericParameterTypes()[i]);
+                Object[] elements = (Object[]) gson.fromJson(p.toString(),
+                        Array.newInstance(elementType, 0).getClass());
+                o = (elements == null ? null : Arrays.asList(elements).iterator());
+            } else {
+                o = gson.fromJson(p.toString(), types[i]);
+            }
             list.add(o);
         }
         return list.toArray();
     }
 
+    /**
+     * Reads each parameter straight from its range of the request.
+     */
+    private Object[] getParameters(Method method, RequestEnvelope env) {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == Iterator.class) {
+                Class<?> elementType = TypeChecker.getElementType(method.getGenericParameterTypes()[i]);
+                Object[] elements = (Object[]) gson.fromJson(env.getParam(i),
+                        Array.newInstance(elementType, 0).getClass());
+                args[i] = (elements == null ? null : Arrays.asList(elements).iterator());
+            } else {
+                args[i] = gson.fromJson(env.getParam(i), types[i]);
+            }
+        }
+        return args;
+    }
+
     public String[] listMethods() {
+        return listMethods(registry);
+    }
+
+    private static String[] listMethods(HandlerRegistry registry) {
         Set<String> methods = new TreeSet<String>();
-        for (String name : this.handlers.keySet()) {
-            HandleEntry<?> handleEntry = this.handlers.get(name);
+        for (Map.Entry<String, HandleEntry<?>> e : registry.getHandlers().entrySet()) {
+            String name = e.getKey();
+            HandleEntry<?> handleEntry = e.getValue();
             for (String method : handleEntry.getSignatures().keySet()) {
                 methods.add(name + "." + method);
             }
@@ -283,7 +1624,45 @@ public final class JsonRpcExecutor implements RpcIntroSpection {
         return methods.toArray(arr);
     }
 
+    public String methodsVersion() {
+        HandlerRegistry registry = this.registry;
+        String version = registry.getVersion();
+        if (version == null) {
+            StringBuilder buff = new StringBuilder();
+            for (String method : listMethods(registry)) {
+                buff.append(method);
+                for (String sign : methodSignature(registry, method)) {
+                    buff.append(';').append(sign);
+                }
+                buff.append('\n');
+            }
+            version = digest(buff.toString());
+            registry.setVersion(version);
+        }
+        return version;
+    }
+
+    private static String digest(String data) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-1").digest(data.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
     public String[] methodSignature(String method) {
+        return methodSignature(registry, method);
+    }
+
+    private static String[] methodSignature(HandlerRegistry registry, String method) {
         if (method == null) {
             throw new NullPointerException("method");
         }
@@ -298,7 +1677,7 @@ public final class JsonRpcExecutor implements RpcIntroSpection {
 
         Set<String> signatures = new TreeSet<String>();
 
-        HandleEntry<?> handleEntry = handlers.get(handleName);
+        HandleEntry<?> handleEntry = registry.get(handleName);
         if (handleEntry == null) {
             throw new IllegalArgumentException("no such method exists");
         }
@@ -0,0 +1,458 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcErrorCodes;
+import org.json.rpc.commons.JsonRpcRemoteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides the order in which the calls reaching a {@link JsonRpcExecutor}
+ * run, set with {@link JsonRpcExecutor#setScheduler}.
+ * <p/>
+ * At most <code>workers</code> calls run at a time. The others wait in the
+ * queue of their priority class, given by the method called or by the caller,
+ * and a free slot goes to the class of highest priority with calls waiting.
+ * Within a class, the callers, or tenants, share the slots in proportion to
+ * their weights. A call waits at most until its deadline, and is rejected at
+ * once when the queue of its class is full.
+ * <p/>
+ * Calls wait on the thread which executes the request, so transports answer
+ * on their own thread as before. A call keeps its slot until the response of
+ * its request is written, a streamed result read to its end. The calls made
+ * on a thread holding a slot run in that slot without waiting: the calls of a
+ * batch after the first, and calls made from within a handler to an executor
+ * the scheduler is set on, which would otherwise wait for a slot held by their
+ * own thread.
+ */
+public class JsonRpcScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonRpcScheduler.class);
+
+    /**
+     * Class of the calls no method or caller is mapped for, priority zero.
+     */
+    public static final String DEFAULT_CLASS = "default";
+
+    private static final long STRIDE = 1 << 20;
+
+    private static final ThreadLocal<String> CALLER = new ThreadLocal<String>();
+
+    /**
+     * Tells who sent the request arriving on a transport.
+     */
+    public interface CallerResolver {
+        /**
+         * @return the caller, null when unknown
+         */
+        String getCaller(JsonRpcServerTransport transport);
+    }
+
+    private final int workers;
+
+    // slots taken by the current thread, one at most, and the calls in it
+    private final ThreadLocal<int[]> held = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private int running;
+    private int queued;
+
+    private final ConcurrentMap<String, PriorityClass> classes = new ConcurrentHashMap<String, PriorityClass>();
+    private volatile PriorityClass[] byPriority = new PriorityClass[0];
+    private final ConcurrentMap<String, PriorityClass> methodClasses = new ConcurrentHashMap<String, PriorityClass>();
+    private final ConcurrentMap<String, PriorityClass> callerClasses = new ConcurrentHashMap<String, PriorityClass>();
+    private final ConcurrentMap<String, Integer> weights = new ConcurrentHashMap<String, Integer>();
+
+    private volatile CallerResolver callerResolver;
+
+    /**
+     * @param workers  calls allowed to run at a time
+     * @param maxQueue calls allowed to wait in the queue of {@link #DEFAULT_CLASS}
+     */
+    public JsonRpcScheduler(int workers, int maxQueue) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers should be positive : " + workers);
+        }
+        this.workers = workers;
+        addClass(DEFAULT_CLASS, 0, maxQueue);
+    }
+
+    /**
+     * @param priority calls of higher priority run first
+     * @param maxQueue calls allowed to wait in the queue of the class
+     */
+    public void addClass(String name, int priority, int maxQueue) {
+        if (maxQueue < 0) {
+            throw new IllegalArgumentException("maxQueue should not be negative : " + maxQueue);
+        }
+        lock.lock();
+        try {
+            if (classes.containsKey(name)) {
+                throw new IllegalArgumentException("class already exists : " + name);
+            }
+            PriorityClass cls = new PriorityClass(name, priority, maxQueue);
+            classes.put(name, cls);
+
+            PriorityClass[] sorted = new PriorityClass[byPriority.length + 1];
+            System.arraycopy(byPriority, 0, sorted, 0, byPriority.length);
+            sorted[byPriority.length] = cls;
+            Arrays.sort(sorted, new Comparator<PriorityClass>() {
+                public int compare(PriorityClass a, PriorityClass b) {
+                    return (a.priority > b.priority ? -1 : (a.priority == b.priority ? 0 : 1));
+                }
+            });
+            byPriority = sorted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param method full name of the method, <code>handle.method</code>
+     */
+    public void setMethodClass(String method, String className) {
+        methodClasses.put(method, getClass(className));
+    }
+
+    /**
+     * Calls of a caller mapped to a class as well as their method take the
+     * class of lower priority of the two, neither can jump ahead of the other.
+     */
+    public void setCallerClass(String caller, String className) {
+        callerClasses.put(caller, getClass(className));
+    }
+
+    public void setCallerResolver(CallerResolver callerResolver) {
+        this.callerResolver = callerResolver;
+    }
+
+    /**
+     * @param weight share of the slots of its class the caller gets while
+     *               other callers have calls waiting, one by default
+     */
+    public void setWeight(String caller, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight should be positive : " + weight);
+        }
+        weights.put(caller, weight);
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueLength(String className) {
+        PriorityClass cls = getClass(className);
+        lock.lock();
+        try {
+            return cls.queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return calls of the class which ran, whether they waited or not
+     */
+    public long getAdmitted(String className) {
+        return getClass(className).admitted.get();
+    }
+
+    /**
+     * @return calls of the class rejected because its queue was full
+     */
+    public long getRejected(String className) {
+        return getClass(className).rejected.get();
+    }
+
+    /**
+     * @return calls of the class whose deadline passed while they waited
+     */
+    public long getExpired(String className) {
+        return getClass(className).expired.get();
+    }
+
+    /**
+     * @return milliseconds the admitted calls of the class waited, in total
+     */
+    public long getQueueWaitTime(String className) {
+        return TimeUnit.NANOSECONDS.toMillis(getClass(className).waitTime.get());
+    }
+
+    /**
+     * @return longest wait of an admitted call of the class, in milliseconds
+     */
+    public long getMaxQueueWaitTime(String className) {
+        return TimeUnit.NANOSECONDS.toMillis(getClass(className).maxWaitTime.get());
+    }
+
+    private PriorityClass getClass(String name) {
+        PriorityClass cls = classes.get(name);
+        if (cls == null) {
+            throw new IllegalArgumentException("no such class : " + name);
+        }
+        return cls;
+    }
+
+    /**
+     * Sets the caller of the calls the current thread makes while executing
+     * the request of <code>transport</code>.
+     *
+     * @return the previous caller, to be passed to {@link #endRequest}
+     */
+    String startRequest(JsonRpcServerTransport transport) {
+        String previous = CALLER.get();
+        CallerResolver resolver = callerResolver;
+        CALLER.set(resolver == null ? null : resolver.getCaller(transport));
+        return previous;
+    }
+
+    void endRequest(String previous) {
+        if (previous == null) {
+            CALLER.remove();
+        } else {
+            CALLER.set(previous);
+        }
+    }
+
+    /**
+     * Waits for a slot to run a call to the method, until {@link #release()}.
+     */
+    void acquire(String method) throws JsonRpcRemoteException {
+        String caller = CALLER.get();
+        PriorityClass cls = classify(method, caller);
+        int[] calls = held.get();
+        if (calls[0] > 0) {
+            calls[0]++;
+            cls.admitted.incrementAndGet();
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (running < workers && queued == 0) {
+                running++;
+                cls.admitted.incrementAndGet();
+                calls[0] = 1;
+                return;
+            }
+            if (cls.queued >= cls.maxQueue) {
+                cls.rejected.incrementAndGet();
+                throw new JsonRpcRemoteException(JsonRpcErrorCodes.OVERLOADED_ERROR_CODE,
+                        "queue of " + cls.name + " is full", null);
+            }
+
+            Waiter waiter = cls.add(caller == null ? "" : caller, lock.newCondition());
+            queued++;
+            long remaining = JsonRpcDeadline.remaining();
+            long nanos = (remaining == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(remaining));
+            try {
+                while (!waiter.granted) {
+                    if (nanos <= 0) {
+                        cancel(waiter);
+                        cls.expired.incrementAndGet();
+                        LOG.debug("dropping {}, deadline passed in the queue of {}", method, cls.name);
+                        throw new JsonRpcRemoteException(JsonRpcErrorCodes.DEADLINE_EXCEEDED_ERROR_CODE,
+                                "deadline exceeded", null);
+                    }
+                    if (nanos == Long.MAX_VALUE) {
+                        waiter.condition.await();
+                    } else {
+                        nanos = waiter.condition.awaitNanos(nanos);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!waiter.granted) {
+                    cancel(waiter);
+                    throw new JsonRpcRemoteException(JsonRpcErrorCodes.getServerError(0),
+                            "interrupted in the queue of " + cls.name, null);
+                }
+            }
+
+            long waited = System.nanoTime() - waiter.enqueued;
+            calls[0] = 1;
+            cls.admitted.incrementAndGet();
+            cls.waitTime.addAndGet(waited);
+            if (waited > cls.maxWaitTime.get()) {
+                cls.maxWaitTime.set(waited);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot once the last call the thread runs in it is released.
+     */
+    void release() {
+        int[] calls = held.get();
+        if (--calls[0] > 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            running--;
+            for (PriorityClass cls : byPriority) {
+                if (cls.queued > 0) {
+                    Waiter waiter = cls.poll(weights);
+                    queued--;
+                    running++;
+                    waiter.granted = true;
+                    waiter.condition.signal();
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PriorityClass classify(String method, String caller) {
+        PriorityClass cls = methodClasses.get(method);
+        PriorityClass callerCls = (caller == null ? null : callerClasses.get(caller));
+        if (cls == null || (callerCls != null && callerCls.priority < cls.priority)) {
+            cls = callerCls;
+        }
+        return (cls == null ? classes.get(DEFAULT_CLASS) : cls);
+    }
+
+    private void cancel(Waiter waiter) {
+        waiter.tenant.waiters.remove(waiter);
+        waiter.cls.queued--;
+        queued--;
+        if (waiter.tenant.waiters.isEmpty()) {
+            waiter.cls.tenants.remove(waiter.tenant.name);
+        }
+    }
+
+    /**
+     * Queues of a priority class, one per tenant with calls waiting, served by
+     * stride scheduling: the tenant which has been served least relative to
+     * its weight goes next. Guarded by the scheduler lock.
+     */
+    private static final class PriorityClass {
+
+        private final String name;
+        private final int priority;
+        private final int maxQueue;
+
+        private final Map<String, Tenant> tenants = new LinkedHashMap<String, Tenant>();
+        private int queued;
+        private long pass;
+
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong expired = new AtomicLong();
+        private final AtomicLong waitTime = new AtomicLong();
+        private final AtomicLong maxWaitTime = new AtomicLong();
+
+        PriorityClass(String name, int priority, int maxQueue) {
+            this.name = name;
+            this.priority = priority;
+            this.maxQueue = maxQueue;
+        }
+
+        Waiter add(String caller, Condition condition) {
+            Tenant tenant = tenants.get(caller);
+            if (tenant == null) {
+                // a tenant coming back starts level with the others, idle
+                // time earns no credit
+                tenant = new Tenant(caller, pass);
+                tenants.put(caller, tenant);
+            }
+            Waiter waiter = new Waiter(this, tenant, condition);
+            tenant.waiters.add(waiter);
+            queued++;
+            return waiter;
+        }
+
+        Waiter poll(Map<String, Integer> weights) {
+            Tenant next = null;
+            for (Tenant tenant : tenants.values()) {
+                if (next == null || tenant.pass < next.pass) {
+                    next = tenant;
+                }
+            }
+            Waiter waiter = next.waiters.poll();
+            queued--;
+            pass = next.pass;
+            Integer weight = weights.get(next.name);
+            next.pass += STRIDE / (weight == null ? 1 : weight);
+            if (next.waiters.isEmpty()) {
+                tenants.remove(next.name);
+            }
+            return waiter;
+        }
+    }
+
+    private static final class Tenant {
+
+        private final String name;
+        private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+        private long pass;
+
+        Tenant(String name, long pass) {
+            this.name = name;
+            this.pass = pass;
+        }
+    }
+
+    private static final class Waiter {
+
+        private final PriorityClass cls;
+        private final Tenant tenant;
+        private final Condition condition;
+        private final long enqueued = System.nanoTime();
+        private boolean granted;
+
+        Waiter(PriorityClass cls, Tenant tenant, Condition condition) {
+            this.cls = cls;
+            this.tenant = tenant;
+            this.condition = condition;
+        }
+    }
+}
@@ -16,13 +16,27 @@
 
 package org.json.rpc.server;
 
+import org.json.rpc.commons.JsonRpcPublisher;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 
-public class JsonRpcServletTransport implements JsonRpcServerTransport {
+/**
+ * Transport over a servlet request and response. Subscriptions to a
+ * {@link JsonRpcPublisher} use asynchronous processing, the servlet has to be
+ * mapped with <code>async-supported</code> set.
+ */
+public class JsonRpcServletTransport implements JsonRpcStreamingServerTransport, JsonRpcEventServerTransport {
 
     private static final int BUFF_LENGTH = 1024;
 
@@ -35,6 +49,14 @@ public class JsonRpcServletTransport implements JsonRpcServerTransport {
         this.resp = resp;
     }
 
+    /**
+     * The servlet request, to tell who the caller is, see
+     * {@link JsonRpcScheduler.CallerResolver}.
+     */
+    public HttpServletRequest getRequest() {
+        return req;
+    }
+
     public String readRequest() throws Exception {
         InputStream in = null;
         try {
@@ -55,6 +77,11 @@ public class JsonRpcServletTransport implements JsonRpcServerTransport {
         }
     }
 
+    public Reader openRequest() throws Exception {
+        String encoding = req.getCharacterEncoding();
+        return new InputStreamReader(req.getInputStream(), (encoding == null ? "UTF-8" : encoding));
+    }
+
     public void writeResponse(String responseData) throws Exception {
         byte[] data = responseData.getBytes(resp.getCharacterEncoding());
         resp.addHeader("Content-Type", "application/json");
@@ -71,4 +98,70 @@ public class JsonRpcServletTransport implements JsonRpcServerTransport {
             }
         }
     }
+
+    /**
+     * No content length is set, so the container sends the response with
+     * chunked transfer encoding as its buffer fills.
+     */
+    public Writer openResponse() throws Exception {
+        resp.addHeader("Content-Type", "application/json");
+        return resp.getWriter();
+    }
+
+    /**
+     * Sends every notification as a server-sent event on a response kept open
+     * with {@link AsyncContext}, without a timeout.
+     */
+    public JsonRpcPublisher.Sink openEvents() throws Exception {
+        resp.setContentType("text/event-stream");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        final AsyncContext async = req.startAsync(req, resp);
+        async.setTimeout(0);
+        final PrintWriter out = resp.getWriter();
+        final EventListener listener = new EventListener();
+        async.addListener(listener);
+
+        return new JsonRpcPublisher.Sink() {
+            public void send(String notification) throws Exception {
+                if (listener.done) {
+                    throw new IOException("event stream closed");
+                }
+                out.write("data: ");
+                out.write(notification);
+                out.write("\n\n");
+                out.flush();
+                if (out.checkError()) {
+                    throw new IOException("unable to write event");
+                }
+            }
+
+            public void close() {
+                if (!listener.done) {
+                    async.complete();
+                }
+            }
+        };
+    }
+
+    private static final class EventListener implements AsyncListener {
+
+        private volatile boolean done;
+
+        public void onComplete(AsyncEvent event) throws IOException {
+            done = true;
+        }
+
+        public void onTimeout(AsyncEvent event) throws IOException {
+            done = true;
+        }
+
+        public void onError(AsyncEvent event) throws IOException {
+            done = true;
+        }
+
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.server;
+
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Server transport which can read a request and send a response in parts,
+ * used by the executor to handle large parameters and results without holding
+ * them in memory as a whole.
+ */
+public interface JsonRpcStreamingServerTransport extends JsonRpcServerTransport {
+
+    /**
+     * Used by the executor instead of {@link #readRequest()}, it closes the
+     * reader once the request has been read.
+     */
+    Reader openRequest() throws Exception;
+
+    /**
+     * Starts a response whose length is not known in advance. The executor
+     * closes the writer once the response is complete, and leaves it open
+     * when the response fails part way, throwing out of
+     * {@link JsonRpcExecutor#execute}.
+     */
+    Writer openResponse() throws Exception;
+}
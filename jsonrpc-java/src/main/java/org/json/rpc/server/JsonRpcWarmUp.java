@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import com.google.gson.Gson;
+import org.json.rpc.commons.TypeChecker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up an executor before it takes traffic, so the first calls after a
+ * deploy don't pay for class loading, reflection caches and interpreted code.
+ * <p/>
+ * {@link #run()} first reads and writes a default value of every parameter
+ * and result type of the registered methods, which loads and compiles the
+ * Gson code for each type. The executor makes a Gson per call, there is no
+ * instance of it to warm as such. It then executes requests, over a plain and
+ * a streaming transport, for <code>rounds</code> rounds or until
+ * <code>maxTime</code> passed. The requests are the recorded ones added with
+ * {@link #addRequest}, or else one per method with default parameters.
+ * <p/>
+ * By default they run against stubs of the handlers, answering default
+ * values, so the handlers see no calls. The stubs are registered in an
+ * executor of their own, with a method table of its own, but share the
+ * generated dispatchers and the codecs of the handlers, which are warmed
+ * along. With stubs disabled the requests go through the executor itself,
+ * handlers included.
+ * <p/>
+ * {@link #isReady()} tells when the warm-up is done, to register with a load
+ * balancer only then.
+ */
+public class JsonRpcWarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonRpcWarmUp.class);
+
+    private final JsonRpcExecutor executor;
+    private final List<String> requests = new ArrayList<String>();
+    private final Gson gson = new Gson();
+
+    private volatile int rounds = 5000;
+    private volatile long maxTime = 30000;
+    private volatile boolean stubs = true;
+
+    private volatile boolean ready;
+    private volatile long warmUpTime;
+    private volatile long executed;
+
+    public JsonRpcWarmUp(JsonRpcExecutor executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * @param rounds  times each request is executed over each transport
+     * @param maxTime milliseconds after which the warm-up ends anyway
+     */
+    public void setLimits(int rounds, long maxTime) {
+        if (rounds < 1) {
+            throw new IllegalArgumentException("rounds should be positive : " + rounds);
+        }
+        this.rounds = rounds;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * @param stubs false to execute the requests against the handlers
+     */
+    public void setStubs(boolean stubs) {
+        this.stubs = stubs;
+    }
+
+    /**
+     * Adds a recorded request, in place of the generated ones.
+     */
+    public synchronized void addRequest(String requestData) {
+        requests.add(requestData);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return milliseconds the last warm-up took
+     */
+    public long getWarmUpTime() {
+        return warmUpTime;
+    }
+
+    /**
+     * @return requests executed by the last warm-up
+     */
+    public long getExecuted() {
+        return executed;
+    }
+
+    /**
+     * Runs the warm-up on the current thread.
+     *
+     * @return milliseconds it took
+     */
+    public long run() {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(maxTime);
+        HandlerRegistry registry = executor.getRegistry();
+
+        for (HandleEntry<?> handleEntry : registry.getHandlers().values()) {
+            for (Method m : handleEntry.getMethods()) {
+                Type[] types = m.getGenericParameterTypes();
+                Class<?>[] classes = m.getParameterTypes();
+                for (int i = 0; i < types.length; i++) {
+                    roundTrip(classes[i], types[i]);
+                }
+                roundTrip(m.getReturnType(), m.getGenericReturnType());
+            }
+        }
+
+        List<String> reqs;
+        synchronized (this) {
+            reqs = new ArrayList<String>(requests);
+        }
+        if (reqs.isEmpty()) {
+            reqs = getRequests(registry);
+        }
+        JsonRpcExecutor target = (stubs ? newStubExecutor(registry) : executor);
+
+        long n = 0;
+        for (int round = 0; round < rounds && System.nanoTime() - end < 0; round++) {
+            for (String requestData : reqs) {
+                target.execute(new WarmUpTransport(requestData));
+                target.execute(new StreamingWarmUpTransport(requestData));
+                n += 2;
+            }
+        }
+
+        executed = n;
+        warmUpTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        ready = true;
+        LOG.info("warm-up executed {} requests in {} ms", n, warmUpTime);
+        return warmUpTime;
+    }
+
+    private void roundTrip(Class<?> clazz, Type type) {
+        if (clazz == void.class || TypeChecker.isSequenceType(clazz) || TypeChecker.isPublisherType(clazz)) {
+            return;
+        }
+        try {
+            gson.toJson(gson.fromJson(getDefault(clazz), type));
+        } catch (RuntimeException e) {
+            LOG.debug("no default value of {} : {}", type, e);
+        }
+    }
+
+    private List<String> getRequests(HandlerRegistry registry) {
+        List<String> reqs = new ArrayList<String>();
+        for (Map.Entry<String, HandleEntry<?>> e : registry.getHandlers().entrySet()) {
+            if (e.getValue().getHandler() instanceof JsonRpcExecutor) {
+                // introspection, whose parameters have to name a method
+                continue;
+            }
+            for (Method m : e.getValue().getMethods()) {
+                StringBuilder buff = new StringBuilder();
+                buff.append("{\"jsonrpc\":\"2.0\",\"id\":").append(reqs.size())
+                        .append(",\"method\":\"").append(e.getKey()).append('.').append(m.getName())
+                        .append("\",\"params\":[");
+                Class<?>[] params = m.getParameterTypes();
+                for (int i = 0; i < params.length; i++) {
+                    buff.append(i == 0 ? "" : ",").append(getDefault(params[i]));
+                }
+                reqs.add(buff.append("]}").toString());
+            }
+        }
+        return reqs;
+    }
+
+    /**
+     * @return json of a default value of the class
+     */
+    private static String getDefault(Class<?> clazz) {
+        if (clazz == boolean.class || clazz == Boolean.class) {
+            return "false";
+        }
+        if (clazz == char.class || clazz == Character.class) {
+            return "\"a\"";
+        }
+        if (clazz.isPrimitive() || Number.class.isAssignableFrom(clazz)) {
+            return "0";
+        }
+        if (clazz == String.class) {
+            return "\"\"";
+        }
+        if (clazz.isArray() || Collection.class.isAssignableFrom(clazz) || clazz == Iterator.class) {
+            return "[]";
+        }
+        if (clazz.isEnum()) {
+            Object[] constants = clazz.getEnumConstants();
+            return (constants.length == 0 ? "null" : "\"" + ((Enum<?>) constants[0]).name() + "\"");
+        }
+        if (Map.class.isAssignableFrom(clazz) || !clazz.getName().startsWith("java.")) {
+            return "{}";
+        }
+        return "null";
+    }
+
+    JsonRpcExecutor newStubExecutor(HandlerRegistry registry) {
+        JsonRpcExecutor stubExecutor = new JsonRpcExecutor(executor.getTypeChecker());
+        for (Map.Entry<String, HandleEntry<?>> e : registry.getHandlers().entrySet()) {
+            if (stubExecutor.getRegistry().get(e.getKey()) != null) {
+                // introspection, which has no side effects
+                continue;
+            }
+            Class<?>[] classes = e.getValue().getClasses();
+            Object stub = Proxy.newProxyInstance(classes[0].getClassLoader(), classes,
+                    new StubHandler(e.getKey(), e.getValue().getMethods()));
+            stubExecutor.addEntry(e.getKey(), new HandleEntry<Object>(e.getValue(), stub));
+        }
+        return stubExecutor;
+    }
+
+    /**
+     * Answers default values, the same instance for every call to a method.
+     */
+    private final class StubHandler implements InvocationHandler {
+
+        private final String name;
+        private final Map<Method, Object> results = new HashMap<Method, Object>();
+
+        StubHandler(String name, Iterable<Method> methods) {
+            this.name = name;
+            for (Method m : methods) {
+                results.put(m, getResult(m));
+            }
+        }
+
+        private Object getResult(Method m) {
+            Class<?> clazz = m.getReturnType();
+            try {
+                if (clazz == Iterator.class) {
+                    Class<?> elementType = TypeChecker.getElementType(m);
+                    Object element = (elementType == null ? null : gson.fromJson(getDefault(elementType), elementType));
+                    return Collections.singletonList(element);
+                }
+                if (clazz == void.class || TypeChecker.isSequenceType(clazz) || TypeChecker.isPublisherType(clazz)) {
+                    return null;
+                }
+                return gson.fromJson(getDefault(clazz), m.getGenericReturnType());
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return "stub of " + name;
+            }
+            Object result = results.get(method);
+            if (result instanceof List && method.getReturnType() == Iterator.class) {
+                return ((List<?>) result).iterator();
+            }
+            return result;
+        }
+    }
+
+    private static class WarmUpTransport implements JsonRpcServerTransport {
+
+        private final String requestData;
+
+        WarmUpTransport(String requestData) {
+            this.requestData = requestData;
+        }
+
+        public String readRequest() {
+            return requestData;
+        }
+
+        public void writeResponse(String responseData) {
+        }
+    }
+
+    private static final class StreamingWarmUpTransport extends WarmUpTransport
+            implements JsonRpcStreamingServerTransport {
+
+        StreamingWarmUpTransport(String requestData) {
+            super(requestData);
+        }
+
+        public Reader openRequest() {
+            return new StringReader(readRequest());
+        }
+
+        public Writer openResponse() {
+            return new StringWriter();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+/**
+ * Reads strict JSON text in place, without building anything, for the
+ * requests the executor answers without an element tree. Whatever strict JSON
+ * does not allow, and Gson may still accept leniently, is refused with an
+ * {@link IllegalArgumentException} so the tree gets to deal with it.
+ * <p/>
+ * The text is either a whole request or a {@link RequestText}, read from the
+ * transport only as far as the scan gets.
+ */
+final class JsonScanner {
+
+    private static final String[] NO_NAMES = new String[0];
+
+    private final CharSequence text;
+    private final RequestText source;
+    private int pos;
+
+    JsonScanner(CharSequence text) {
+        this(text, 0);
+    }
+
+    JsonScanner(CharSequence text, int pos) {
+        this.text = text;
+        this.source = (text instanceof RequestText ? (RequestText) text : null);
+        this.pos = pos;
+    }
+
+    CharSequence getText() {
+        return text;
+    }
+
+    int position() {
+        return pos;
+    }
+
+    /**
+     * @return the next character after whitespace, -1 at the end of the text
+     */
+    int peek() {
+        while (has(pos)) {
+            char c = text.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    void consume(char c) {
+        if (peek() != c) {
+            throw unexpected();
+        }
+        pos++;
+    }
+
+    boolean consumeIf(char c) {
+        if (peek() != c) {
+            return false;
+        }
+        pos++;
+        return true;
+    }
+
+    void end() {
+        if (peek() != -1) {
+            throw unexpected();
+        }
+    }
+
+    /**
+     * Reads a member name and the colon following it.
+     *
+     * @return the index of the name in <code>names</code>, -1 for any other
+     */
+    int readName(String[] names) {
+        consume('"');
+        int start = pos;
+        int end = start;
+        while (has(end) && text.charAt(end) != '"') {
+            if (text.charAt(end) == '\\' || text.charAt(end) < 0x20) {
+                throw unexpected();
+            }
+            end++;
+        }
+        if (!has(end)) {
+            throw unexpected();
+        }
+        pos = end + 1;
+        consume(':');
+        for (int i = 0; i < names.length; i++) {
+            if (matches(start, end, names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int start, int end, String name) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (text.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isNull() {
+        if (peek() != 'n') {
+            return false;
+        }
+        literal("null");
+        return true;
+    }
+
+    boolean readBoolean() {
+        if (peek() == 't') {
+            literal("true");
+            return true;
+        }
+        literal("false");
+        return false;
+    }
+
+    /**
+     * Reads an integer without fraction or exponent which fits a long.
+     */
+    long readLong() {
+        int c = peek();
+        boolean negative = (c == '-');
+        if (negative) {
+            pos++;
+        }
+        int start = pos;
+        long value = 0;
+        while (has(pos) && isDigit(text.charAt(pos))) {
+            int digit = text.charAt(pos) - '0';
+            // accumulated negatively, Long.MIN_VALUE has no positive counterpart
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw unexpected();
+            }
+            value = value * 10 - digit;
+            pos++;
+        }
+        if (pos == start || (text.charAt(start) == '0' && pos - start > 1) || isNumberPart(pos)) {
+            throw unexpected();
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw unexpected();
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    /**
+     * @return the literal of the number
+     */
+    String readNumber() {
+        peek();
+        int start = pos;
+        skipNumber();
+        return text.subSequence(start, pos).toString();
+    }
+
+    String readString() {
+        consume('"');
+        int start = pos;
+        StringBuilder buff = null;
+        while (true) {
+            if (!has(pos)) {
+                throw unexpected();
+            }
+            char c = text.charAt(pos);
+            if (c == '"') {
+                String value = (buff == null ? text.subSequence(start, pos).toString() : buff.toString());
+                pos++;
+                return value;
+            }
+            if (c < 0x20) {
+                throw unexpected();
+            }
+            if (c != '\\') {
+                if (buff != null) {
+                    buff.append(c);
+                }
+                pos++;
+                continue;
+            }
+            if (buff == null) {
+                buff = new StringBuilder(2 * (pos - start) + 16);
+                buff.append(text, start, pos);
+            }
+            buff.append(escaped());
+        }
+    }
+
+    void skipValue() {
+        switch (peek()) {
+            case '{':
+                pos++;
+                if (!consumeIf('}')) {
+                    do {
+                        readName(NO_NAMES);
+                        skipValue();
+                    } while (consumeIf(','));
+                    consume('}');
+                }
+                break;
+            case '[':
+                pos++;
+                if (!consumeIf(']')) {
+                    do {
+                        skipValue();
+                    } while (consumeIf(','));
+                    consume(']');
+                }
+                break;
+            case '"':
+                pos++;
+                while (true) {
+                    if (!has(pos) || text.charAt(pos) < 0x20) {
+                        throw unexpected();
+                    }
+                    char c = text.charAt(pos);
+                    if (c == '"') {
+                        pos++;
+                        break;
+                    }
+                    if (c == '\\') {
+                        escaped();
+                    } else {
+                        pos++;
+                    }
+                }
+                break;
+            case 't':
+                literal("true");
+                break;
+            case 'f':
+                literal("false");
+                break;
+            case 'n':
+                literal("null");
+                break;
+            default:
+                skipNumber();
+        }
+    }
+
+    private void skipNumber() {
+        peek();
+        if (has(pos) && text.charAt(pos) == '-') {
+            pos++;
+        }
+        int start = pos;
+        skipDigits();
+        if (pos == start || (text.charAt(start) == '0' && pos - start > 1)) {
+            throw unexpected();
+        }
+        if (has(pos) && text.charAt(pos) == '.') {
+            pos++;
+            if (!skipDigits()) {
+                throw unexpected();
+            }
+        }
+        if (has(pos) && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+            pos++;
+            if (has(pos) && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+                pos++;
+            }
+            if (!skipDigits()) {
+                throw unexpected();
+            }
+        }
+        if (isNumberPart(pos)) {
+            throw unexpected();
+        }
+    }
+
+    private boolean skipDigits() {
+        int start = pos;
+        while (has(pos) && isDigit(text.charAt(pos))) {
+            pos++;
+        }
+        return pos > start;
+    }
+
+    private boolean isNumberPart(int i) {
+        if (!has(i)) {
+            return false;
+        }
+        char c = text.charAt(i);
+        return isDigit(c) || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || Character.isLetter(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Reads the escape sequence at the current position.
+     */
+    private char escaped() {
+        if (!has(pos + 1)) {
+            throw unexpected();
+        }
+        char c = text.charAt(pos + 1);
+        pos += 2;
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (!has(pos + 3)) {
+                    throw unexpected();
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    char h = text.charAt(pos++);
+                    if (h >= '0' && h <= '9') {
+                        value = (value << 4) | (h - '0');
+                    } else if (h >= 'a' && h <= 'f') {
+                        value = (value << 4) | (h - 'a' + 10);
+                    } else if (h >= 'A' && h <= 'F') {
+                        value = (value << 4) | (h - 'A' + 10);
+                    } else {
+                        throw unexpected();
+                    }
+                }
+                return (char) value;
+            default:
+                throw unexpected();
+        }
+    }
+
+    private void literal(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (!has(pos + i) || text.charAt(pos + i) != literal.charAt(i)) {
+                throw unexpected();
+            }
+        }
+        if (isNumberPart(pos + literal.length())) {
+            throw unexpected();
+        }
+        pos += literal.length();
+    }
+
+    /**
+     * @return true when the text has a character at <code>index</code>,
+     *         reading further into a {@link RequestText} when needed
+     */
+    private boolean has(int index) {
+        return index < text.length() || (source != null && source.fill(index + 1));
+    }
+
+    private IllegalArgumentException unexpected() {
+        return new IllegalArgumentException("unexpected json at " + pos);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import org.json.rpc.commons.TypeChecker;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Methods of the registered handlers by full name, looked up straight from
+ * the characters of a request so no string is made of the name.
+ */
+final class MethodTable {
+
+    static final class Entry {
+
+        private final String name;
+        private final HandleEntry<?> handleEntry;
+        private final List<Method> methods;
+        private final PrimitiveCodec codec;
+        private final Method bulk;
+
+        Entry(String name, HandleEntry<?> handleEntry, List<Method> methods, PrimitiveCodec codec, Method bulk) {
+            this.name = name;
+            this.handleEntry = handleEntry;
+            this.methods = methods;
+            this.codec = codec;
+            this.bulk = bulk;
+        }
+
+        /**
+         * @return the full name, <code>handle.method</code>
+         */
+        String getName() {
+            return name;
+        }
+
+        HandleEntry<?> getHandleEntry() {
+            return handleEntry;
+        }
+
+        /**
+         * @return the overloads sharing the name
+         */
+        List<Method> getMethods() {
+            return methods;
+        }
+
+        /**
+         * @return null when the method is overloaded or not primitive-only
+         */
+        PrimitiveCodec getCodec() {
+            return codec;
+        }
+
+        /**
+         * @return the {@link JsonRpcBulk} variant, null when there is none
+         */
+        Method getBulk() {
+            return bulk;
+        }
+
+        /**
+         * @return true when the method is not overloaded and reads an iterator
+         *         parameter as the request arrives
+         */
+        boolean isLazy() {
+            return methods.size() == 1 && TypeChecker.hasLazyParameter(methods.get(0));
+        }
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+
+    MethodTable(Map<String, HandleEntry<?>> handlers) {
+        this(entriesOf(handlers));
+    }
+
+    private MethodTable(Collection<Entry> byName) {
+        int size = 16;
+        while (size < 2 * byName.size()) {
+            size <<= 1;
+        }
+        entries = new Entry[size];
+        mask = size - 1;
+        for (Entry entry : byName) {
+            int i = spread(entry.name.hashCode()) & mask;
+            while (entries[i] != null) {
+                i = (i + 1) & mask;
+            }
+            entries[i] = entry;
+        }
+    }
+
+    /**
+     * @param handleEntry the new entry of the handle, null to remove it
+     * @return the table with the methods of the handle changed, the entries
+     *         of the other handles are shared
+     */
+    MethodTable with(String handle, HandleEntry<?> handleEntry) {
+        List<Entry> kept = new ArrayList<Entry>(entries.length);
+        for (Entry entry : entries) {
+            if (entry != null && !isOf(entry, handle)) {
+                kept.add(entry);
+            }
+        }
+        if (handleEntry != null) {
+            Map<String, Entry> byName = new LinkedHashMap<String, Entry>();
+            addEntries(byName, handle, handleEntry);
+            kept.addAll(byName.values());
+        }
+        return new MethodTable(kept);
+    }
+
+    private static boolean isOf(Entry entry, String handle) {
+        // method names have no dot, the last one ends the name of the handle
+        return entry.name.lastIndexOf('.') == handle.length() && entry.name.startsWith(handle);
+    }
+
+    private static Collection<Entry> entriesOf(Map<String, HandleEntry<?>> handlers) {
+        Map<String, Entry> byName = new LinkedHashMap<String, Entry>();
+        for (Map.Entry<String, HandleEntry<?>> h : handlers.entrySet()) {
+            addEntries(byName, h.getKey(), h.getValue());
+        }
+        return byName.values();
+    }
+
+    private static void addEntries(Map<String, Entry> byName, String handle, HandleEntry<?> handleEntry) {
+        for (Method m : handleEntry.getMethods()) {
+            String name = handle + "." + m.getName();
+            Entry entry = byName.get(name);
+            if (entry == null) {
+                entry = new Entry(name, handleEntry, new ArrayList<Method>(1),
+                        handleEntry.getCodec(m.getName()), handleEntry.getBulk(m.getName()));
+                byName.put(name, entry);
+            }
+            entry.methods.add(m);
+        }
+    }
+
+    /**
+     * @return the entry named by the characters from <code>start</code> to
+     *         <code>end</code>, null when there is none
+     */
+    Entry get(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int len = end - start;
+        for (int i = spread(hash) & mask; entries[i] != null; i = (i + 1) & mask) {
+            if (matches(entries[i].name, text, start, len)) {
+                return entries[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int len) {
+        if (name.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Entry get(String name) {
+        return get(name, 0, name.length());
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
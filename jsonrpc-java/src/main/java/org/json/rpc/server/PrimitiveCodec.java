@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * Reads the parameters and writes the result of a method which takes and
+ * returns nothing but primitives and strings, straight from the request text
+ * and to the response text, with no element tree or Gson in between.
+ * <p/>
+ * Only values Gson would read to the very same thing are accepted. Anything
+ * else, a quoted number or a fraction passed to an integer parameter, makes
+ * the codec give up so the request takes the regular path.
+ */
+final class PrimitiveCodec {
+
+    private enum Kind {
+        BOOLEAN, INT, LONG, SHORT, BYTE, DOUBLE, FLOAT, CHAR, STRING, VOID
+    }
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    private final Method method;
+    private final Kind[] params;
+    private final Kind result;
+
+    private PrimitiveCodec(Method method, Kind[] params, Kind result) {
+        this.method = method;
+        this.params = params;
+        this.result = result;
+    }
+
+    /**
+     * @return null when the method takes or returns anything else
+     */
+    static PrimitiveCodec forMethod(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        Kind[] params = new Kind[types.length];
+        for (int i = 0; i < types.length; i++) {
+            params[i] = kindOf(types[i]);
+            if (params[i] == null || params[i] == Kind.VOID) {
+                return null;
+            }
+        }
+        Kind result = kindOf(method.getReturnType());
+        if (result == null) {
+            return null;
+        }
+        return new PrimitiveCodec(method, params, result);
+    }
+
+    private static Kind kindOf(Class<?> type) {
+        if (type == boolean.class) {
+            return Kind.BOOLEAN;
+        } else if (type == int.class) {
+            return Kind.INT;
+        } else if (type == long.class) {
+            return Kind.LONG;
+        } else if (type == short.class) {
+            return Kind.SHORT;
+        } else if (type == byte.class) {
+            return Kind.BYTE;
+        } else if (type == double.class) {
+            return Kind.DOUBLE;
+        } else if (type == float.class) {
+            return Kind.FLOAT;
+        } else if (type == char.class) {
+            return Kind.CHAR;
+        } else if (type == String.class) {
+            return Kind.STRING;
+        } else if (type == void.class) {
+            return Kind.VOID;
+        }
+        return null;
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    int getParameterCount() {
+        return params.length;
+    }
+
+    /**
+     * Reads the parameter array the scanner is positioned at.
+     *
+     * @throws IllegalArgumentException when the parameters do not fit the
+     *                                  method exactly
+     */
+    Object[] readParams(JsonScanner scanner) {
+        Object[] args = new Object[params.length];
+        scanner.consume('[');
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                scanner.consume(',');
+            }
+            args[i] = read(params[i], scanner);
+        }
+        scanner.consume(']');
+        return args;
+    }
+
+    private static Object read(Kind kind, JsonScanner scanner) {
+        switch (kind) {
+            case BOOLEAN:
+                return scanner.readBoolean();
+            case INT:
+                return (int) readLong(scanner, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            case LONG:
+                return scanner.readLong();
+            case SHORT:
+                return (short) readLong(scanner, Short.MIN_VALUE, Short.MAX_VALUE);
+            case BYTE:
+                return (byte) readLong(scanner, Byte.MIN_VALUE, Byte.MAX_VALUE);
+            case DOUBLE:
+                return Double.parseDouble(scanner.readNumber());
+            case FLOAT:
+                return Float.parseFloat(scanner.readNumber());
+            case CHAR:
+                String s = scanner.readString();
+                if (s.length() == 0) {
+                    throw new IllegalArgumentException("empty string for a char");
+                }
+                return s.charAt(0);
+            default:
+                return (scanner.isNull() ? null : scanner.readString());
+        }
+    }
+
+    private static long readLong(JsonScanner scanner, long min, long max) {
+        // Gson narrows larger values, which is left to it
+        long value = scanner.readLong();
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("out of range : " + value);
+        }
+        return value;
+    }
+
+    /**
+     * @return false when Gson would refuse the value returned by the method
+     */
+    boolean isWritable(Object value) {
+        switch (result) {
+            case DOUBLE:
+                double d = (Double) value;
+                return !Double.isNaN(d) && !Double.isInfinite(d);
+            case FLOAT:
+                float f = (Float) value;
+                return !Float.isNaN(f) && !Float.isInfinite(f);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Writes the value returned by the method, one {@link #isWritable} accepts.
+     * Numbers are appended to a StringBuilder without a string made of them.
+     */
+    void writeResult(Appendable out, Object value) throws IOException {
+        switch (result) {
+            case VOID:
+                out.append("null");
+                break;
+            case BOOLEAN:
+                out.append(String.valueOf(((Boolean) value).booleanValue()));
+                break;
+            case DOUBLE:
+                if (out instanceof StringBuilder) {
+                    ((StringBuilder) out).append(((Double) value).doubleValue());
+                } else {
+                    out.append(String.valueOf(((Double) value).doubleValue()));
+                }
+                break;
+            case FLOAT:
+                if (out instanceof StringBuilder) {
+                    ((StringBuilder) out).append(((Float) value).floatValue());
+                } else {
+                    out.append(String.valueOf(((Float) value).floatValue()));
+                }
+                break;
+            case CHAR:
+                out.append('"');
+                escape(out, (Character) value);
+                out.append('"');
+                break;
+            case STRING:
+                writeString(out, (String) value);
+                break;
+            default:
+                if (out instanceof StringBuilder) {
+                    ((StringBuilder) out).append(((Number) value).longValue());
+                } else {
+                    out.append(String.valueOf(((Number) value).longValue()));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Writes a string value escaped the way Gson escapes element trees.
+     */
+    static void writeString(Appendable out, String value) throws IOException {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            escape(out, value.charAt(i));
+        }
+        out.append('"');
+    }
+
+    private static void escape(Appendable out, char c) throws IOException {
+        switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\b':
+                out.append("\\b");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\f':
+                out.append("\\f");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029' || (c >= 0x7f && c <= 0x9f)) {
+                    out.append("\\u")
+                            .append(HEX_CHARS[(c >>> 12) & 0xf])
+                            .append(HEX_CHARS[(c >>> 8) & 0xf])
+                            .append(HEX_CHARS[(c >>> 4) & 0xf])
+                            .append(HEX_CHARS[c & 0xf]);
+                } else {
+                    out.append(c);
+                }
+        }
+    }
+}
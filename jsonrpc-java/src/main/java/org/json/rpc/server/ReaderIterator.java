@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over a JSON array, reading each element from the request only
+ * when it is asked for.
+ */
+final class ReaderIterator implements Iterator<Object> {
+
+    private final JsonReader reader;
+    private final Class<?> type;
+    private final Gson gson;
+
+    private boolean started;
+    private boolean done;
+
+    ReaderIterator(JsonReader reader, Class<?> type, Gson gson) {
+        this.reader = reader;
+        this.type = type;
+        this.gson = gson;
+    }
+
+    public boolean hasNext() {
+        if (done) {
+            return false;
+        }
+        try {
+            if (!started) {
+                started = true;
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    done = true;
+                    return false;
+                }
+                reader.beginArray();
+            }
+            if (reader.hasNext()) {
+                return true;
+            }
+            reader.endArray();
+            done = true;
+            return false;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return gson.fromJson(reader, type);
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.json.rpc.commons.JsonRpcException;
+
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Members of a request read off its text in a single scan, as offsets rather
+ * than as an element tree. Values are only decoded when asked for, the
+ * parameters one by one straight from their ranges.
+ * <p/>
+ * A member given twice counts with its last value, as in a tree.
+ * <p/>
+ * Requests read from a streaming transport stop being scanned at parameters
+ * which a method taking an iterator reads as they arrive, see {@link #isLazy()}.
+ */
+final class RequestEnvelope {
+
+    private static final String[] MEMBERS = {"method", "params", "id", "timeout"};
+    private static final int[] NO_PARAMS = new int[0];
+
+    private final CharSequence text;
+
+    private int methodStart = -1;
+    private int methodEnd;
+    private int paramsStart = -1;
+    private int paramsEnd;
+    private int idStart = -1;
+    private int idEnd;
+    private int timeoutStart = -1;
+    private int timeoutEnd;
+
+    // start and end of each parameter, null when params is not an array
+    private int[] params = NO_PARAMS;
+    private int paramCount;
+    private boolean lazy;
+
+    private RequestEnvelope(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * Scans the object the scanner is positioned at.
+     *
+     * @throws IllegalArgumentException when the text is not strict json
+     */
+    static RequestEnvelope scan(JsonScanner scanner) {
+        return scan(scanner, null);
+    }
+
+    /**
+     * Scans the object the scanner is positioned at, up to the parameters of
+     * a {@link MethodTable.Entry#isLazy() lazy} method named before them.
+     *
+     * @param methods methods to look the lazy ones up in, null to scan the
+     *                whole object anyway
+     */
+    static RequestEnvelope scan(JsonScanner scanner, MethodTable methods) {
+        RequestEnvelope env = new RequestEnvelope(scanner.getText());
+        scanner.consume('{');
+        if (scanner.consumeIf('}')) {
+            return env;
+        }
+        do {
+            int member = scanner.readName(MEMBERS);
+            scanner.peek();
+            int start = scanner.position();
+            if (member == 1) {
+                if (methods != null && env.hasMethod() && scanner.peek() == '['
+                        && isLazy(methods.get(env.text, env.getMethodStart(), env.getMethodEnd()))) {
+                    env.lazy = true;
+                    return env;
+                }
+                env.scanParams(scanner);
+                continue;
+            }
+            scanner.skipValue();
+            switch (member) {
+                case 0:
+                    env.methodStart = start;
+                    env.methodEnd = scanner.position();
+                    break;
+                case 2:
+                    env.idStart = start;
+                    env.idEnd = scanner.position();
+                    break;
+                case 3:
+                    env.timeoutStart = start;
+                    env.timeoutEnd = scanner.position();
+                    break;
+                default:
+            }
+        } while (scanner.consumeIf(','));
+        scanner.consume('}');
+        return env;
+    }
+
+    /**
+     * Scans the array the scanner is positioned at.
+     *
+     * @return the requests, null in place of elements which are not objects
+     */
+    static List<RequestEnvelope> scanBatch(JsonScanner scanner) {
+        List<RequestEnvelope> batch = new ArrayList<RequestEnvelope>();
+        scanner.consume('[');
+        if (scanner.consumeIf(']')) {
+            return batch;
+        }
+        do {
+            if (scanner.peek() == '{') {
+                batch.add(scan(scanner));
+            } else {
+                scanner.skipValue();
+                batch.add(null);
+            }
+        } while (scanner.consumeIf(','));
+        scanner.consume(']');
+        return batch;
+    }
+
+    private static boolean isLazy(MethodTable.Entry entry) {
+        return entry != null && entry.isLazy();
+    }
+
+    private void scanParams(JsonScanner scanner) {
+        paramsStart = scanner.position();
+        if (scanner.peek() != '[') {
+            scanner.skipValue();
+            paramsEnd = scanner.position();
+            params = null;
+            paramCount = 0;
+            return;
+        }
+        params = NO_PARAMS;
+        paramCount = 0;
+        scanner.consume('[');
+        if (scanner.consumeIf(']')) {
+            paramsEnd = scanner.position();
+            return;
+        }
+        do {
+            scanner.peek();
+            int start = scanner.position();
+            scanner.skipValue();
+            if (2 * paramCount == params.length) {
+                int[] grown = new int[Math.max(8, 2 * params.length)];
+                System.arraycopy(params, 0, grown, 0, params.length);
+                params = grown;
+            }
+            params[2 * paramCount] = start;
+            params[2 * paramCount + 1] = scanner.position();
+            paramCount++;
+        } while (scanner.consumeIf(','));
+        scanner.consume(']');
+        paramsEnd = scanner.position();
+    }
+
+    CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * @return true when the scan stopped at the parameters, which are left to
+     *         be read as they arrive
+     */
+    boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * @return true when the method is given as a string
+     */
+    boolean hasMethod() {
+        return methodStart >= 0 && text.charAt(methodStart) == '"';
+    }
+
+    /**
+     * Start of the method name, after the quote.
+     */
+    int getMethodStart() {
+        return methodStart + 1;
+    }
+
+    /**
+     * End of the method name, before the quote.
+     */
+    int getMethodEnd() {
+        return methodEnd - 1;
+    }
+
+    String getMethod() {
+        if (!hasMethod()) {
+            throw new JsonRpcException("method should be a string");
+        }
+        return new JsonScanner(text, methodStart).readString();
+    }
+
+    /**
+     * @return the id, null when there is none
+     */
+    JsonElement getId() {
+        if (idStart < 0) {
+            return null;
+        }
+        switch (text.charAt(idStart)) {
+            case '"':
+                return new JsonPrimitive(new JsonScanner(text, idStart).readString());
+            case 'n':
+                return new JsonNull();
+            default:
+                // numbers keep the form the tree gives them
+                return new JsonParser().parse(new RangeReader(text, idStart, idEnd));
+        }
+    }
+
+    /**
+     * @return the scanner positioned at the id, null when there is none
+     */
+    JsonScanner getIdScanner() {
+        return (idStart < 0 ? null : new JsonScanner(text, idStart));
+    }
+
+    /**
+     * @return the deadline in {@link System#nanoTime()} terms, null without timeout
+     */
+    Long getDeadline(long received) {
+        if (timeoutStart < 0) {
+            return null;
+        }
+        String timeout = text.subSequence(timeoutStart, timeoutEnd).toString();
+        long millis;
+        try {
+            millis = Long.parseLong(timeout);
+        } catch (NumberFormatException e) {
+            char c = timeout.charAt(0);
+            if (c == '"') {
+                millis = Long.parseLong(new JsonScanner(timeout).readString());
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                millis = new BigDecimal(timeout).longValue();
+            } else {
+                throw new JsonRpcException("timeout should be a number");
+            }
+        }
+        return received + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    boolean hasParams() {
+        return params != null;
+    }
+
+    /**
+     * @return the number of parameters, zero when there are none
+     */
+    int getParamCount() {
+        if (params == null) {
+            throw new JsonRpcException("params should be an array");
+        }
+        return paramCount;
+    }
+
+    /**
+     * @return the text of a parameter
+     */
+    Reader getParam(int index) {
+        return new RangeReader(text, params[2 * index], params[2 * index + 1]);
+    }
+
+    /**
+     * @return the scanner positioned at the parameter array, null when there is none
+     */
+    JsonScanner getParamsScanner() {
+        return (paramsStart < 0 ? null : new JsonScanner(text, paramsStart));
+    }
+
+    /**
+     * @return the parameters as a tree, empty when there are none
+     */
+    JsonArray getParams() {
+        if (paramsStart < 0) {
+            return new JsonArray();
+        }
+        getParamCount();
+        return new JsonParser().parse(new RangeReader(text, paramsStart, paramsEnd)).getAsJsonArray();
+    }
+
+    /**
+     * Reads a range of the text, so the value in it is read without copying it.
+     */
+    private static final class RangeReader extends Reader {
+
+        private final CharSequence text;
+        private int pos;
+        private final int end;
+
+        RangeReader(CharSequence text, int start, int end) {
+            this.text = text;
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(char[] buff, int off, int len) {
+            if (pos >= end) {
+                return -1;
+            }
+            int n = Math.min(len, end - pos);
+            if (text instanceof String) {
+                ((String) text).getChars(pos, pos + n, buff, off);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    buff[off + i] = text.charAt(pos + i);
+                }
+            }
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.server;
+
+import org.json.rpc.commons.JsonRpcException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Characters of a request as far as they have been read from the transport.
+ * The {@link JsonScanner} reads further as it needs, so a request is scanned
+ * as it arrives without a string being made of it.
+ */
+final class RequestText implements CharSequence {
+
+    private static final int BUFF_LENGTH = 1024;
+
+    private final Reader reader;
+    private char[] buff = new char[BUFF_LENGTH];
+    private int length;
+    private boolean eof;
+
+    RequestText(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads until there are at least <code>n</code> characters.
+     *
+     * @return false when the request is shorter
+     * @throws JsonRpcException when the request can't be read
+     */
+    boolean fill(int n) {
+        while (length < n && !eof) {
+            if (length == buff.length) {
+                char[] grown = new char[2 * buff.length];
+                System.arraycopy(buff, 0, grown, 0, length);
+                buff = grown;
+            }
+            int read;
+            try {
+                read = reader.read(buff, length, buff.length - length);
+            } catch (IOException e) {
+                throw new JsonRpcException("unable to read request", e);
+            }
+            if (read < 0) {
+                eof = true;
+            } else {
+                length += read;
+            }
+        }
+        return length >= n;
+    }
+
+    /**
+     * @return the number of characters read so far
+     */
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        return buff[index];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return new String(buff, start, end - start);
+    }
+
+    /**
+     * @return a reader of the request from its start, the characters read so
+     *         far followed by the rest of the transport's reader
+     */
+    Reader openReader() {
+        return new Reader() {
+            private int pos;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (pos < length) {
+                    int n = Math.min(len, length - pos);
+                    System.arraycopy(buff, pos, cbuf, off, n);
+                    pos += n;
+                    return n;
+                }
+                return (eof ? -1 : reader.read(cbuf, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return new String(buff, 0, length);
+    }
+}
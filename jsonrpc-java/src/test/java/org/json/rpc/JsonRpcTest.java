@@ -18,6 +18,7 @@ package org.json.rpc;
 
 import org.json.rpc.client.*;
 import org.json.rpc.commons.RpcIntroSpection;
+import org.json.rpc.commons.VersionedRpcIntroSpection;
 import org.json.rpc.server.JsonRpcExecutor;
 import org.json.rpc.server.JsonRpcServerTransport;
 import org.testng.annotations.AfterTest;
@@ -32,13 +33,13 @@ public class JsonRpcTest {
 
     private JsonRpcInvoker invoker;
     private JsonRpcExecutor executor;
-    private RpcIntroSpection system;
+    private VersionedRpcIntroSpection system;
 
     @BeforeTest
     public void setupTest() {
         invoker = new JsonRpcInvoker();
         executor = new JsonRpcExecutor();
-        system = getInstance("system", RpcIntroSpection.class);
+        system = getInstance("system", VersionedRpcIntroSpection.class);
     }
 
     @AfterTest
@@ -51,7 +52,18 @@ public class JsonRpcTest {
     @Test
     public void testListMethods() throws Exception {
         String[] methods = system.listMethods();
-        assertEquals(methods, new String[]{"system.listMethods", "system.methodSignature"});
+        assertEquals(methods, new String[]{"system.listMethods", "system.methodSignature", "system.methodsVersion"});
+    }
+
+    @Test
+    public void testMethodsVersion() throws Exception {
+        String version = system.methodsVersion();
+        assertEquals(version.length(), 40);
+        assertEquals(system.methodsVersion(), version);
+
+        JsonRpcExecutor other = new JsonRpcExecutor();
+        other.addHandler("more", system, RpcIntroSpection.class);
+        assertFalse(other.methodsVersion().equals(version));
     }
 
     @Test
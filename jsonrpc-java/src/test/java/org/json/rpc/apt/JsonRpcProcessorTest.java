@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.apt;
+
+import org.json.rpc.client.JsonRpcClientTransport;
+import org.json.rpc.client.JsonRpcInvoker;
+import org.json.rpc.client.JsonRpcStub;
+import org.json.rpc.commons.JsonRpcRemoteException;
+import org.json.rpc.commons.JsonRpcService;
+import org.json.rpc.server.JsonRpcDispatcher;
+import org.json.rpc.server.JsonRpcExecutor;
+import org.json.rpc.server.JsonRpcServerTransport;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class JsonRpcProcessorTest {
+
+    private JsonRpcExecutor executor;
+    private Greeter greeter;
+    private String lengthsCaller;
+
+    @BeforeTest
+    public void setup() {
+        executor = new JsonRpcExecutor();
+        executor.addHandler("greeter", new Greeter() {
+            public String greet(String name) {
+                return "hello " + name;
+            }
+
+            public String greet(String name, int times) {
+                StringBuilder str = new StringBuilder();
+                for (int i = 0; i < times; i++) {
+                    str.append(greet(name));
+                }
+                return str.toString();
+            }
+
+            public int[] lengths(String[] names) {
+                lengthsCaller = new Throwable().getStackTrace()[1].getClassName();
+                int[] result = new int[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    result[i] = names[i].length();
+                }
+                return result;
+            }
+
+            public void fail(String message) {
+                throw new IllegalStateException(message);
+            }
+
+            public long count() {
+                return 42;
+            }
+
+            public Iterator<String> names(int n) {
+                String[] names = new String[n];
+                for (int i = 0; i < n; i++) {
+                    names[i] = "name" + i;
+                }
+                return Arrays.asList(names).iterator();
+            }
+
+            public int total(Iterator<Integer> values) {
+                int total = 0;
+                while (values.hasNext()) {
+                    total += values.next();
+                }
+                return total;
+            }
+        }, Greeter.class);
+
+        greeter = new JsonRpcInvoker().get(new JsonRpcClientTransport() {
+            public String call(final String requestData) throws Exception {
+                final StringBuilder resultData = new StringBuilder();
+                executor.execute(new JsonRpcServerTransport() {
+                    public String readRequest() throws Exception {
+                        return requestData;
+                    }
+
+                    public void writeResponse(String responseData) throws Exception {
+                        resultData.append(responseData);
+                    }
+                });
+                return resultData.toString();
+            }
+        }, "greeter", Greeter.class);
+    }
+
+    @Test
+    public void testGeneratedStubUsed() {
+        assertTrue(greeter instanceof JsonRpcStub);
+    }
+
+    @Test
+    public void testGeneratedDispatcherUsed() {
+        greeter.lengths(new String[]{"a"});
+        // called straight from the dispatcher, not through Method.invoke
+        assertEquals(lengthsCaller, Greeter.class.getName() + JsonRpcDispatcher.SUFFIX);
+    }
+
+    @Test
+    public void testCalls() {
+        assertEquals(greeter.greet("you"), "hello you");
+        assertEquals(greeter.greet("you", 2), "hello youhello you");
+        assertTrue(Arrays.equals(greeter.lengths(new String[]{"a", "bb"}), new int[]{1, 2}));
+        assertEquals(greeter.count(), 42);
+
+        Iterator<String> names = greeter.names(2);
+        assertEquals(names.next(), "name0");
+        assertEquals(names.next(), "name1");
+        assertTrue(!names.hasNext());
+
+        assertEquals(greeter.total(Arrays.asList(1, 2, 3).iterator()), 6);
+    }
+
+    @Test
+    public void testNoStubForClashingMethod() throws Exception {
+        try {
+            Class.forName(Invocations.class.getName() + JsonRpcStub.SUFFIX);
+            fail("no stub should be generated");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+        Class.forName(Invocations.class.getName() + JsonRpcDispatcher.SUFFIX);
+    }
+
+    @Test
+    public void testException() {
+        try {
+            greeter.fail("boom");
+            fail("should throw exception");
+        } catch (JsonRpcRemoteException e) {
+            assertTrue(e.getMsg().contains("boom"));
+        }
+    }
+
+    @JsonRpcService
+    public static interface Greeter {
+        String greet(String name);
+
+        String greet(String name, int times);
+
+        int[] lengths(String[] names);
+
+        void fail(String message);
+
+        long count();
+
+        Iterator<String> names(int n);
+
+        int total(Iterator<Integer> values);
+    }
+
+    @JsonRpcService
+    public static interface Invocations {
+        // same signature as the helper of the stubs
+        Object invoke(int method, Object[] args);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import com.google.gson.JsonParser;
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcDeadlineExceededException;
+import org.json.rpc.server.JsonRpcExecutor;
+import org.json.rpc.server.JsonRpcServerTransport;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class BatchingJsonRpcClientTransportTest {
+
+    private static final String ADD_REQUEST = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"calc.add\",\"params\":[1,2]}";
+
+    private JsonRpcExecutor executor;
+
+    @BeforeTest
+    public void setup() {
+        executor = new JsonRpcExecutor();
+        executor.addHandler("calc", new Calculator() {
+            public int add(int a, int b) {
+                return a + b;
+            }
+        }, Calculator.class);
+    }
+
+    @Test
+    public void testBatchedCalls() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        JsonRpcClientTransport transport = new JsonRpcClientTransport() {
+            public String call(final String requestData) throws Exception {
+                requests.incrementAndGet();
+                return execute(requestData);
+            }
+        };
+
+        final Calculator calc = new JsonRpcInvoker().get(
+                new BatchingJsonRpcClientTransport(transport, 1000, 10), "calc", Calculator.class);
+
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 10; i++) {
+                final int n = i;
+                results.add(pool.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        return calc.add(n, n);
+                    }
+                }));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(results.get(i).get().intValue(), i + i);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(requests.get(), 1);
+    }
+
+    @Test
+    public void testSingleCallNotBatched() throws Exception {
+        final List<String> requests = new ArrayList<String>();
+        JsonRpcClientTransport transport = new JsonRpcClientTransport() {
+            public String call(final String requestData) throws Exception {
+                requests.add(requestData);
+                return execute(requestData);
+            }
+        };
+
+        Calculator calc = new JsonRpcInvoker().get(
+                new BatchingJsonRpcClientTransport(transport, 1, 10), "calc", Calculator.class);
+
+        assertEquals(calc.add(1, 2), 3);
+        assertEquals(requests.size(), 1);
+        assertTrue(requests.get(0).startsWith("{"));
+    }
+
+    @Test
+    public void testInterruptedLeaderStillSends() throws Exception {
+        JsonRpcClientTransport transport = new JsonRpcClientTransport() {
+            public String call(final String requestData) throws Exception {
+                return execute(requestData);
+            }
+        };
+        final BatchingJsonRpcClientTransport batching = new BatchingJsonRpcClientTransport(transport, 60000, 10);
+
+        final Throwable[] leaderError = new Throwable[1];
+        Thread leader = new Thread() {
+            public void run() {
+                try {
+                    batching.call(ADD_REQUEST);
+                } catch (Throwable t) {
+                    leaderError[0] = t;
+                }
+            }
+        };
+        leader.start();
+        awaitState(leader, Thread.State.TIMED_WAITING);
+
+        final String[] followerAnswer = new String[1];
+        Thread follower = new Thread() {
+            public void run() {
+                try {
+                    followerAnswer[0] = batching.call(ADD_REQUEST);
+                } catch (Exception e) {
+                    followerAnswer[0] = e.toString();
+                }
+            }
+        };
+        follower.start();
+        awaitState(follower, Thread.State.WAITING);
+
+        leader.interrupt();
+        leader.join(5000);
+        follower.join(5000);
+        assertTrue(leaderError[0] instanceof InterruptedException);
+        assertEquals(new JsonParser().parse(followerAnswer[0]),
+                new JsonParser().parse("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":3}"));
+
+        // the interrupted batch is not joined by later calls
+        assertEquals(batching.call(ADD_REQUEST), "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":3}");
+    }
+
+    @Test
+    public void testWaitsBoundedByDeadline() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        JsonRpcClientTransport transport = new JsonRpcClientTransport() {
+            public String call(final String requestData) throws Exception {
+                release.await();
+                return execute(requestData);
+            }
+        };
+
+        // a leader with a short deadline sends without waiting out the window
+        long start = System.nanoTime();
+        Long previous = JsonRpcDeadline.start(50, TimeUnit.MILLISECONDS);
+        try {
+            release.countDown();
+            assertEquals(new BatchingJsonRpcClientTransport(transport, 60000, 10).call(ADD_REQUEST),
+                    "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":3}");
+        } finally {
+            JsonRpcDeadline.restore(previous);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        // a follower gives up once its deadline passes, the leader being stuck
+        final CountDownLatch stuck = new CountDownLatch(1);
+        transport = new JsonRpcClientTransport() {
+            public String call(final String requestData) throws Exception {
+                stuck.await();
+                return execute(requestData);
+            }
+        };
+        final BatchingJsonRpcClientTransport batching = new BatchingJsonRpcClientTransport(transport, 60000, 2);
+        Thread leader = new Thread() {
+            public void run() {
+                try {
+                    batching.call(ADD_REQUEST);
+                } catch (Exception e) {
+                    // not checked
+                }
+            }
+        };
+        leader.start();
+        awaitState(leader, Thread.State.TIMED_WAITING);
+
+        previous = JsonRpcDeadline.start(100, TimeUnit.MILLISECONDS);
+        try {
+            batching.call(ADD_REQUEST);
+            fail("follower should give up at its deadline");
+        } catch (JsonRpcDeadlineExceededException e) {
+            // expected
+        } finally {
+            JsonRpcDeadline.restore(previous);
+            stuck.countDown();
+        }
+        leader.join(5000);
+    }
+
+    private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+        while (thread.getState() != state) {
+            Thread.sleep(1);
+        }
+    }
+
+    private String execute(final String requestData) {
+        final StringBuilder resultData = new StringBuilder();
+        executor.execute(new JsonRpcServerTransport() {
+            public String readRequest() throws Exception {
+                return requestData;
+            }
+
+            public void writeResponse(String responseData) throws Exception {
+                resultData.append(responseData);
+            }
+        });
+        return resultData.toString();
+    }
+
+    public static interface Calculator {
+        int add(int a, int b);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.json.rpc.client.CircuitBreakerJsonRpcClientTransport.State;
+import org.json.rpc.commons.JsonRpcCircuitOpenException;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class CircuitBreakerJsonRpcClientTransportTest {
+
+    private static final String GET = "{\"id\":1,\"method\":\"users.get\",\"params\":[1]}";
+    private static final String PUT = "{\"id\":2,\"method\":\"users.put\",\"params\":[1]}";
+
+    @Test
+    public void testOpenHalfOpenClose() throws Exception {
+        Endpoint node = new Endpoint();
+        CircuitBreakerJsonRpcClientTransport transport = new CircuitBreakerJsonRpcClientTransport(node);
+        transport.setFailureRate(10, 4, 0.5);
+        transport.setOpenTime(50, 2);
+
+        final List<String> transitions = new ArrayList<String>();
+        transport.addListener(new CircuitBreakerJsonRpcClientTransport.Listener() {
+            public void stateChanged(String circuit, State from, State to) {
+                transitions.add(circuit + ":" + to);
+            }
+        });
+
+        node.down = true;
+        for (int i = 0; i < 4; i++) {
+            call(transport, GET);
+        }
+        assertEquals(transport.getState(CircuitBreakerJsonRpcClientTransport.ENDPOINT), State.OPEN);
+        assertEquals(transport.getState("users.get"), State.OPEN);
+
+        try {
+            transport.call(PUT);
+            fail("should fail fast");
+        } catch (JsonRpcCircuitOpenException e) {
+            assertEquals(e.getCircuit(), CircuitBreakerJsonRpcClientTransport.ENDPOINT);
+        }
+        assertEquals(node.calls, 4);
+        assertEquals(transport.getRejectedCalls(), 1);
+
+        node.down = false;
+        Thread.sleep(60);
+        transport.call(PUT);
+        transport.call(PUT);
+        assertEquals(transport.getState(CircuitBreakerJsonRpcClientTransport.ENDPOINT), State.CLOSED);
+
+        assertEquals(transitions.subList(0, 2), Arrays.asList("*:OPEN", "users.get:OPEN"));
+        assertEquals(transitions.subList(2, 4), Arrays.asList("*:HALF_OPEN", "*:CLOSED"));
+    }
+
+    @Test
+    public void testMethodCircuit() throws Exception {
+        Endpoint node = new Endpoint();
+        CircuitBreakerJsonRpcClientTransport transport = new CircuitBreakerJsonRpcClientTransport(node);
+        transport.setFailureRate(4, 4, 1.0);
+        transport.setSlowCallRate(0, 1.0);
+
+        transport.call(GET);
+        transport.call(GET);
+        assertEquals(transport.getState("users.get"), State.CLOSED);
+        transport.call(GET);
+        transport.call(GET);
+        assertEquals(transport.getState("users.get"), State.OPEN);
+    }
+
+    private static void call(JsonRpcClientTransport transport, String request) throws Exception {
+        try {
+            transport.call(request);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static final class Endpoint implements JsonRpcClientTransport {
+        private volatile boolean down;
+        private int calls;
+
+        public String call(String requestData) throws Exception {
+            calls++;
+            if (down) {
+                throw new IOException("connection refused");
+            }
+            return "{}";
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.json.rpc.client.ConcurrencyLimitingJsonRpcClientTransport.Algorithm;
+import org.json.rpc.commons.JsonRpcLimitExceededException;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ConcurrencyLimitingJsonRpcClientTransportTest {
+
+    private static final String REQUEST = "{\"id\":1,\"method\":\"users.get\",\"params\":[1]}";
+
+    @Test
+    public void testRejectOverLimit() throws Exception {
+        Endpoint node = new Endpoint();
+        node.gate = new CountDownLatch(1);
+        final ConcurrencyLimitingJsonRpcClientTransport transport =
+                new ConcurrencyLimitingJsonRpcClientTransport(node, Algorithm.AIMD, 1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = executor.submit(new Call(transport));
+            node.started.await(1, TimeUnit.SECONDS);
+            assertEquals(transport.getInFlight(), 1);
+
+            try {
+                transport.call(REQUEST);
+                fail("should be rejected");
+            } catch (JsonRpcLimitExceededException e) {
+                // expected
+            }
+            assertEquals(transport.getRejected(), 1);
+
+            node.gate.countDown();
+            assertEquals(first.get(1, TimeUnit.SECONDS), "ok");
+            assertEquals(transport.getInFlight(), 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueueWaitsForSlot() throws Exception {
+        final Endpoint node = new Endpoint();
+        node.gate = new CountDownLatch(1);
+        final ConcurrencyLimitingJsonRpcClientTransport transport =
+                new ConcurrencyLimitingJsonRpcClientTransport(node, Algorithm.AIMD, 1);
+        transport.setQueue(1, 1000);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(new Call(transport));
+            node.started.await(1, TimeUnit.SECONDS);
+
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                    node.gate.countDown();
+                }
+            }.start();
+            assertEquals(transport.call(REQUEST), "ok");
+            assertEquals(transport.getRejected(), 0);
+            assertEquals(node.calls, 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAimd() throws Exception {
+        Endpoint node = new Endpoint();
+        ConcurrencyLimitingJsonRpcClientTransport transport =
+                new ConcurrencyLimitingJsonRpcClientTransport(node, Algorithm.AIMD, 2);
+        transport.setLimits(1, 100);
+        transport.setBackoff(0.5, Long.MAX_VALUE);
+
+        for (int i = 0; i < 10; i++) {
+            transport.call(REQUEST);
+        }
+        int grown = transport.getLimit();
+        assertTrue(grown > 2, "limit should grow : " + grown);
+
+        node.down = true;
+        try {
+            transport.call(REQUEST);
+            fail("should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(transport.getLimit(), Math.max(1, (int) (grown * 0.5)));
+    }
+
+    @Test
+    public void testGradientFollowsLatency() throws Exception {
+        Endpoint node = new Endpoint();
+        ConcurrencyLimitingJsonRpcClientTransport transport =
+                new ConcurrencyLimitingJsonRpcClientTransport(node, Algorithm.GRADIENT, 20);
+        transport.setLimits(1, 20);
+
+        node.delay = 5;
+        for (int i = 0; i < 20; i++) {
+            transport.call(REQUEST);
+        }
+        assertEquals(transport.getLimit(), 20);
+
+        node.delay = 30;
+        for (int i = 0; i < 20; i++) {
+            transport.call(REQUEST);
+        }
+        assertTrue(transport.getLimit() < 20, "limit should shrink : " + transport.getLimit());
+    }
+
+    private static final class Call implements Callable<String> {
+
+        private final JsonRpcClientTransport transport;
+
+        Call(JsonRpcClientTransport transport) {
+            this.transport = transport;
+        }
+
+        public String call() throws Exception {
+            return transport.call(REQUEST);
+        }
+    }
+
+    private static final class Endpoint implements JsonRpcClientTransport {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch gate;
+        private volatile boolean down;
+        private volatile long delay;
+        private volatile int calls;
+
+        public String call(String requestData) throws Exception {
+            calls++;
+            started.countDown();
+            CountDownLatch g = gate;
+            if (g != null) {
+                g.await(5, TimeUnit.SECONDS);
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (down) {
+                throw new IOException("down");
+            }
+            return "ok";
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.testng.annotations.AfterTest;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.gson.JsonParser;
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcDeadlineExceededException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class HedgingJsonRpcClientTransportTest {
+
+    private static final String REQUEST = "{\"id\":1,\"method\":\"users.get\",\"params\":[1]}";
+
+    private ExecutorService executor;
+
+    @BeforeTest
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterTest
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testHedgeWins() throws Exception {
+        HedgingJsonRpcClientTransport transport = new HedgingJsonRpcClientTransport(
+                Arrays.asList(endpoint("slow", 2000), endpoint("fast", 0)), executor);
+        transport.addIdempotentMethods("users.get");
+        transport.setMinHedgeDelay(10);
+
+        assertEquals(transport.call(REQUEST), "fast");
+        assertEquals(transport.getHedges(), 1);
+        assertEquals(transport.getHedgesWon(), 1);
+    }
+
+    @Test
+    public void testCancelledAttemptsRecorded() throws Exception {
+        HedgingJsonRpcClientTransport transport = new HedgingJsonRpcClientTransport(
+                Arrays.asList(endpoint("slow", 2000), endpoint("fast", 0)), executor);
+        transport.addIdempotentMethods("users.get");
+        transport.setMinHedgeDelay(20);
+        transport.setRetryBudget(1, 100);
+
+        // every other call is hedged, its slow attempt cancelled after 20 ms
+        for (int i = 0; i < 64; i++) {
+            assertEquals(transport.call(REQUEST), "fast");
+        }
+        transport.setMinHedgeDelay(1);
+        assertTrue(transport.getHedgeDelay() >= 20, "hedge delay " + transport.getHedgeDelay());
+    }
+
+    @Test
+    public void testNoRetryPastDeadline() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        HedgingJsonRpcClientTransport transport = new HedgingJsonRpcClientTransport(
+                Arrays.asList(new JsonRpcClientTransport() {
+                    public String call(String requestData) throws Exception {
+                        calls.incrementAndGet();
+                        throw new IOException("connection reset");
+                    }
+                }), executor);
+        transport.addIdempotentMethods("users.get");
+        transport.setMinHedgeDelay(1000);
+        transport.setBackoff(1000000000, 1000000000);
+
+        Long previous = JsonRpcDeadline.start(50, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            transport.call(REQUEST);
+            fail("should throw exception");
+        } catch (IOException e) {
+            // the backoff would outlast the deadline
+        } finally {
+            JsonRpcDeadline.restore(previous);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertTrue(calls.get() >= 1);
+        assertEquals(transport.getRetries(), 0);
+    }
+
+    @Test
+    public void testDeadlineCarriedToAttempts() throws Exception {
+        final List<Long> remaining = new CopyOnWriteArrayList<Long>();
+        final List<String> requests = new CopyOnWriteArrayList<String>();
+        HedgingJsonRpcClientTransport transport = new HedgingJsonRpcClientTransport(
+                Arrays.asList(new JsonRpcClientTransport() {
+                    public String call(String requestData) throws Exception {
+                        remaining.add(JsonRpcDeadline.remaining());
+                        requests.add(requestData);
+                        if (requests.size() < 2) {
+                            throw new IOException("connection reset");
+                        }
+                        return "ok";
+                    }
+                }), executor);
+        transport.addIdempotentMethods("users.get");
+        transport.setMinHedgeDelay(1000);
+        transport.setBackoff(1, 5);
+
+        Long previous = JsonRpcDeadline.start(5000, TimeUnit.MILLISECONDS);
+        try {
+            assertEquals(transport.call("{\"id\":1,\"method\":\"users.get\",\"params\":[1],\"timeout\":60000}"), "ok");
+        } finally {
+            JsonRpcDeadline.restore(previous);
+        }
+        assertEquals(remaining.size(), 2);
+        for (long r : remaining) {
+            assertTrue(r > 0 && r <= 5000, "remaining " + r);
+        }
+        long timeout = new JsonParser().parse(requests.get(1)).getAsJsonObject().get("timeout").getAsLong();
+        assertTrue(timeout > 0 && timeout <= 5000, "timeout " + timeout);
+    }
+
+    @Test
+    public void testWaitBoundedByDeadline() throws Exception {
+        HedgingJsonRpcClientTransport transport = new HedgingJsonRpcClientTransport(
+                Arrays.asList(endpoint("slow", 5000), endpoint("slow", 5000)), executor);
+        transport.addIdempotentMethods("users.get");
+        transport.setMinHedgeDelay(10);
+
+        Long previous = JsonRpcDeadline.start(100, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            transport.call(REQUEST);
+            fail("should throw exception");
+        } catch (JsonRpcDeadlineExceededException e) {
+            // expected
+        } finally {
+            JsonRpcDeadline.restore(previous);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(transport.getRetries(), 0);
+    }
+
+    @Test
+    public void testNotIdempotentSentOnce() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        HedgingJsonRpcClientTransport transport = new HedgingJsonRpcClientTransport(
+                Arrays.asList(new JsonRpcClientTransport() {
+                    public String call(String requestData) throws Exception {
+                        calls.incrementAndGet();
+                        throw new IOException("connection reset");
+                    }
+                }), executor);
+
+        try {
+            transport.call(REQUEST);
+            fail("should throw exception");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(calls.get(), 1);
+    }
+
+    @Test
+    public void testRetryWithinBudget() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        HedgingJsonRpcClientTransport transport = new HedgingJsonRpcClientTransport(
+                Arrays.asList(new JsonRpcClientTransport() {
+                    public String call(String requestData) throws Exception {
+                        if (calls.incrementAndGet() < 3) {
+                            throw new IOException("connection reset");
+                        }
+                        return "ok";
+                    }
+                }), executor);
+        transport.addIdempotentMethods("users.get");
+        transport.setMinHedgeDelay(1000);
+        transport.setBackoff(1, 5);
+        transport.setRetryBudget(0, 1);
+
+        try {
+            transport.call(REQUEST);
+            fail("should throw exception");
+        } catch (IOException e) {
+            // second failure is not retried, budget is empty
+        }
+        assertEquals(calls.get(), 2);
+        assertEquals(transport.getRetries(), 1);
+        assertEquals(transport.getBudgetExhausted(), 1);
+    }
+
+    private static JsonRpcClientTransport endpoint(final String response, final long delay) {
+        return new JsonRpcClientTransport() {
+            public String call(String requestData) throws Exception {
+                Thread.sleep(delay);
+                return response;
+            }
+        };
+    }
+}
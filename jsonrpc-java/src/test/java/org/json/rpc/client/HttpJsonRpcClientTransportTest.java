@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.client;
+
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcDeadlineExceededException;
+import org.testng.annotations.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class HttpJsonRpcClientTransportTest {
+
+    @Test
+    public void testSlowResponseBoundedByDeadline() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        Thread responder = new Thread() {
+            public void run() {
+                try {
+                    Socket socket = server.accept();
+                    try {
+                        InputStream in = socket.getInputStream();
+                        in.read(new byte[4096]);
+                        OutputStream out = socket.getOutputStream();
+                        out.write("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nConnection: close\r\n\r\n"
+                                .getBytes("ASCII"));
+                        // every piece comes well within the read timeout
+                        for (int i = 0; i < 100; i++) {
+                            out.write(' ');
+                            out.flush();
+                            Thread.sleep(50);
+                        }
+                    } finally {
+                        socket.close();
+                    }
+                } catch (Exception e) {
+                    // the client gave up
+                }
+            }
+        };
+        responder.start();
+
+        HttpJsonRpcClientTransport transport = new HttpJsonRpcClientTransport(
+                new URL("http://localhost:" + server.getLocalPort() + "/"));
+        Long previous = JsonRpcDeadline.start(300, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            transport.call("{\"id\":1,\"method\":\"calc.add\",\"params\":[1,2]}");
+            fail("should give up at the deadline");
+        } catch (JsonRpcDeadlineExceededException e) {
+            // expected
+        } finally {
+            JsonRpcDeadline.restore(previous);
+            server.close();
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        responder.join(10000);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.client;
+
+import org.json.rpc.commons.JsonRpcCopyStrategy;
+import org.json.rpc.commons.JsonRpcCursor;
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcDeadlineExceededException;
+import org.json.rpc.commons.JsonRpcErrorCodes;
+import org.json.rpc.commons.JsonRpcRemoteException;
+import org.json.rpc.server.JsonRpcExecutor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class InProcessJsonRpcClientTransportTest {
+
+    private JsonRpcExecutor executor;
+    private Item lastItem;
+    private long remaining;
+    private int produced;
+    private boolean countsClosed;
+
+    @BeforeMethod
+    public void setup() {
+        produced = 0;
+        countsClosed = false;
+        executor = new JsonRpcExecutor();
+        executor.addHandler("store", new Store() {
+            public Item rename(Item item, String name) {
+                item.name = name;
+                lastItem = item;
+                return item;
+            }
+
+            public int total(Iterator<Item> items) {
+                int total = 0;
+                while (items.hasNext()) {
+                    total += items.next().count;
+                }
+                return total;
+            }
+
+            public Iterator<Item> items(int n) {
+                List<Item> items = new ArrayList<Item>();
+                for (int i = 0; i < n; i++) {
+                    items.add(newItem("i" + i, i));
+                }
+                return items.iterator();
+            }
+
+            public JsonRpcCursor<Integer> counts(final int n) {
+                return new JsonRpcCursor<Integer>() {
+                    private int i;
+
+                    public boolean hasNext() {
+                        return i < n;
+                    }
+
+                    public Integer next() {
+                        produced++;
+                        return i++;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    public void close() {
+                        countsClosed = true;
+                    }
+                };
+            }
+
+            public long ratio(long a, long b) {
+                return a / b;
+            }
+
+            public void touch() {
+                remaining = JsonRpcDeadline.remaining();
+            }
+        }, Store.class);
+    }
+
+    @Test
+    public void testSameAnswersAsWire() {
+        Store wire = new JsonRpcInvoker().get(new JsonRpcClientTransport() {
+            public String call(String requestData) throws Exception {
+                return new InProcessJsonRpcClientTransport(executor, JsonRpcCopyStrategy.DEEP).call(requestData);
+            }
+        }, "store", Store.class);
+
+        for (JsonRpcCopyStrategy copy : JsonRpcCopyStrategy.values()) {
+            Store local = new JsonRpcInvoker().get(
+                    new InProcessJsonRpcClientTransport(executor, copy), "store", Store.class);
+
+            assertEquals(local.rename(newItem("a", 1), "b").name, wire.rename(newItem("a", 1), "b").name);
+            assertEquals(local.total(Arrays.asList(newItem("a", 1), newItem("b", 2)).iterator()), 3);
+            assertEquals(names(local.items(3)), names(wire.items(3)));
+            assertEquals(names(local.items(0)), names(wire.items(0)));
+            JsonRpcCursor<Integer> counts = local.counts(2);
+            assertEquals(counts.next(), Integer.valueOf(0));
+            assertEquals(counts.next(), Integer.valueOf(1));
+            assertFalse(counts.hasNext());
+            counts.close();
+            assertEquals(local.ratio(6, 3), 2);
+
+            JsonRpcRemoteException expected = getError(wire);
+            JsonRpcRemoteException actual = getError(local);
+            assertEquals(actual.getCode(), expected.getCode());
+            assertEquals(firstLine(actual.getMsg()), firstLine(expected.getMsg()));
+            assertEquals(firstLine(actual.getData()), firstLine(expected.getData()));
+        }
+    }
+
+    @Test
+    public void testUnknownMethods() {
+        for (JsonRpcClientTransport transport : Arrays.asList(
+                new InProcessJsonRpcClientTransport(executor, JsonRpcCopyStrategy.PASS_THROUGH),
+                new InProcessJsonRpcClientTransport(new JsonRpcExecutor(), JsonRpcCopyStrategy.PASS_THROUGH))) {
+            try {
+                new JsonRpcInvoker().get(transport, "other", Store.class).touch();
+                fail("method should not be found");
+            } catch (JsonRpcRemoteException e) {
+                assertEquals(e.getCode(), Integer.valueOf(JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyStrategies() {
+        Item item = newItem("a", 1);
+        Store deep = new JsonRpcInvoker().get(
+                new InProcessJsonRpcClientTransport(executor, JsonRpcCopyStrategy.DEEP), "store", Store.class);
+        Item renamed = deep.rename(item, "b");
+        assertEquals(item.name, "a");
+        assertTrue(lastItem != item);
+        assertTrue(renamed != lastItem);
+
+        Store shared = new JsonRpcInvoker().get(
+                new InProcessJsonRpcClientTransport(executor, JsonRpcCopyStrategy.PASS_THROUGH), "store", Store.class);
+        renamed = shared.rename(item, "b");
+        assertEquals(item.name, "b");
+        assertTrue(lastItem == item);
+        assertTrue(renamed == item);
+    }
+
+    @Test
+    public void testThroughDecorators() {
+        InProcessJsonRpcClientTransport local = new InProcessJsonRpcClientTransport(
+                executor, JsonRpcCopyStrategy.PASS_THROUGH);
+        CircuitBreakerJsonRpcClientTransport breaker = new CircuitBreakerJsonRpcClientTransport(
+                new ConcurrencyLimitingJsonRpcClientTransport(
+                        local, ConcurrencyLimitingJsonRpcClientTransport.Algorithm.AIMD, 10));
+        breaker.setFailureRate(2, 1, 0.5);
+        Store store = new JsonRpcInvoker().get(breaker, "store", Store.class);
+
+        // passed as objects, not as json
+        Item item = newItem("a", 1);
+        assertTrue(store.rename(item, "b") == item);
+
+        // an error response does not count as a failure of the endpoint
+        getError(store);
+        getError(store);
+        assertEquals(breaker.getState(CircuitBreakerJsonRpcClientTransport.ENDPOINT),
+                CircuitBreakerJsonRpcClientTransport.State.CLOSED);
+    }
+
+    @Test
+    public void testSequenceReadAsTheCallerGoes() throws Exception {
+        Store store = new JsonRpcInvoker().get(
+                new InProcessJsonRpcClientTransport(executor, JsonRpcCopyStrategy.DEEP), "store", Store.class);
+        JsonRpcCursor<Integer> counts = store.counts(1000);
+        assertEquals(counts.next(), Integer.valueOf(0));
+        assertEquals(produced, 1);
+
+        // the replaced handler is in use until the cursor is closed
+        executor.replaceHandler("store", (Store) executor.removeHandler("store"), Store.class);
+        assertFalse(executor.awaitDrain(10, TimeUnit.MILLISECONDS));
+        counts.close();
+        assertTrue(countsClosed);
+        assertTrue(executor.awaitDrain(0, TimeUnit.MILLISECONDS));
+
+        Iterator<Item> items = store.items(2);
+        assertEquals(names(items), Arrays.asList("i0", "i1"));
+        assertTrue(executor.awaitDrain(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testArgumentCopyFailure() {
+        try {
+            executor.invoke("store.ratio", new Object[]{"x", 1L}, JsonRpcCopyStrategy.PASS_THROUGH);
+            fail("argument should not be copied");
+        } catch (JsonRpcRemoteException e) {
+            assertEquals(e.getCode(), Integer.valueOf(JsonRpcErrorCodes.getServerError(0)));
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        JsonRpcInvoker invoker = new JsonRpcInvoker();
+        invoker.setTimeout(10000);
+        Store store = invoker.get(
+                new InProcessJsonRpcClientTransport(executor, JsonRpcCopyStrategy.PASS_THROUGH), "store", Store.class);
+        store.touch();
+        assertTrue(remaining > 0 && remaining <= 10000, "remaining : " + remaining);
+        assertFalse(JsonRpcDeadline.isSet());
+
+        Long previous = JsonRpcDeadline.start(0, TimeUnit.MILLISECONDS);
+        try {
+            store.touch();
+            fail("deadline should have passed");
+        } catch (JsonRpcDeadlineExceededException e) {
+            // expected
+        } finally {
+            JsonRpcDeadline.restore(previous);
+        }
+    }
+
+    private static JsonRpcRemoteException getError(Store store) {
+        try {
+            store.ratio(1, 0);
+        } catch (JsonRpcRemoteException e) {
+            return e;
+        }
+        throw new AssertionError("division by zero should fail");
+    }
+
+    private static String firstLine(String s) {
+        if (s == null) {
+            return null;
+        }
+        int i = s.indexOf('\n');
+        return (i < 0 ? s : s.substring(0, i));
+    }
+
+    private static List<String> names(Iterator<Item> items) {
+        List<String> names = new ArrayList<String>();
+        while (items.hasNext()) {
+            names.add(items.next().name);
+        }
+        return names;
+    }
+
+    private static Item newItem(String name, int count) {
+        Item item = new Item();
+        item.name = name;
+        item.count = count;
+        return item;
+    }
+
+    public static interface Store {
+        Item rename(Item item, String name);
+
+        int total(Iterator<Item> items);
+
+        Iterator<Item> items(int n);
+
+        JsonRpcCursor<Integer> counts(int n);
+
+        long ratio(long a, long b);
+
+        void touch();
+    }
+
+    public static class Item {
+        String name;
+        int count;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import com.google.gson.JsonObject;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+
+public class JsonRpcClientCacheTest {
+
+    @Test
+    public void testCachedPerArguments() {
+        AtomicInteger calls = new AtomicInteger();
+        JsonRpcInvoker invoker = new JsonRpcInvoker();
+        JsonRpcClientCache cache = new JsonRpcClientCache(10);
+        cache.enable("config.get", 60000);
+        invoker.setCache(cache);
+
+        Config config = invoker.get(getTransport(calls), "config", Config.class);
+        assertEquals(config.get("a"), "value 1");
+        assertEquals(config.get("a"), "value 1");
+        assertEquals(config.get("b"), "value 2");
+        assertEquals(config.get("b"), "value 2");
+        assertEquals(config.count(), 3);
+        assertEquals(config.count(), 4);
+
+        assertEquals(calls.get(), 4);
+        assertEquals(cache.getHits(), 2);
+        assertEquals(cache.getMisses(), 2);
+        assertEquals(cache.getHitRatio(), 0.5);
+    }
+
+    @Test
+    public void testEviction() {
+        AtomicInteger calls = new AtomicInteger();
+        JsonRpcInvoker invoker = new JsonRpcInvoker();
+        JsonRpcClientCache cache = new JsonRpcClientCache(1);
+        cache.enable("config.get", 60000);
+        invoker.setCache(cache);
+
+        Config config = invoker.get(getTransport(calls), "config", Config.class);
+        config.get("a");
+        config.get("b");
+        config.get("a");
+
+        assertEquals(calls.get(), 3);
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getEvictions(), 2);
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        JsonRpcInvoker invoker = new JsonRpcInvoker();
+        JsonRpcClientCache cache = new JsonRpcClientCache(10, new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        cache.enable("config.get", 1, 60000);
+        invoker.setCache(cache);
+
+        Config config = invoker.get(getTransport(calls), "config", Config.class);
+        assertEquals(config.get("a"), "value 1");
+        Thread.sleep(5);
+        // stale value served, refreshed synchronously by the test executor
+        assertEquals(config.get("a"), "value 1");
+        Thread.sleep(5);
+        assertEquals(config.get("a"), "value 2");
+        assertEquals(cache.getStaleHits(), 2);
+    }
+
+    static interface Config {
+        String get(String key);
+
+        int count();
+    }
+
+    static JsonRpcClientTransport getTransport(final AtomicInteger calls) {
+        return new JsonRpcClientTransport() {
+            public String call(String requestData) throws Exception {
+                int n = calls.incrementAndGet();
+                JsonObject resp = new JsonObject();
+                resp.addProperty("jsonrpc", "2.0");
+                if (requestData.contains("config.get")) {
+                    resp.addProperty("result", "value " + n);
+                } else {
+                    resp.addProperty("result", n);
+                }
+                return resp.toString();
+            }
+        };
+    }
+}
@@ -64,7 +64,7 @@ public class JsonRpcInvokerTest {
         JsonObject error = new JsonObject();
         error.addProperty("code", -32002);
         error.addProperty("message", "service.invalid-parameters");
-        error.add("data", new JsonParser().parse("{\"email\":[\"'email' is no valid email address in the basic format local-part@hostname\"]}}"));
+        error.add("data", new JsonParser().parse("{\"email\":[\"'email' is no valid email address in the basic format local-part@hostname\"]}"));
         resp.add("error", error);
 
         TestInterface handle = invoker.get(getTransport(resp), "someHandler", TestInterface.class);
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.client;
+
+import org.json.rpc.client.LoadBalancingJsonRpcClientTransport.Strategy;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class LoadBalancingJsonRpcClientTransportTest {
+
+    @DataProvider
+    public Object[][] strategies() {
+        return new Object[][]{
+                {Strategy.ROUND_ROBIN}, //
+                {Strategy.LEAST_OUTSTANDING}, //
+                {Strategy.POWER_OF_TWO_CHOICES}, //
+        };
+    }
+
+    @Test(dataProvider = "strategies")
+    public void testAllEndpointsUsed(Strategy strategy) throws Exception {
+        Node a = new Node();
+        Node b = new Node();
+        LoadBalancingJsonRpcClientTransport transport = new LoadBalancingJsonRpcClientTransport(
+                Arrays.asList(a, b), strategy);
+
+        for (int i = 0; i < 100; i++) {
+            transport.call("{}");
+        }
+        assertEquals(a.calls + b.calls, 100);
+        assertTrue(a.calls > 0);
+        assertTrue(b.calls > 0);
+    }
+
+    @Test
+    public void testEjectionAndProbe() throws Exception {
+        Node a = new Node();
+        Node b = new Node();
+        LoadBalancingJsonRpcClientTransport transport = new LoadBalancingJsonRpcClientTransport(
+                Arrays.asList(a, b), Strategy.ROUND_ROBIN);
+        transport.setEjection(2, 50);
+
+        a.down = true;
+        for (int i = 0; i < 4; i++) {
+            try {
+                transport.call("{}");
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        assertTrue(transport.isEjected(0));
+
+        int calls = a.calls;
+        for (int i = 0; i < 10; i++) {
+            transport.call("{}");
+        }
+        assertEquals(a.calls, calls);
+
+        a.down = false;
+        Thread.sleep(60);
+        transport.call("{}");
+        assertEquals(a.calls, calls + 1);
+        assertFalse(transport.isEjected(0));
+    }
+
+    @Test
+    public void testAllEjected() throws Exception {
+        Node a = new Node();
+        a.down = true;
+        LoadBalancingJsonRpcClientTransport transport = new LoadBalancingJsonRpcClientTransport(
+                Arrays.asList(a), Strategy.ROUND_ROBIN);
+        transport.setEjection(1, 10000);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                transport.call("{}");
+                fail("should throw exception");
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        assertEquals(a.calls, 3);
+    }
+
+    private static final class Node implements JsonRpcClientTransport {
+        private volatile boolean down;
+        private int calls;
+
+        public String call(String requestData) throws Exception {
+            calls++;
+            if (down) {
+                throw new IOException("connection refused");
+            }
+            return "{}";
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.util.Set;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class GsonTypeCheckerTest {
 
@@ -255,5 +256,27 @@ public class GsonTypeCheckerTest {
         assertEquals(typeChecker.getTypeName(clazz), name);
     }
 
+    static interface ValidService {
+        TooManyInnerClasses get(ValidInnerClass a, int b);
+    }
+
+    static interface InvalidService {
+        CyclicClass get(int a);
+    }
+
+    @Test
+    public void testInterfaceValidationCached() {
+        assertTrue(typeChecker.isValidInterface(ValidService.class, true));
+        assertTrue(typeChecker.isValidInterface(ValidService.class, true));
+
+        // invalid interfaces are checked again so the reason is reported every time
+        assertFalse(typeChecker.isValidInterface(InvalidService.class));
+        try {
+            typeChecker.isValidInterface(InvalidService.class, true);
+            fail("should be invalid");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
 
 }
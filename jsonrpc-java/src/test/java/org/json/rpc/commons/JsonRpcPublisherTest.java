@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.commons;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class JsonRpcPublisherTest {
+
+    private final List<Runnable> pending = new ArrayList<Runnable>();
+    private final Executor executor = new Executor() {
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+    };
+
+    private List<String> received;
+    private boolean closed;
+    private boolean failing;
+
+    @BeforeMethod
+    public void setup() {
+        pending.clear();
+        received = new ArrayList<String>();
+        closed = false;
+        failing = false;
+    }
+
+    @Test
+    public void testDropOldest() {
+        JsonRpcPublisher<Integer> publisher = newPublisher(2, JsonRpcPublisher.Overflow.DROP_OLDEST);
+        for (int i = 1; i <= 4; i++) {
+            publisher.publish(i);
+        }
+        runPending();
+        assertEquals(received, Arrays.asList(event(3), event(4)));
+        assertEquals(publisher.getDropped(), 2);
+        assertEquals(publisher.getSubscribers(), 1);
+    }
+
+    @Test
+    public void testDropNewest() {
+        JsonRpcPublisher<Integer> publisher = newPublisher(2, JsonRpcPublisher.Overflow.DROP_NEWEST);
+        for (int i = 1; i <= 4; i++) {
+            publisher.publish(i);
+        }
+        runPending();
+        assertEquals(received, Arrays.asList(event(1), event(2)));
+        assertEquals(publisher.getDropped(), 2);
+    }
+
+    @Test
+    public void testDisconnectSlowSubscriber() {
+        JsonRpcPublisher<Integer> publisher = newPublisher(2, JsonRpcPublisher.Overflow.DISCONNECT);
+        for (int i = 1; i <= 3; i++) {
+            publisher.publish(i);
+        }
+        runPending();
+        assertTrue(received.isEmpty());
+        assertTrue(closed);
+        assertEquals(publisher.getDisconnected(), 1);
+        assertEquals(publisher.getSubscribers(), 0);
+
+        // later events no longer go anywhere
+        publisher.publish(4);
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    public void testFailedSubscriberRemoved() {
+        JsonRpcPublisher<Integer> publisher = newPublisher(8, JsonRpcPublisher.Overflow.DROP_OLDEST);
+        failing = true;
+        publisher.publish(1);
+        runPending();
+        assertTrue(closed);
+        assertEquals(publisher.getSubscribers(), 0);
+    }
+
+    @Test
+    public void testCloseSendsBufferedEvents() {
+        JsonRpcPublisher<Integer> publisher = newPublisher(8, JsonRpcPublisher.Overflow.DROP_OLDEST);
+        publisher.publish(1);
+        publisher.close();
+        assertFalse(closed);
+        runPending();
+        assertEquals(received, Arrays.asList(event(1)));
+        assertTrue(closed);
+        assertTrue(publisher.isClosed());
+    }
+
+    private JsonRpcPublisher<Integer> newPublisher(int bufferSize, JsonRpcPublisher.Overflow overflow) {
+        JsonRpcPublisher<Integer> publisher = new JsonRpcPublisher<Integer>("feed.update", executor);
+        publisher.setBuffer(bufferSize, overflow);
+        publisher.subscribe(new JsonRpcPublisher.Sink() {
+            public void send(String notification) throws Exception {
+                if (failing) {
+                    throw new Exception("connection reset");
+                }
+                received.add(notification);
+            }
+
+            public void close() {
+                closed = true;
+            }
+        });
+        return publisher;
+    }
+
+    private void runPending() {
+        while (!pending.isEmpty()) {
+            pending.remove(0).run();
+        }
+    }
+
+    private static String event(int i) {
+        return "{\"jsonrpc\":\"2.0\",\"method\":\"feed.update\",\"params\":[" + i + "]}";
+    }
+}
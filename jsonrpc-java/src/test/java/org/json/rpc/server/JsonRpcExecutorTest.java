@@ -0,0 +1,945 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json.rpc.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.json.rpc.client.JsonRpcClientTransport;
+import org.json.rpc.client.JsonRpcInvoker;
+import org.json.rpc.commons.JsonRpcCursor;
+import org.json.rpc.commons.JsonRpcDeadline;
+import org.json.rpc.commons.JsonRpcErrorCodes;
+import org.json.rpc.commons.JsonRpcException;
+import org.json.rpc.commons.JsonRpcPublisher;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class JsonRpcExecutorTest {
+
+    private JsonRpcExecutor executor;
+    private int executed;
+    private int closed;
+    private final List<Integer> consumed = new ArrayList<Integer>();
+    private int read;
+    private final List<Integer> bulkSizes = new ArrayList<Integer>();
+    private JsonRpcPublisher<Integer> ticks;
+
+    @BeforeTest
+    public void setup() {
+        executor = new JsonRpcExecutor();
+        executor.addHandler("budget", new Budget() {
+            public long remaining() {
+                executed++;
+                return JsonRpcDeadline.remaining();
+            }
+        }, Budget.class);
+        executor.addHandler("rows", new Rows() {
+            public Iterator<Row> rows(int n) {
+                List<Row> rows = new ArrayList<Row>();
+                for (int i = 0; i < n; i++) {
+                    Row row = new Row();
+                    row.id = i;
+                    row.name = "row" + i;
+                    rows.add(row);
+                }
+                return rows.iterator();
+            }
+
+            public JsonRpcCursor<Integer> numbers(final int n) {
+                return new JsonRpcCursor<Integer>() {
+                    private int i;
+
+                    // a negative n breaks the cursor after -n - 1 elements
+                    public boolean hasNext() {
+                        if (n < 0 && i >= -n - 1) {
+                            throw new IllegalStateException("broken cursor");
+                        }
+                        return i < Math.abs(n);
+                    }
+
+                    public Integer next() {
+                        return i++;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    public void close() {
+                        closed++;
+                    }
+                };
+            }
+        }, Rows.class);
+        executor.addHandler("ingest", new Ingest() {
+            public int count(String tag, Iterator<Row> rows) {
+                consumed.clear();
+                int n = 0;
+                while (rows.hasNext()) {
+                    Row row = rows.next();
+                    assertEquals(row.name, tag + row.id);
+                    consumed.add(read);
+                    n++;
+                }
+                return n;
+            }
+        }, Ingest.class);
+        executor.addHandler("ticker", new Ticker() {
+            public JsonRpcPublisher<Integer> watch() {
+                ticks = new JsonRpcPublisher<Integer>("ticker.tick", new Executor() {
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+                return ticks;
+            }
+        }, Ticker.class);
+        executor.addHandler("calc", new Calc() {
+            public int add(int a, int b) {
+                return a + b;
+            }
+
+            public double scale(double value, float factor) {
+                return value * factor;
+            }
+
+            public String repeat(String s, short times, char separator) {
+                if (times < 0) {
+                    throw new IllegalArgumentException("negative times");
+                }
+                StringBuilder buff = new StringBuilder();
+                for (int i = 0; i < times; i++) {
+                    buff.append(i == 0 ? "" : String.valueOf(separator)).append(s);
+                }
+                return (s == null ? null : buff.toString());
+            }
+
+            public boolean not(boolean b) {
+                return !b;
+            }
+
+            public long big(long l) {
+                return l;
+            }
+
+            public void nothing() {
+            }
+        }, Calc.class);
+        executor.addHandler("users", new Users() {
+            public Row getById(int id) {
+                Row row = new Row();
+                row.id = id;
+                row.name = "user" + id;
+                return row;
+            }
+
+            @JsonRpcBulk("getById")
+            public Object[] getByIds(Object[][] calls) {
+                bulkSizes.add(calls.length);
+                Object[] rows = new Object[calls.length];
+                for (int i = 0; i < calls.length; i++) {
+                    int id = (Integer) calls[i][0];
+                    rows[i] = (id < 0 ? new IllegalArgumentException("negative id") : getById(id));
+                }
+                return rows;
+            }
+        }, Users.class);
+    }
+
+    @Test
+    public void testDeadlinePropagated() {
+        JsonRpcInvoker invoker = new JsonRpcInvoker();
+        invoker.setTimeout(60000);
+        Budget budget = invoker.get(getTransport(), "budget", Budget.class);
+
+        long remaining = budget.remaining();
+        assertTrue(remaining > 0 && remaining <= 60000);
+        assertFalse(JsonRpcDeadline.isSet());
+    }
+
+    @Test
+    public void testNoDeadline() {
+        Budget budget = new JsonRpcInvoker().get(getTransport(), "budget", Budget.class);
+        assertEquals(budget.remaining(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testExpiredRequestDropped() {
+        int count = executed;
+        JsonObject resp = execute("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"budget.remaining\",\"timeout\":0}");
+        assertEquals(resp.getAsJsonObject("error").get("code").getAsInt(),
+                JsonRpcErrorCodes.DEADLINE_EXCEEDED_ERROR_CODE);
+        assertEquals(executed, count);
+    }
+
+    @Test
+    public void testNestedDeadlineKeepsEarliest() {
+        Long outer = JsonRpcDeadline.start(10, TimeUnit.SECONDS);
+        try {
+            Long inner = JsonRpcDeadline.start(1, TimeUnit.HOURS);
+            assertTrue(JsonRpcDeadline.remaining() <= 10000);
+            JsonRpcDeadline.restore(inner);
+            assertTrue(JsonRpcDeadline.isSet());
+        } finally {
+            JsonRpcDeadline.restore(outer);
+        }
+        assertFalse(JsonRpcDeadline.isSet());
+    }
+
+    @Test
+    public void testSequenceStreamed() {
+        final StringWriter out = new StringWriter();
+        final int[] parts = new int[1];
+        int count = closed;
+        executor.execute(new JsonRpcStreamingServerTransport() {
+            public String readRequest() {
+                throw new AssertionError("request should be streamed");
+            }
+
+            public Reader openRequest() {
+                return new StringReader("{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"rows.numbers\",\"params\":[3]}");
+            }
+
+            public void writeResponse(String responseData) {
+                throw new AssertionError("response should be streamed");
+            }
+
+            public Writer openResponse() {
+                return new Writer() {
+                    public void write(char[] buff, int off, int len) {
+                        parts[0]++;
+                        out.write(buff, off, len);
+                    }
+
+                    public void flush() {
+                    }
+
+                    public void close() {
+                    }
+                };
+            }
+        });
+        assertEquals(out.toString(), "{\"jsonrpc\":\"2.0\",\"id\":7,\"result\":[0,1,2]}");
+        assertTrue(parts[0] > 3);
+        assertEquals(closed, count + 1);
+    }
+
+    @Test
+    public void testStreamedSequenceFailures() {
+        int count = closed;
+        JsonObject resp = new JsonParser().parse(
+                stream("{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"rows.numbers\",\"params\":[-1]}"))
+                .getAsJsonObject();
+        assertTrue(resp.getAsJsonObject("error").get("message").getAsString().contains("broken cursor"));
+        assertEquals(closed, count + 1);
+
+        final StringWriter out = new StringWriter();
+        final boolean[] ended = new boolean[1];
+        try {
+            executor.execute(new JsonRpcStreamingServerTransport() {
+                public String readRequest() {
+                    throw new AssertionError("request should be streamed");
+                }
+
+                public Reader openRequest() {
+                    return new StringReader("{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"rows.numbers\",\"params\":[-3]}");
+                }
+
+                public void writeResponse(String responseData) {
+                    throw new AssertionError("response should be streamed");
+                }
+
+                public Writer openResponse() {
+                    return new Writer() {
+                        public void write(char[] buff, int off, int len) {
+                            out.write(buff, off, len);
+                        }
+
+                        public void flush() {
+                        }
+
+                        public void close() {
+                            ended[0] = true;
+                        }
+                    };
+                }
+            });
+            fail("a failure once streaming should abort the response");
+        } catch (JsonRpcException e) {
+            assertTrue(e.getCause().getMessage().contains("broken cursor"));
+        }
+        assertEquals(out.toString(), "{\"jsonrpc\":\"2.0\",\"id\":7,\"result\":[0,1");
+        assertFalse(ended[0]);
+        assertEquals(closed, count + 2);
+    }
+
+    @Test
+    public void testSubscriptionPushesEvents() {
+        final List<String> events = new ArrayList<String>();
+        final boolean[] closedStream = new boolean[1];
+        executor.execute(new JsonRpcEventServerTransport() {
+            public String readRequest() {
+                return "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"ticker.watch\"}";
+            }
+
+            public void writeResponse(String responseData) {
+                throw new AssertionError("response should be the first event");
+            }
+
+            public JsonRpcPublisher.Sink openEvents() {
+                return new JsonRpcPublisher.Sink() {
+                    public void send(String notification) {
+                        events.add(notification);
+                    }
+
+                    public void close() {
+                        closedStream[0] = true;
+                    }
+                };
+            }
+        });
+        assertEquals(events, Arrays.asList("{\"jsonrpc\":\"2.0\",\"id\":3,\"result\":\"ticker.tick\"}"));
+        assertEquals(ticks.getSubscribers(), 1);
+
+        ticks.publish(1);
+        ticks.publish(2);
+        ticks.close();
+        assertEquals(events.subList(1, events.size()), Arrays.asList(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"ticker.tick\",\"params\":[1]}",
+                "{\"jsonrpc\":\"2.0\",\"method\":\"ticker.tick\",\"params\":[2]}"));
+        assertTrue(closedStream[0]);
+        assertEquals(ticks.getSubscribers(), 0);
+    }
+
+    @Test
+    public void testSubscriptionNeedsEventTransport() {
+        JsonObject resp = execute("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"ticker.watch\"}");
+        assertEquals(resp.getAsJsonObject("error").get("code").getAsInt(),
+                JsonRpcErrorCodes.INVALID_REQUEST_ERROR_CODE);
+        assertEquals(ticks.getSubscribers(), 0);
+        assertEquals(executor.methodSignature("ticker.watch"), new String[]{"subscription"});
+    }
+
+    @Test
+    public void testPrimitiveCallsAnswerAsTree() {
+        String[] requests = {
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"calc.add\",\"params\":[2,3]}",
+                "{\"method\":\"calc.add\",\"params\":[-7,3],\"id\":\"a\\\"b\"}",
+                "{\"method\":\"calc.scale\",\"params\":[0.1,3.3],\"id\":1234567}",
+                "{\"method\":\"calc.repeat\",\"params\":[\"\\u2028\\t\\u007f<\\\"\",3,\"\\n\"],\"id\":2}",
+                "{\"method\":\"calc.repeat\",\"params\":[null,3,\"x\"],\"id\":null}",
+                "{\"method\":\"calc.repeat\",\"params\":[\"a\",-1,\"x\"],\"id\":3}",
+                "{\"method\":\"calc.not\",\"params\":[true],\"id\":4}",
+                "{\"method\":\"calc.big\",\"params\":[9007199254740993],\"id\":5}",
+                "{\"method\":\"calc.nothing\",\"id\":6}",
+                "{\"method\":\"calc.nothing\",\"params\":[],\"extra\":{\"a\":[1,-2.5e3,\"\\\"]\",null,{}]}}",
+                " { \"method\" : \"calc.repeat\" , \"params\" : [ \"\\ud83d\\ude00\\/\" , 2 , \"\\u00e9\" ] , \"id\" : -0 } ",
+                "{\"method\":\"calc.big\",\"params\":[-9223372036854775808],\"id\":9223372036854775807}",
+                // left to the regular path
+                "{\"id\":7,\"params\":[1,2],\"method\":\"calc.add\"}",
+                "{\"id\":8,\"method\":\"calc.add\",\"params\":[1.0,\"2\"]}",
+                "{\"id\":9,\"method\":\"calc.add\",\"params\":[1]}",
+                "{\"id\":10,\"method\":\"calc.add\",\"params\":[1,2,3]}",
+                "{\"id\":1.5,\"method\":\"calc.add\",\"params\":[1,2]}",
+                "{\"id\":11,\"method\":\"calc.not\",\"params\":[null]}",
+                "{\"id\":12,\"method\":\"calc.add\",\"params\":[2147483648,1]}",
+                "{\"id\":13,\"method\":\"calc.big\",\"params\":[9223372036854775808]}",
+                "{\"id\":14,\"method\":\"calc.add\",\"params\":[1,2],\"id\":15}",
+                "{'id':16,method:'calc.add',params:[1,2]}",
+                "{\"id\":17,\"method\":\"calc.repeat\",\"params\":[\"a\",2,\"\"]}",
+                "{\"id\":18,\"method\":\"calc.add\",\"params\":[01,2]}",
+        };
+        for (String requestData : requests) {
+            // the streaming transport scans requests as they are read
+            assertSameAnswer(call(requestData), stream(requestData), requestData);
+            assertSameAnswer(call("[" + requestData + "]"), stream("[" + requestData + "]"), requestData);
+        }
+    }
+
+    @Test
+    public void testEnvelopeAnswersAsTree() {
+        String[] requests = {
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"rows.rows\",\"params\":[2]}",
+                "{\"params\":[\"t\",[{\"id\":0,\"name\":\"t0\"}]],\"method\":\"ingest.count\",\"id\":{\"a\":1}}",
+                "{\"id\":1.50,\"method\":\"rows.numbers\",\"params\":[1],\"method\":\"rows.rows\"}",
+                "{\"id\":2,\"method\":\"rows.missing\",\"params\":[]}",
+                "{\"id\":3,\"method\":\"x rows.rows\",\"params\":[1]}",
+                "{\"id\":4,\"method\":\"rows.rows\",\"params\":[1,2]}",
+                "{\"id\":5,\"method\":\"rows.rows\",\"params\":{}}",
+                "{\"id\":6,\"method\":7}",
+                "{\"id\":7}",
+                "{\"id\":8,\"method\":\"budget.remaining\",\"timeout\":\"0\"}",
+                "{\"id\":9,\"method\":\"budget.remaining\",\"timeout\":null}",
+                "[1,{\"id\":10,\"method\":\"rows.rows\",\"params\":[0]}]",
+                "[]",
+                "{\"id\":11,\"method\":\"rows.rows\",\"params\":[1]",
+                "{'id':12,method:'rows.rows',params:[1]}",
+        };
+        for (String requestData : requests) {
+            assertSameAnswer(call(requestData), stream(requestData), requestData);
+        }
+    }
+
+    @Test
+    public void testPrimitiveResultWrittenToStream() {
+        String[] requests = {
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"calc.add\",\"params\":[2,3]}",
+                "{\"method\":\"calc.repeat\",\"params\":[\"\\u2028\\t<\\\"\",2,\"\\n\"],\"id\":\"a\\\"b\"}",
+                "{\"id\":2,\"method\":\"calc.nothing\",\"params\":[]}",
+        };
+        for (final String requestData : requests) {
+            final StringWriter out = new StringWriter();
+            executor.execute(new JsonRpcStreamingServerTransport() {
+                public String readRequest() {
+                    throw new AssertionError("request should be streamed");
+                }
+
+                public Reader openRequest() {
+                    return new StringReader(requestData);
+                }
+
+                public void writeResponse(String responseData) {
+                    throw new AssertionError("response should be written to the stream");
+                }
+
+                public Writer openResponse() {
+                    return out;
+                }
+            });
+            assertEquals(out.toString(), call(requestData), requestData);
+        }
+    }
+
+    @Test
+    public void testStreamedRequestScannedAsRead() {
+        String[] requests = {
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"calc.add\",\"params\":[2,3]}",
+                " { \"method\" : \"calc.repeat\" , \"params\" : [ \"\\ud83d\\ude00\\/\" , 2 , \"\\u00e9\" ] , \"id\" : -0 } ",
+                "[{\"id\":2,\"method\":\"rows.rows\",\"params\":[2]},{\"id\":3,\"method\":\"calc.not\",\"params\":[false]}]",
+                "{\"id\":4,\"method\":\"calc.add\",\"params\":[1,2]",
+                "{\"id\":5,\"method\":\"calc.nothing\",\"params\":[],\"extra\":nul}",
+                "{\"method\":\"ingest.count\",\"params\":[\"r\",[{\"id\":0,\"name\":\"r0\"}]],\"id\":6}",
+        };
+        for (String requestData : requests) {
+            // a character per read, every member is split across reads
+            assertSameAnswer(call(requestData), stream(requestData, 1), requestData);
+        }
+    }
+
+    private void assertSameAnswer(String actual, String expected, String requestData) {
+        if (!expected.contains("\"error\"")) {
+            assertEquals(actual, expected, requestData);
+            return;
+        }
+        // messages and traces differ, the calls took different paths through the executor
+        assertEquals(withoutMessages(new JsonParser().parse(actual)),
+                withoutMessages(new JsonParser().parse(expected)), requestData);
+    }
+
+    private JsonElement withoutMessages(JsonElement resp) {
+        if (resp.isJsonArray()) {
+            for (JsonElement e : resp.getAsJsonArray()) {
+                withoutMessages(e);
+            }
+        } else if (resp.getAsJsonObject().has("error")) {
+            resp.getAsJsonObject().getAsJsonObject("error").remove("message");
+            resp.getAsJsonObject().getAsJsonObject("error").remove("data");
+        }
+        return resp;
+    }
+
+    @Test
+    public void testPrimitiveCallErrors() {
+        JsonObject resp = execute("{\"id\":1,\"method\":\"calc.scale\",\"params\":[1e308,10]}");
+        assertTrue(resp.getAsJsonObject("error").get("message").getAsString().contains("not a valid double"));
+        assertEquals(resp.get("id").getAsInt(), 1);
+
+        resp = execute("{\"id\":\"r\",\"method\":\"calc.repeat\",\"params\":[\"a\",-1,\"x\"]}");
+        assertTrue(resp.getAsJsonObject("error").get("message").getAsString().contains("negative times"));
+        assertEquals(resp.get("id").getAsString(), "r");
+
+        assertEquals(execute("{\"id\":1,\"method\":\"calc.add\",\"params\":[1,2]} x")
+                .getAsJsonObject("error").get("code").getAsInt(), JsonRpcErrorCodes.PARSE_ERROR_CODE);
+        assertEquals(execute("{\"id\":2,\"method\":\"calc.add\",\"params\":[1,2],\"timeout\":0}")
+                .getAsJsonObject("error").get("code").getAsInt(), JsonRpcErrorCodes.DEADLINE_EXCEEDED_ERROR_CODE);
+    }
+
+    @Test
+    public void testSequenceMaterializedInBatch() {
+        String responseData = call("[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"rows.numbers\",\"params\":[2]}]");
+        assertEquals(responseData, "[{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[0,1]}]");
+    }
+
+    @Test
+    public void testSequenceFailureReported() {
+        int count = closed;
+        JsonObject resp = execute("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"rows.numbers\",\"params\":[-1]}");
+        assertTrue(resp.getAsJsonObject("error").get("message").getAsString().contains("broken cursor"));
+        assertEquals(closed, count + 1);
+    }
+
+    @Test
+    public void testSequenceThroughInvoker() {
+        Rows rows = new JsonRpcInvoker().get(getTransport(), "rows", Rows.class);
+
+        Iterator<Row> it = rows.rows(3);
+        for (int i = 0; i < 3; i++) {
+            Row row = it.next();
+            assertEquals(row.id, i);
+            assertEquals(row.name, "row" + i);
+        }
+        assertFalse(it.hasNext());
+
+        JsonRpcCursor<Integer> numbers = rows.numbers(2);
+        assertEquals(numbers.next(), Integer.valueOf(0));
+        assertEquals(numbers.next(), Integer.valueOf(1));
+        assertFalse(numbers.hasNext());
+        numbers.close();
+
+        assertEquals(executor.methodSignature("rows.rows"), new String[]{"array,int"});
+    }
+
+    @Test
+    public void testLazyParameterFedWhileReading() {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            rows.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"r").append(i).append("\"}");
+        }
+        // id and timeout after the parameters are only read once the method returned
+        String requestData = "{\"jsonrpc\":\"2.0\",\"method\":\"ingest.count\",\"params\":[\"r\",["
+                + rows + "]],\"id\":9,\"timeout\":60000}";
+
+        JsonObject resp = new JsonParser().parse(stream(requestData)).getAsJsonObject();
+        assertEquals(resp.get("result").getAsInt(), 1000);
+        assertEquals(resp.get("id").getAsInt(), 9);
+
+        // the first rows were handled long before the request was read
+        assertEquals(consumed.size(), 1000);
+        assertTrue(consumed.get(0) < requestData.length() / 10, "read " + consumed.get(0));
+    }
+
+    @Test
+    public void testLazyParameterErrors() {
+        JsonObject resp = new JsonParser().parse(stream(
+                "{\"id\":1,\"method\":\"ingest.count\",\"params\":[\"r\"]}")).getAsJsonObject();
+        assertEquals(resp.getAsJsonObject("error").get("code").getAsInt(),
+                JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE);
+
+        resp = new JsonParser().parse(stream(
+                "{\"id\":2,\"method\":\"ingest.count\",\"params\":[\"r\",[{\"id\":0,\"name\":\"x0\"}]]}"))
+                .getAsJsonObject();
+        assertEquals(resp.get("id").getAsInt(), 2);
+        assertTrue(resp.getAsJsonObject("error").get("message").getAsString().contains("expected"));
+    }
+
+    @Test
+    public void testLazyParameterFromTree() {
+        Ingest ingest = new JsonRpcInvoker().get(getTransport(), "ingest", Ingest.class);
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < 3; i++) {
+            Row row = new Row();
+            row.id = i;
+            row.name = "t" + i;
+            rows.add(row);
+        }
+        assertEquals(ingest.count("t", rows.iterator()), 3);
+    }
+
+    @Test
+    public void testHandlersChangedAtRuntime() throws Exception {
+        JsonRpcExecutor executor = new JsonRpcExecutor();
+        executor.addHandler("greeter", new Greeter() {
+            public String greet(String name) {
+                return "hello " + name;
+            }
+        }, Greeter.class);
+
+        String req = "{\"id\":1,\"method\":\"greeter.greet\",\"params\":[\"bob\"]}";
+        String version = executor.methodsVersion();
+        assertEquals(call(executor, req), "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"hello bob\"}");
+
+        try {
+            executor.addHandler("greeter", new Greeter() {
+                public String greet(String name) {
+                    return name;
+                }
+            }, Greeter.class);
+            fail("handler should not be added twice");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        executor.addHandler("budget", new Budget() {
+            public long remaining() {
+                return 1;
+            }
+        }, Budget.class);
+        assertFalse(executor.methodsVersion().equals(version));
+        assertTrue(Arrays.asList(executor.listMethods()).contains("budget.remaining"));
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Greeter slow = new Greeter() {
+            public String greet(String name) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow " + name;
+            }
+        };
+        executor.replaceHandler("greeter", slow, Greeter.class);
+        final String[] slowAnswer = new String[1];
+        final JsonRpcExecutor target = executor;
+        final String request = req;
+        Thread caller = new Thread() {
+            public void run() {
+                slowAnswer[0] = call(target, request);
+            }
+        };
+        caller.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Object previous = executor.replaceHandler("greeter", new Greeter() {
+            public String greet(String name) {
+                return "hi " + name;
+            }
+        }, Greeter.class);
+        assertTrue(previous == slow);
+        assertEquals(call(executor, req), "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"hi bob\"}");
+        assertFalse(executor.awaitDrain(10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(executor.awaitDrain(5, TimeUnit.SECONDS));
+        caller.join();
+        assertEquals(slowAnswer[0], "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"slow bob\"}");
+
+        assertTrue(executor.removeHandler("greeter") != null);
+        assertTrue(executor.removeHandler("greeter") == null);
+        JsonObject resp = new JsonParser().parse(call(executor, req)).getAsJsonObject();
+        assertEquals(resp.getAsJsonObject("error").get("code").getAsInt(),
+                JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE);
+        assertFalse(Arrays.asList(executor.listMethods()).contains("greeter.greet"));
+        assertTrue(executor.awaitDrain(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testChangeKeepsMethodsOfOtherHandlers() {
+        JsonRpcExecutor executor = new JsonRpcExecutor();
+        for (final String name : new String[]{"greeter", "greeter2", "greeter_"}) {
+            executor.addHandler(name, new Greeter() {
+                public String greet(String who) {
+                    return name + " " + who;
+                }
+            }, Greeter.class);
+        }
+        executor.replaceHandler("greeter", new Greeter() {
+            public String greet(String who) {
+                return "hi " + who;
+            }
+        }, Greeter.class);
+
+        String req = "{\"id\":1,\"method\":\"%s.greet\",\"params\":[\"bob\"]}";
+        assertEquals(call(executor, String.format(req, "greeter")),
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"hi bob\"}");
+        assertEquals(call(executor, String.format(req, "greeter2")),
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"greeter2 bob\"}");
+
+        executor.removeHandler("greeter");
+        assertEquals(call(executor, String.format(req, "greeter_")),
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"greeter_ bob\"}");
+        List<String> methods = Arrays.asList(executor.listMethods());
+        assertFalse(methods.contains("greeter.greet"));
+        assertTrue(methods.contains("greeter2.greet"));
+        assertTrue(methods.contains("system.listMethods"));
+    }
+
+    @Test
+    public void testReplacedHandlerDrainedOnceCursorRead() throws Exception {
+        final JsonRpcExecutor executor = new JsonRpcExecutor();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final boolean[] closed = new boolean[1];
+        Rows slow = new Rows() {
+            public Iterator<Row> rows(int n) {
+                throw new UnsupportedOperationException();
+            }
+
+            public JsonRpcCursor<Integer> numbers(final int n) {
+                return new JsonRpcCursor<Integer>() {
+                    private int i;
+
+                    public boolean hasNext() {
+                        return i < n;
+                    }
+
+                    public Integer next() {
+                        if (i == 1) {
+                            started.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return i++;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    public void close() {
+                        closed[0] = true;
+                    }
+                };
+            }
+        };
+        executor.addHandler("rows", slow, Rows.class);
+        final String[] answer = new String[1];
+        Thread caller = new Thread() {
+            public void run() {
+                answer[0] = stream(executor, "{\"id\":1,\"method\":\"rows.numbers\",\"params\":[3]}", 64);
+            }
+        };
+        caller.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // the handler returned, its cursor is still being streamed
+        assertTrue(executor.removeHandler("rows") == slow);
+        assertFalse(executor.awaitDrain(10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(executor.awaitDrain(5, TimeUnit.SECONDS));
+        assertTrue(closed[0]);
+        caller.join();
+        assertEquals(answer[0], "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[0,1,2]}");
+    }
+
+    @Test
+    public void testBulkVariantForBatch() {
+        String req = "[{\"id\":1,\"method\":\"users.getById\",\"params\":[1]},"
+                + "{\"id\":2,\"method\":\"calc.add\",\"params\":[1,2]},"
+                + "{\"id\":3,\"method\":\"users.getById\",\"params\":[-3]},"
+                + "{\"id\":4,\"method\":\"users.getById\",\"params\":[\"x\"]},"
+                + "{\"id\":5,\"method\":\"users.getById\",\"params\":[5]},"
+                + "{\"id\":6,\"method\":\"users.getById\",\"params\":[6,7]},"
+                + "{\"id\":7,\"method\":\"users.getById\",\"params\":[7],\"timeout\":0}]";
+
+        bulkSizes.clear();
+        String resp = call(req);
+        assertEquals(bulkSizes, Arrays.asList(3));
+        JsonArray responses = new JsonParser().parse(resp).getAsJsonArray();
+        assertEquals(responses.size(), 7);
+        for (int i = 0; i < responses.size(); i++) {
+            assertEquals(responses.get(i).getAsJsonObject().get("id").getAsInt(), i + 1);
+        }
+        assertEquals(responses.get(0).getAsJsonObject().getAsJsonObject("result").get("name").getAsString(), "user1");
+        assertEquals(responses.get(1).getAsJsonObject().get("result").getAsInt(), 3);
+        assertTrue(responses.get(2).getAsJsonObject().getAsJsonObject("error").get("message").getAsString()
+                .contains("negative id"));
+        assertEquals(responses.get(4).getAsJsonObject().getAsJsonObject("result").get("id").getAsInt(), 5);
+        assertEquals(responses.get(5).getAsJsonObject().getAsJsonObject("error").get("code").getAsInt(),
+                JsonRpcErrorCodes.METHOD_NOT_FOUND_ERROR_CODE);
+        assertEquals(responses.get(6).getAsJsonObject().getAsJsonObject("error").get("code").getAsInt(),
+                JsonRpcErrorCodes.DEADLINE_EXCEEDED_ERROR_CODE);
+
+        // the tree of a streamed batch goes through the variant the same way
+        bulkSizes.clear();
+        assertSameAnswer(stream(req), resp, req);
+        assertEquals(bulkSizes, Arrays.asList(3));
+
+        // lone calls don't
+        bulkSizes.clear();
+        call("[{\"id\":1,\"method\":\"users.getById\",\"params\":[1]}]");
+        call("{\"id\":1,\"method\":\"users.getById\",\"params\":[1]}");
+        assertTrue(bulkSizes.isEmpty());
+    }
+
+    @Test
+    public void testInvalidBulkVariants() {
+        JsonRpcExecutor executor = new JsonRpcExecutor();
+        Object[] handlers = {
+                new Users() {
+                    public Row getById(int id) {
+                        return null;
+                    }
+
+                    @JsonRpcBulk("getByIds")
+                    public Object[] getByIds(Object[][] calls) {
+                        return calls;
+                    }
+                },
+                new Users() {
+                    public Row getById(int id) {
+                        return null;
+                    }
+
+                    @JsonRpcBulk("getById")
+                    public List<Object> getByIds(Object[][] calls) {
+                        return null;
+                    }
+                }
+        };
+        for (Object handler : handlers) {
+            try {
+                executor.replaceHandler("users", (Users) handler, Users.class);
+                fail("bulk variant should be refused");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private String stream(String requestData) {
+        return stream(requestData, 64);
+    }
+
+    /**
+     * @param chunk characters the request reader gives at most per read
+     */
+    private String stream(final String requestData, final int chunk) {
+        return stream(executor, requestData, chunk);
+    }
+
+    private String stream(JsonRpcExecutor executor, final String requestData, final int chunk) {
+        final StringWriter out = new StringWriter();
+        read = 0;
+        executor.execute(new JsonRpcStreamingServerTransport() {
+            public String readRequest() {
+                throw new AssertionError("request should be streamed");
+            }
+
+            public Reader openRequest() {
+                return new StringReader(requestData) {
+                    @Override
+                    public int read(char[] buff, int off, int len) throws IOException {
+                        int n = super.read(buff, off, Math.min(len, chunk));
+                        read += Math.max(n, 0);
+                        return n;
+                    }
+                };
+            }
+
+            public void writeResponse(String responseData) {
+                out.write(responseData);
+            }
+
+            public Writer openResponse() {
+                return out;
+            }
+        });
+        return out.toString();
+    }
+
+    private JsonObject execute(final String requestData) {
+        return new JsonParser().parse(call(requestData)).getAsJsonObject();
+    }
+
+    private String call(final String requestData) {
+        return call(executor, requestData);
+    }
+
+    private static String call(JsonRpcExecutor executor, final String requestData) {
+        final StringBuilder resultData = new StringBuilder();
+        executor.execute(new JsonRpcServerTransport() {
+            public String readRequest() throws Exception {
+                return requestData;
+            }
+
+            public void writeResponse(String responseData) throws Exception {
+                resultData.append(responseData);
+            }
+        });
+        return resultData.toString();
+    }
+
+    private JsonRpcClientTransport getTransport() {
+        return new JsonRpcClientTransport() {
+            public String call(String requestData) throws Exception {
+                return JsonRpcExecutorTest.this.call(requestData);
+            }
+        };
+    }
+
+    public static interface Budget {
+        long remaining();
+    }
+
+    public static interface Rows {
+        Iterator<Row> rows(int n);
+
+        JsonRpcCursor<Integer> numbers(int n);
+    }
+
+    public static interface Ingest {
+        int count(String tag, Iterator<Row> rows);
+    }
+
+    public static interface Calc {
+        int add(int a, int b);
+
+        double scale(double value, float factor);
+
+        String repeat(String s, short times, char separator);
+
+        boolean not(boolean b);
+
+        long big(long l);
+
+        void nothing();
+    }
+
+    public static interface Greeter {
+        String greet(String name);
+    }
+
+    public static interface Users {
+        Row getById(int id);
+    }
+
+    public static interface Ticker {
+        JsonRpcPublisher<Integer> watch();
+    }
+
+    public static class Row {
+        int id;
+        String name;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.json.rpc.commons.JsonRpcCopyStrategy;
+import org.json.rpc.commons.JsonRpcErrorCodes;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class JsonRpcSchedulerTest {
+
+    private JsonRpcExecutor executor;
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+    private CountDownLatch started;
+    private CountDownLatch gate;
+
+    @BeforeMethod
+    public void setup() {
+        ran.clear();
+        started = new CountDownLatch(1);
+        gate = new CountDownLatch(1);
+        executor = new JsonRpcExecutor();
+        executor.addHandler("work", new Work() {
+            public String lookup(String tag) {
+                return run(tag);
+            }
+
+            public String report(String tag) {
+                return run(tag);
+            }
+        }, Work.class);
+    }
+
+    private String run(String tag) {
+        ran.add(tag);
+        if ("block".equals(tag)) {
+            started.countDown();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return tag;
+    }
+
+    @Test
+    public void testHigherPriorityRunsFirst() throws Exception {
+        JsonRpcScheduler scheduler = newScheduler(1, 10);
+        scheduler.addClass("interactive", 10, 10);
+        scheduler.addClass("batch", -10, 10);
+        scheduler.setMethodClass("work.lookup", "interactive");
+        scheduler.setMethodClass("work.report", "batch");
+        scheduler.setCallerClass("bulk", "batch");
+
+        Call blocking = start(null, "report", "block");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Call report = start(null, "report", "r1");
+        awaitQueue(scheduler, "batch", 1);
+        Call lookup = start(null, "lookup", "l1");
+        awaitQueue(scheduler, "interactive", 1);
+        // a batch caller can't jump ahead with an interactive method
+        Call bulkLookup = start("bulk", "lookup", "l2");
+        awaitQueue(scheduler, "batch", 2);
+
+        gate.countDown();
+        for (Call call : Arrays.asList(blocking, report, lookup, bulkLookup)) {
+            call.join();
+            assertEquals(call.response.get("result").getAsString(), call.tag);
+        }
+        assertEquals(ran, Arrays.asList("block", "l1", "r1", "l2"));
+        assertEquals(scheduler.getAdmitted("interactive"), 1);
+        assertEquals(scheduler.getAdmitted("batch"), 3);
+        assertEquals(scheduler.getQueueLength("batch"), 0);
+        assertEquals(scheduler.getRunning(), 0);
+        assertTrue(scheduler.getMaxQueueWaitTime("batch") >= scheduler.getMaxQueueWaitTime("interactive"));
+        assertTrue(scheduler.getQueueWaitTime("batch") >= scheduler.getMaxQueueWaitTime("batch"));
+    }
+
+    @Test
+    public void testTenantsShareByWeight() throws Exception {
+        JsonRpcScheduler scheduler = newScheduler(1, 10);
+        scheduler.setWeight("a", 3);
+
+        List<Call> calls = new ArrayList<Call>();
+        calls.add(start("x", "lookup", "block"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            calls.add(start("a", "lookup", "a" + i));
+            awaitQueue(scheduler, JsonRpcScheduler.DEFAULT_CLASS, i);
+        }
+        for (int i = 1; i <= 4; i++) {
+            calls.add(start("b", "lookup", "b" + i));
+            awaitQueue(scheduler, JsonRpcScheduler.DEFAULT_CLASS, 4 + i);
+        }
+
+        gate.countDown();
+        for (Call call : calls) {
+            call.join();
+        }
+        assertEquals(ran.subList(0, 5), Arrays.asList("block", "a1", "b1", "a2", "a3"));
+        assertEquals(ran.size(), 9);
+    }
+
+    @Test
+    public void testFullQueueAndDeadlines() throws Exception {
+        JsonRpcScheduler scheduler = newScheduler(1, 1);
+
+        Call blocking = start(null, "lookup", "block");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Call expiring = new Call(null, "{\"id\":1,\"method\":\"work.lookup\",\"params\":[\"late\"],\"timeout\":100}");
+        expiring.start();
+        awaitQueue(scheduler, JsonRpcScheduler.DEFAULT_CLASS, 1);
+
+        Call rejected = new Call(null, "{\"id\":2,\"method\":\"work.lookup\",\"params\":[\"over\"]}");
+        rejected.run();
+        assertEquals(getErrorCode(rejected), JsonRpcErrorCodes.OVERLOADED_ERROR_CODE);
+
+        expiring.join();
+        assertEquals(getErrorCode(expiring), JsonRpcErrorCodes.DEADLINE_EXCEEDED_ERROR_CODE);
+        assertEquals(scheduler.getExpired(JsonRpcScheduler.DEFAULT_CLASS), 1);
+        assertEquals(scheduler.getRejected(JsonRpcScheduler.DEFAULT_CLASS), 1);
+        assertEquals(scheduler.getQueueLength(JsonRpcScheduler.DEFAULT_CLASS), 0);
+
+        gate.countDown();
+        blocking.join();
+        assertEquals(ran, Arrays.asList("block"));
+
+        // the calls of a batch run in the slot of the first
+        Call batch = new Call(null, "[{\"id\":1,\"method\":\"work.lookup\",\"params\":[\"x\"]},"
+                + "{\"id\":2,\"method\":\"work.report\",\"params\":[\"y\"]}]");
+        batch.run();
+        assertEquals(scheduler.getAdmitted(JsonRpcScheduler.DEFAULT_CLASS), 3);
+        assertEquals(scheduler.getRunning(), 0);
+    }
+
+    @Test
+    public void testSlotHeldWhileResultRead() throws Exception {
+        JsonRpcScheduler scheduler = newScheduler(1, 10);
+        executor.addHandler("seq", new Sequence() {
+            public Iterator<String> tags(final String tag) {
+                return new Iterator<String>() {
+                    private int i;
+
+                    public boolean hasNext() {
+                        return i < 2;
+                    }
+
+                    public String next() {
+                        if (i++ == 1) {
+                            run("block");
+                        }
+                        return tag + i;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        }, Sequence.class);
+
+        Call reading = new Call(null, "{\"id\":1,\"method\":\"seq.tags\",\"params\":[\"t\"]}");
+        reading.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // the handler returned, its result is still being read
+        Call lookup = start(null, "lookup", "l1");
+        awaitQueue(scheduler, JsonRpcScheduler.DEFAULT_CLASS, 1);
+
+        gate.countDown();
+        reading.join();
+        lookup.join();
+        assertEquals(ran, Arrays.asList("block", "l1"));
+        assertEquals(reading.response.get("result").toString(), "[\"t1\",\"t2\"]");
+        assertEquals(scheduler.getRunning(), 0);
+    }
+
+    @Test
+    public void testNestedCallRunsInSlotOfCaller() throws Exception {
+        JsonRpcScheduler scheduler = newScheduler(1, 10);
+        executor.addHandler("outer", new Work() {
+            public String lookup(String tag) {
+                return "outer " + executor.invoke("work.lookup", new Object[]{tag}, JsonRpcCopyStrategy.PASS_THROUGH);
+            }
+
+            public String report(String tag) {
+                return lookup(tag);
+            }
+        }, Work.class);
+
+        Call call = new Call(null, "{\"id\":1,\"method\":\"outer.lookup\",\"params\":[\"x\"]}");
+        call.start();
+        call.join(5000);
+        assertFalse(call.isAlive(), "nested call should not wait for a slot of its own");
+        assertEquals(call.response.get("result").getAsString(), "outer x");
+        assertEquals(scheduler.getAdmitted(JsonRpcScheduler.DEFAULT_CLASS), 2);
+        assertEquals(scheduler.getRunning(), 0);
+    }
+
+    private JsonRpcScheduler newScheduler(int workers, int maxQueue) {
+        JsonRpcScheduler scheduler = new JsonRpcScheduler(workers, maxQueue);
+        scheduler.setCallerResolver(new JsonRpcScheduler.CallerResolver() {
+            public String getCaller(JsonRpcServerTransport transport) {
+                return ((Call) transport).caller;
+            }
+        });
+        executor.setScheduler(scheduler);
+        return scheduler;
+    }
+
+    private Call start(String caller, String method, String tag) {
+        Call call = new Call(caller, "{\"id\":1,\"method\":\"work." + method + "\",\"params\":[\"" + tag + "\"]}");
+        call.tag = tag;
+        call.start();
+        return call;
+    }
+
+    private void awaitQueue(JsonRpcScheduler scheduler, String className, int length) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getQueueLength(className) < length) {
+            assertTrue(System.currentTimeMillis() < deadline, "queue of " + className + " should reach " + length);
+            Thread.sleep(1);
+        }
+    }
+
+    private int getErrorCode(Call call) {
+        return call.response.getAsJsonObject("error").get("code").getAsInt();
+    }
+
+    private final class Call extends Thread implements JsonRpcServerTransport {
+
+        private final String caller;
+        private final String requestData;
+        private String tag;
+        private volatile JsonObject response;
+
+        Call(String caller, String requestData) {
+            this.caller = caller;
+            this.requestData = requestData;
+        }
+
+        @Override
+        public void run() {
+            executor.execute(this);
+        }
+
+        public String readRequest() {
+            return requestData;
+        }
+
+        public void writeResponse(String responseData) {
+            if (responseData.startsWith("[")) {
+                return;
+            }
+            response = new JsonParser().parse(responseData).getAsJsonObject();
+        }
+    }
+
+    public static interface Sequence {
+        Iterator<String> tags(String tag);
+    }
+
+    public static interface Work {
+        String lookup(String tag);
+
+        String report(String tag);
+    }
+}
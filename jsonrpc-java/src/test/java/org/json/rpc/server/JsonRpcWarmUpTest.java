@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.json.rpc.server;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class JsonRpcWarmUpTest {
+
+    private int calls;
+
+    private JsonRpcExecutor newExecutor() {
+        calls = 0;
+        JsonRpcExecutor executor = new JsonRpcExecutor();
+        executor.addHandler("shop", new Shop() {
+            public Order place(Order order, int quantity) {
+                calls++;
+                order.quantity = quantity;
+                return order;
+            }
+
+            public Iterator<Order> orders(String customer) {
+                calls++;
+                return new ArrayList<Order>().iterator();
+            }
+
+            public int count(Iterator<Order> orders) {
+                calls++;
+                int n = 0;
+                while (orders.hasNext()) {
+                    orders.next();
+                    n++;
+                }
+                return n;
+            }
+
+            public void cancel(long id, Status status) {
+                calls++;
+            }
+        }, Shop.class);
+        return executor;
+    }
+
+    @Test
+    public void testStubsLeaveHandlersAlone() {
+        JsonRpcExecutor executor = newExecutor();
+        JsonRpcWarmUp warmUp = new JsonRpcWarmUp(executor);
+        warmUp.setLimits(20, 60000);
+        assertFalse(warmUp.isReady());
+
+        warmUp.run();
+        assertTrue(warmUp.isReady());
+        assertEquals(calls, 0);
+        assertEquals(warmUp.getExecuted(), 20 * 2 * 4);
+        assertTrue(warmUp.getWarmUpTime() >= 0);
+    }
+
+    @Test
+    public void testStubsShareTablesOfHandlers() {
+        JsonRpcExecutor executor = newExecutor();
+        JsonRpcExecutor stubExecutor = new JsonRpcWarmUp(executor).newStubExecutor(executor.getRegistry());
+
+        HandleEntry<?> real = executor.getRegistry().get("shop");
+        HandleEntry<?> stub = stubExecutor.getRegistry().get("shop");
+        assertTrue(stub.getHandler() != real.getHandler());
+        assertTrue(stub.getDispatchers() == real.getDispatchers());
+        assertEquals(stub.getMethods(), real.getMethods());
+    }
+
+    @Test
+    public void testRecordedRequestsAgainstHandlers() {
+        JsonRpcExecutor executor = newExecutor();
+        JsonRpcWarmUp warmUp = new JsonRpcWarmUp(executor);
+        warmUp.setLimits(10, 60000);
+        warmUp.setStubs(false);
+        warmUp.addRequest("{\"id\":1,\"method\":\"shop.place\",\"params\":[{\"item\":\"pen\"},3]}");
+
+        warmUp.run();
+        assertEquals(calls, 20);
+        assertEquals(warmUp.getExecuted(), 20);
+    }
+
+    @Test
+    public void testMaxTime() {
+        JsonRpcWarmUp warmUp = new JsonRpcWarmUp(newExecutor());
+        warmUp.setLimits(1000, 0);
+        warmUp.run();
+        assertTrue(warmUp.isReady());
+        assertEquals(warmUp.getExecuted(), 0);
+    }
+
+    public static interface Shop {
+        Order place(Order order, int quantity);
+
+        Iterator<Order> orders(String customer);
+
+        int count(Iterator<Order> orders);
+
+        void cancel(long id, Status status);
+    }
+
+    public static class Order {
+        String item;
+        int quantity;
+        String[] notes;
+    }
+
+    public static enum Status {
+        LOST, RETURNED
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Response parsing cost on large responses, with and without date conversion.
+//
+// Run with: node jsonrpc-js/benchmark/parse.js [records...]
+var JsonRpc = require('../jsonrpc.js');
+
+var sizes = process.argv.slice(2).map(Number);
+if (!sizes.length)
+    sizes = [1000, 10000, 50000];
+
+function response(records) {
+    var result = [], base = Date.UTC(2011, 0, 1);
+    for (var i = 0; i < records; i++) {
+        result.push({
+            id:i,
+            name:'customer ' + i,
+            email:'customer' + i + '@example.com',
+            created:JsonRpc.dateToISO8601(new Date(base + i * 60000)),
+            updated:JsonRpc.dateToISO8601(new Date(base + i * 90000)),
+            tags:['retail', 'tier' + (i % 4), 'region' + (i % 7)],
+            amount:i * 1.25,
+            active:i % 3 != 0,
+            address:{street:i + ' Main Street', city:'Springfield', zip:String(10000 + i % 90000)}
+        });
+    }
+    return JSON.stringify({jsonrpc:'2.0', id:1, result:result});
+}
+
+//The parsing done before the reviver: eval, then a second walk converting the dates
+function legacyUpgrade(obj) {
+    var matches;
+    for (var key in obj) {
+        if (obj.hasOwnProperty(key)) {
+            if (typeof obj[key] == 'string') {
+                if ((matches = obj[key].match(/^(?:(\d\d\d\d)-(\d\d)(?:-(\d\d)(?:T(\d\d)(?::(\d\d)(?::(\d\d)(?:\.(\d+))?)?)?)?)?)$/))) {
+                    obj[key] = new Date(0);
+                    if (matches[1]) obj[key].setUTCFullYear(parseInt(matches[1]));
+                    if (matches[2]) obj[key].setUTCMonth(parseInt(matches[2] - 1));
+                    if (matches[3]) obj[key].setUTCDate(parseInt(matches[3]));
+                    if (matches[4]) obj[key].setUTCHours(parseInt(matches[4]));
+                    if (matches[5]) obj[key].setUTCMinutes(parseInt(matches[5]));
+                    if (matches[6]) obj[key].setUTCMilliseconds(parseInt(matches[6]));
+                }
+                else if (matches = obj[key].match(/^@(\d+)@$/))
+                    obj[key] = new Date(parseInt(matches[1]));
+                else if (matches = obj[key].match(/^\/Date\((\d+)\)\/$/))
+                    obj[key] = new Date(parseInt(matches[1]));
+            }
+            else if (obj[key] instanceof Object) {
+                if (obj[key].__jsonclass__ instanceof Array) {
+                    if (obj[key].__jsonclass__[0] == 'Date')
+                        obj[key] = new Date(obj[key].__jsonclass__[1][0]);
+                }
+                else legacyUpgrade(obj[key]);
+            }
+        }
+    }
+}
+
+var all = new JsonRpc.ServiceProxy('http://127.0.0.1/rpc', {methods:[]});
+var schema = new JsonRpc.ServiceProxy('http://127.0.0.1/rpc', {methods:[], dateFields:['created', 'updated']});
+
+var variants = {
+    'eval + walk (before)':function(json) {
+        var response = eval('(' + json + ')');
+        legacyUpgrade(response);
+        return response;
+    },
+    'JSON.parse reviver':function(json) {
+        return JSON.parse(json, function(key, value) {
+            return typeof value == 'string' ? JsonRpc.toDate(value, true) : value;
+        });
+    },
+    '__parseJSON':function(json) {
+        return all.__parseJSON(json);
+    },
+    '__parseJSON, dateFields':function(json) {
+        return schema.__parseJSON(json);
+    },
+    'JSON.parse, no dates':function(json) {
+        return JSON.parse(json);
+    }
+};
+
+function measure(fn, json) {
+    //warm up, then run for about a second
+    var deadline = Date.now() + 300;
+    while (Date.now() < deadline)
+        fn(json);
+    var runs = 0, start = process.hrtime.bigint();
+    deadline = Date.now() + 1000;
+    while (Date.now() < deadline) {
+        fn(json);
+        runs++;
+    }
+    return Number(process.hrtime.bigint() - start) / 1e6 / runs;
+}
+
+console.log('node ' + process.version);
+sizes.forEach(function(records) {
+    var json = response(records);
+    console.log('\n' + records + ' records, ' + (json.length / 1048576).toFixed(1) + ' MB');
+    var baseline;
+    for (var name in variants) {
+        var ms = measure(variants[name], json);
+        if (baseline === undefined)
+            baseline = ms;
+        console.log('  ' + (name + '                         ').substring(0, 24)
+                + (ms.toFixed(2) + ' ms/op').padStart(14)
+                + ((json.length / 1048576 / ms * 1000).toFixed(0) + ' MB/s').padStart(12)
+                + ((baseline / ms).toFixed(2) + 'x').padStart(9));
+    }
+});
@@ -36,7 +36,7 @@ JsonRpc.ServiceProxy = function (serviceUrl, options) {
     this.__isCrossSite = false;
 
     var urlParts = this.__serviceURL.match(/^(\w+:)\/\/([^\/]+?)(?::(\d+))?(?:$|\/)/);
-    if (urlParts) {
+    if (urlParts && typeof location != 'undefined') {
         this.__isCrossSite = (
                 location.protocol != urlParts[1] ||
                         document.domain != urlParts[2] ||
@@ -55,6 +55,10 @@ JsonRpc.ServiceProxy = function (serviceUrl, options) {
     this.__authPassword = null;
     this.__dateEncoding = 'ISO8601'; // ("@timestamp@" || "@ticks@") || "classHinting" || "ASP.NET"
     this.__decodeISO8601 = true; //JSON only
+    this.__dateFields = null;
+    this.__isBatching = true;
+    this.__maxBatchSize = 100;
+    this.__queue = [];
 
     //Get the provided options
     if (options instanceof Object) {
@@ -69,22 +73,46 @@ JsonRpc.ServiceProxy = function (serviceUrl, options) {
             this.__dateEncoding = options.dateEncoding;
         if (options.decodeISO8601 != undefined)
             this.__decodeISO8601 = !!options.decodeISO8601;
+        if (options.dateFields != undefined)
+            this.__dateFields = options.dateFields;
+        if (options.batch != undefined)
+            this.__isBatching = !!options.batch;
+        if (options.maxBatchSize != undefined)
+            this.__maxBatchSize = options.maxBatchSize;
         providedMethodList = options.methods;
     }
 
-    // Obtain the list of methods made available by the server
+    // Obtain the list of methods made available by the server. A list cached by an
+    //   earlier page load is used right away and checked in the background against
+    //   the server's version; without one, stubs are made on first use.
+    var isLazy = false;
     if (providedMethodList) {
         this.__methodList = providedMethodList;
     } else {
-        var async = this.__isAsynchronous;
-        this.__isAsynchronous = false;
-        this.__methodList = this.__callMethod("system.listMethods", []);
-        this.__isAsynchronous = async;
+        var cached = JsonRpc.methodCache.load(this.__serviceURL);
+        if (cached) {
+            this.__methodList = cached.methods;
+            this.__refreshMethods(cached.version);
+        } else if (typeof Proxy != 'undefined') {
+            this.__methodList = [];
+            this.__refreshMethods(null);
+            isLazy = true;
+        } else {
+            var async = this.__isAsynchronous;
+            this.__isAsynchronous = false;
+            this.__methodList = this.__callMethod("system.listMethods", []);
+            this.__isAsynchronous = async;
+        }
     }
     this.__methodList.push("system.listMethods");
+    if (isLazy)
+        return JsonRpc.lazyProxy(this);
+    this.__addMethods(this.__methodList);
+};
 
-    //Create local "wrapper" functions which reference the methods obtained above
-    for (var methodName, i = 0; methodName = this.__methodList[i]; i++) {
+//Create local "wrapper" functions which reference the methods of the list
+JsonRpc.ServiceProxy.prototype.__addMethods = function(methodList) {
+    for (var methodName, i = 0; methodName = methodList[i]; i++) {
         //Make available the received methods in the form of chained property lists (eg. "parent.child.methodName")
         var methodObject = this;
         var propChain = methodName.split(/\./);
@@ -93,35 +121,106 @@ JsonRpc.ServiceProxy = function (serviceUrl, options) {
                 methodObject[propChain[j]] = {};
             methodObject = methodObject[propChain[j]];
         }
+        methodObject[propChain[propChain.length - 1]] = this.__createWrapper(methodName);
+    }
+};
 
-        //Create a wrapper to this.__callMethod with this instance and this methodName bound
-        var wrapper = (function(instance, methodName) {
-            var call = {instance:instance, methodName:methodName}; //Pass parameters into closure
-            return function() {
-                if (call.instance.__isAsynchronous) {
-                    if (arguments.length == 1 && arguments[0] instanceof Object) {
-                        call.instance.__callMethod(call.methodName,
-                                arguments[0].params,
-                                arguments[0].onSuccess,
-                                arguments[0].onException,
-                                arguments[0].onComplete);
-                    }
-                    else {
-                        call.instance.__callMethod(call.methodName,
-                                arguments[0],
-                                arguments[1],
-                                arguments[2],
-                                arguments[3]);
-                    }
-                    return undefined;
-                }
-                else return call.instance.__callMethod(call.methodName, JsonRpc.toArray(arguments));
-            };
-        })(this, methodName);
-        methodObject[propChain[propChain.length - 1]] = wrapper;
+//Create a wrapper to this.__callMethod with this instance and this methodName bound
+JsonRpc.ServiceProxy.prototype.__createWrapper = function(methodName) {
+    var call = {instance:this, methodName:methodName}; //Pass parameters into closure
+    return function() {
+        if (call.instance.__isAsynchronous) {
+            if (arguments.length == 1 && arguments[0] instanceof Object) {
+                call.instance.__callMethod(call.methodName,
+                        arguments[0].params,
+                        arguments[0].onSuccess,
+                        arguments[0].onException,
+                        arguments[0].onComplete);
+            }
+            else {
+                call.instance.__callMethod(call.methodName,
+                        arguments[0],
+                        arguments[1],
+                        arguments[2],
+                        arguments[3]);
+            }
+            return undefined;
+        }
+        else return call.instance.__callMethod(call.methodName, JsonRpc.toArray(arguments));
+    };
+};
+
+//Asks the server for the version of its method list, batched with the first calls of the page,
+//   and fetches the list itself only when the version differs from the cached one
+JsonRpc.ServiceProxy.prototype.__refreshMethods = function(cachedVersion) {
+    var instance = this, version, methods;
+    var ignore = function() {
+        return true; //servers predating system.methodsVersion keep the list uncached
+    };
+    var store = function() {
+        if (version === undefined || methods === undefined)
+            return;
+        JsonRpc.methodCache.store(instance.__serviceURL, {version:version, methods:methods});
+        instance.__methodList = methods;
+        instance.__addMethods(methods);
+    };
+
+    this.__callAsync("system.methodsVersion", function(result) {
+        version = result;
+        if (cachedVersion === null)
+            store();
+        else if (version != cachedVersion) {
+            instance.__callAsync("system.listMethods", function(result) {
+                methods = result;
+                store();
+            }, ignore);
+        }
+    }, ignore);
+    if (cachedVersion === null) {
+        this.__callAsync("system.listMethods", function(result) {
+            methods = result;
+            store();
+        }, ignore);
+    }
+};
+
+JsonRpc.ServiceProxy.prototype.__callAsync = function(methodName, successHandler, exceptionHandler) {
+    var async = this.__isAsynchronous;
+    this.__isAsynchronous = true;
+    try {
+        this.__callMethod(methodName, [], successHandler, exceptionHandler);
+    } finally {
+        this.__isAsynchronous = async;
     }
 };
 
+//Wraps a service proxy whose methods are not known yet: any property chain it does not have
+//   (eg. "parent.child.methodName") resolves to a stub calling the method of that name
+JsonRpc.lazyProxy = function(instance) {
+    var isStubbed = function(prop) {
+        //symbols and "then" are looked up by runtimes and promise resolution, not callers
+        return typeof prop == 'string' && prop != 'then';
+    };
+    var stub = function(methodName) {
+        return new Proxy(function() {
+        }, {
+            get:function(target, prop) {
+                return isStubbed(prop) ? stub(methodName + '.' + prop) : undefined;
+            },
+            apply:function(target, self, args) {
+                return instance.__createWrapper(methodName).apply(self, args);
+            }
+        });
+    };
+    return new Proxy(instance, {
+        get:function(target, prop) {
+            if (prop in target || !isStubbed(prop))
+                return target[prop];
+            return stub(prop);
+        }
+    });
+};
+
 JsonRpc.setAsynchronous = function(serviceProxy, isAsynchronous) {
     serviceProxy.__isAsynchronous = !!isAsynchronous;
 };
@@ -155,9 +254,10 @@ JsonRpc.ServiceProxy.prototype.__callMethod = function(methodName, params, succe
         if (params && (!(params instanceof Object) || params instanceof Date)) //JSON-RPC 1.1 allows params to be a hash not just an array
             throw Error('When making asynchronous calls, the parameters for the method must be passed as an array (or a hash); the value you supplied (' + String(params) + ') is of type "' + typeof(params) + '".');
 
-        //Prepare the XML-RPC request
+        //Prepare the JSON-RPC request
         var request,postData;
         request = {
+            jsonrpc:"2.0",
             version:"2.0",
             method:methodName,
             id:JsonRpc.requestCount
@@ -166,51 +266,26 @@ JsonRpc.ServiceProxy.prototype.__callMethod = function(methodName, params, succe
             request.params = params;
         postData = this.__toJSON(request);
 
-
-        //XMLHttpRequest chosen (over Ajax.Request) because it propogates uncaught exceptions
-        var xhr;
-        if (window.XMLHttpRequest)
-            xhr = new XMLHttpRequest();
-        else if (window.ActiveXObject) {
-            try {
-                xhr = new ActiveXObject('Msxml2.XMLHTTP');
-            } catch(err) {
-                xhr = new ActiveXObject('Microsoft.XMLHTTP');
-            }
-        }
-        xhr.open('POST', this.__serviceURL, this.__isAsynchronous, this.__authUsername, this.__authPassword);
-        xhr.setRequestHeader('Content-Type', 'application/json');
-        xhr.setRequestHeader('Accept', 'application/json');
-
         if (this.__isAsynchronous) {
-            //Send the request
-            xhr.send(postData);
-
-            //Handle the response
-            var instance = this;
-            var requestInfo = {id:JsonRpc.requestCount}; //for XML-RPC since the 'request' object cannot contain request ID
-            xhr.onreadystatechange = function() {
-                if (xhr.readyState == 4) {
-                    //XML-RPC
-                    var response = instance.__evalJSON(xhr.responseText, instance.__isResponseSanitized);
-                    if (!response.id)
-                        response.id = requestInfo.id;
-                    instance.__doCallback(response);
-                }
-            };
-
+            //Sent along with the other calls made in the same tick
+            this.__enqueue({id:request.id, data:postData});
             return undefined;
         } else {
+            //XMLHttpRequest chosen (over Ajax.Request) because it propogates uncaught exceptions
+            var xhr = JsonRpc.createXHR();
+            xhr.open('POST', this.__serviceURL, false, this.__authUsername, this.__authPassword);
+            xhr.setRequestHeader('Content-Type', 'application/json');
+            xhr.setRequestHeader('Accept', 'application/json');
+
             //Send the request
             xhr.send(postData);
             var response;
-            response = this.__evalJSON(xhr.responseText, this.__isResponseSanitized);
+            response = this.__parseJSON(xhr.responseText);
 
             //Note that this error must be caught with a try/catch block instead of by passing a onException callback
             if (response.error)
                 throw Error('Unable to call "' + methodName + '". Server responsed with error (code ' + response.error.code + '): ' + response.error.message);
 
-            this.__upgradeValuesFromJSON(response);
             return response.result;
         }
 
@@ -228,6 +303,124 @@ JsonRpc.ServiceProxy.prototype.__callMethod = function(methodName, params, succe
 };
 
 
+//Queues an asynchronous call; calls queued in the same tick go out as one batch request
+JsonRpc.ServiceProxy.prototype.__enqueue = function(call) {
+    this.__queue.push(call);
+    if (!this.__isBatching || this.__queue.length >= this.__maxBatchSize) {
+        this.__flush();
+    }
+    else if (this.__queue.length == 1) {
+        var instance = this;
+        JsonRpc.defer(function() {
+            instance.__flush();
+        });
+    }
+};
+
+JsonRpc.ServiceProxy.prototype.__flush = function() {
+    var calls = this.__queue;
+    if (!calls.length)
+        return;
+    this.__queue = [];
+
+    var ids = [], data = [];
+    for (var i = 0; i < calls.length; i++) {
+        ids.push(calls[i].id);
+        data.push(calls[i].data);
+    }
+    //A single call is sent as a plain request, understood by servers without batch support
+    var postData = (data.length == 1 ? data[0] : '[' + data.join(',') + ']');
+
+    var instance = this;
+    this.__post(postData, function(responseText, err) {
+        instance.__dispatch(ids, responseText, err);
+    });
+};
+
+//Sends the request with fetch where available, which reuses connections, falling back to XMLHttpRequest
+JsonRpc.ServiceProxy.prototype.__post = function(postData, callback) {
+    if (typeof fetch == 'function') {
+        var headers = {'Content-Type':'application/json', 'Accept':'application/json'};
+        if (this.__authUsername != null)
+            headers['Authorization'] = 'Basic ' + btoa(this.__authUsername + ':' + (this.__authPassword || ''));
+        fetch(this.__serviceURL, {
+            method:'POST',
+            headers:headers,
+            body:postData,
+            credentials:'same-origin',
+            //lets calls complete while the page unloads, browsers only allow it for small bodies
+            keepalive:postData.length <= JsonRpc.KEEPALIVE_LIMIT
+        }).then(function(response) {
+            return response.text();
+        }).then(function(responseText) {
+            callback(responseText);
+        }, function(err) {
+            callback(null, err);
+        });
+        return;
+    }
+
+    var xhr = JsonRpc.createXHR(), url = this.__serviceURL;
+    xhr.open('POST', url, true, this.__authUsername, this.__authPassword);
+    xhr.setRequestHeader('Content-Type', 'application/json');
+    xhr.setRequestHeader('Accept', 'application/json');
+    xhr.onreadystatechange = function() {
+        if (xhr.readyState == 4) {
+            if (xhr.status == 0)
+                callback(null, new Error('Unable to reach ' + url));
+            else callback(xhr.responseText);
+        }
+    };
+    xhr.send(postData);
+};
+
+//Hands every response of a request to the callbacks of its call. Calls left without
+//   a response, because the request failed or the server skipped them, get an error.
+JsonRpc.ServiceProxy.prototype.__dispatch = function(ids, responseText, err) {
+    var responses = [], i;
+    if (!err) {
+        try {
+            var parsed = this.__parseJSON(responseText);
+            if (parsed instanceof Array)
+                responses = parsed;
+            else if (parsed && parsed.id)
+                responses = [parsed];
+            else if (parsed) { //batch rejected as a whole, e.g. a parse error
+                for (i = 0; i < ids.length; i++)
+                    responses.push({id:ids[i], result:parsed.result, error:parsed.error});
+            }
+        }
+        catch(e) {
+            err = e;
+        }
+    }
+
+    var uncaughtExceptions = [];
+    for (i = 0; i < responses.length; i++) {
+        try {
+            this.__doCallback(responses[i]);
+        }
+        catch(e) {
+            uncaughtExceptions.push(e);
+        }
+    }
+    for (i = 0; i < ids.length; i++) {
+        if (JsonRpc.pendingRequests[ids[i]]) {
+            try {
+                this.__doCallback({id:ids[i], error:{message:err ? err.message : 'No response received'}});
+            }
+            catch(e) {
+                uncaughtExceptions.push(e);
+            }
+        }
+    }
+
+    //Rethrown outside of the response handling so the other calls are not affected
+    for (i = 0; i < uncaughtExceptions.length; i++)
+        JsonRpc.rethrow(uncaughtExceptions[i]);
+};
+
+
 //This acts as a lookup table for the response callback to execute the user-defined
 //   callbacks and to clean up after a request
 JsonRpc.pendingRequests = {};
@@ -277,13 +470,6 @@ JsonRpc.ServiceProxy.prototype.__doCallback = function(response) {
 
     //Process the valid result
     else if (response.result !== undefined) {
-        //iterate over all values and substitute date strings with Date objects
-        //Note that response.result is not passed because the values contained
-        //  need to be modified by reference, and the only way to do so is
-        //  but accessing an object's properties. Thus an extra level of
-        //  abstraction allows for accessing all of the results members by reference.
-        this.__upgradeValuesFromJSON(response);
-
         if (JsonRpc.pendingRequests[response.id].onSuccess) {
             try {
                 JsonRpc.pendingRequests[response.id].onSuccess(response.result);
@@ -445,50 +631,110 @@ JsonRpc.ServiceProxy.prototype.__evalJSON = function(json, sanitize) { //from Pr
     throw new SyntaxError('Badly formed JSON string: ' + json + " ... " + (err ? err.message : ''));
 };
 
+//Parses a response and converts its date values. Native JSON.parse is used where available,
+//   followed by one pass over the values: a JSON.parse reviver would do it while parsing,
+//   but calling it for every value costs more than the whole pass (see benchmark/parse.js).
+JsonRpc.ServiceProxy.prototype.__parseJSON = function(json) {
+    var response;
+    if (typeof JSON == 'undefined')
+        response = this.__evalJSON(json, this.__isResponseSanitized);
+    else {
+        //Remove security comment delimiters
+        json = json.replace(/^\/\*-secure-([\s\S]*)\*\/\s*$/, "$1");
+        try {
+            response = JSON.parse(json);
+        }
+        catch(err) {
+            throw new SyntaxError('Badly formed JSON string: ' + json + " ... " + err.message);
+        }
+    }
+    var holder = {response:response};
+    this.__upgradeValuesFromJSON(holder);
+    return holder.response;
+};
+
 //This function iterates over the properties of the passed object and converts them
 //   into more appropriate data types, i.e. ISO8601 strings are converted to Date objects.
+//   With the dateFields option only the members of those names are converted.
 JsonRpc.ServiceProxy.prototype.__upgradeValuesFromJSON = function(obj) {
-    var matches, useHasOwn = {}.hasOwnProperty ? true : false;
+    var fields = null;
+    if (this.__dateFields) {
+        fields = {};
+        for (var i = 0; i < this.__dateFields.length; i++)
+            fields[this.__dateFields[i]] = true;
+    }
+    JsonRpc.upgradeValues(obj, fields, this.__decodeISO8601, !fields);
+};
+
+//isListed tells whether the elements of an array may be dates, they have no name of their own
+JsonRpc.upgradeValues = function(obj, fields, decodeISO8601, isListed) {
+    var hasOwn = Object.prototype.hasOwnProperty, value, upgraded;
+    if (obj instanceof Array) {
+        for (var i = 0; i < obj.length; i++) {
+            value = obj[i];
+            upgraded = JsonRpc.upgradeValue(value, fields, decodeISO8601, isListed);
+            if (upgraded !== value)
+                obj[i] = upgraded;
+        }
+        return;
+    }
     for (var key in obj) {
-        if (!useHasOwn || obj.hasOwnProperty(key)) {
-            //Parse date strings
-            if (typeof obj[key] == 'string') {
-                //ISO8601
-                if (this.__decodeISO8601 && (matches = obj[key].match(/^(?:(\d\d\d\d)-(\d\d)(?:-(\d\d)(?:T(\d\d)(?::(\d\d)(?::(\d\d)(?:\.(\d+))?)?)?)?)?)$/))) {
-                    obj[key] = new Date(0);
-                    if (matches[1]) obj[key].setUTCFullYear(parseInt(matches[1]));
-                    if (matches[2]) obj[key].setUTCMonth(parseInt(matches[2] - 1));
-                    if (matches[3]) obj[key].setUTCDate(parseInt(matches[3]));
-                    if (matches[4]) obj[key].setUTCHours(parseInt(matches[4]));
-                    if (matches[5]) obj[key].setUTCMinutes(parseInt(matches[5]));
-                    if (matches[6]) obj[key].setUTCMilliseconds(parseInt(matches[6]));
-                }
-                //@timestamp@ / @ticks@
-                else if (matches = obj[key].match(/^@(\d+)@$/)) {
-                    obj[key] = new Date(parseInt(matches[1]))
-                }
-                //ASP.NET
-                else if (matches = obj[key].match(/^\/Date\((\d+)\)\/$/)) {
-                    obj[key] = new Date(parseInt(matches[1]))
-                }
-            }
-            else if (obj[key] instanceof Object) {
-
-                //JSON 1.0 Class Hinting: {"__jsonclass__":["constructor", [param1,...]], "prop1": ...}
-                if (obj[key].__jsonclass__ instanceof Array) {
-                    //console.info('good1');
-                    if (obj[key].__jsonclass__[0] == 'Date') {
-                        //console.info('good2');
-                        if (obj[key].__jsonclass__[1] instanceof Array && obj[key].__jsonclass__[1][0])
-                            obj[key] = new Date(obj[key].__jsonclass__[1][0]);
-                        else
-                            obj[key] = new Date();
-                    }
-                }
-                else this.__upgradeValuesFromJSON(obj[key]);
-            }
+        if (hasOwn.call(obj, key)) {
+            value = obj[key];
+            upgraded = JsonRpc.upgradeValue(value, fields, decodeISO8601, !fields || hasOwn.call(fields, key));
+            if (upgraded !== value)
+                obj[key] = upgraded;
+        }
+    }
+};
+
+JsonRpc.upgradeValue = function(value, fields, decodeISO8601, isListed) {
+    if (typeof value == 'string')
+        return isListed ? JsonRpc.toDate(value, decodeISO8601) : value;
+    if (value !== null && typeof value == 'object') {
+        //JSON 1.0 Class Hinting: {"__jsonclass__":["constructor", [param1,...]], "prop1": ...}
+        if (isListed && value.__jsonclass__ instanceof Array)
+            return JsonRpc.hintedDate(value);
+        JsonRpc.upgradeValues(value, fields, decodeISO8601, isListed);
+    }
+    return value;
+};
+
+JsonRpc.ISO8601 = /^(?:(\d\d\d\d)-(\d\d)(?:-(\d\d)(?:T(\d\d)(?::(\d\d)(?::(\d\d)(?:\.(\d+))?)?)?)?)?)$/;
+
+//Returns the date a string encodes, or the string itself. The first character is checked
+//   before any regular expression, most strings are not dates.
+JsonRpc.toDate = function(value, decodeISO8601) {
+    var matches, c = value.charAt(0);
+    //ISO8601
+    if (c >= '0' && c <= '9') {
+        if (decodeISO8601 && value.charAt(4) == '-' && (matches = value.match(JsonRpc.ISO8601))) {
+            //one computation, setting the fields one by one normalizes the date every time
+            return new Date(Date.UTC(+matches[1], (+matches[2] || 1) - 1, +matches[3] || 1,
+                    +matches[4] || 0, +matches[5] || 0, +matches[6] || 0,
+                    matches[7] ? +(matches[7] + '00').substring(0, 3) : 0));
         }
     }
+    //@timestamp@ / @ticks@
+    else if (c == '@') {
+        if (matches = value.match(/^@(\d+)@$/))
+            return new Date(parseInt(matches[1], 10));
+    }
+    //ASP.NET
+    else if (c == '/') {
+        if (matches = value.match(/^\/Date\((\d+)\)\/$/))
+            return new Date(parseInt(matches[1], 10));
+    }
+    return value;
+};
+
+//Returns the date of a class hinted object, or the object itself when it is not a date
+JsonRpc.hintedDate = function(value) {
+    if (value.__jsonclass__[0] != 'Date')
+        return value;
+    if (value.__jsonclass__[1] instanceof Array && value.__jsonclass__[1][0])
+        return new Date(value.__jsonclass__[1][0]);
+    return new Date();
 };
 
 
@@ -535,6 +781,51 @@ JsonRpc.toQueryString = function(params) {
     return str;
 };
 
+//Largest request body sent with the fetch keepalive flag, browsers cap those at 64KB in total
+JsonRpc.KEEPALIVE_LIMIT = 16384;
+
+JsonRpc.createXHR = function() {
+    if (window.XMLHttpRequest)
+        return new XMLHttpRequest();
+    try {
+        return new ActiveXObject('Msxml2.XMLHTTP');
+    } catch(err) {
+        return new ActiveXObject('Microsoft.XMLHTTP');
+    }
+};
+
+//Runs fn once the code currently executing is done, after the calls it makes are queued
+JsonRpc.defer = function(fn) {
+    if (typeof Promise != 'undefined')
+        Promise.resolve().then(fn);
+    else setTimeout(fn, 0);
+};
+
+JsonRpc.rethrow = function(err) {
+    setTimeout(function() {
+        throw err;
+    }, 0);
+};
+
+//Method lists kept between page loads, keyed by service URL; may be replaced by an object
+//   with the same load and store functions
+JsonRpc.methodCache = {
+    load:function(serviceUrl) {
+        try {
+            var entry = localStorage.getItem('JsonRpc.methods ' + serviceUrl);
+            return entry ? JSON.parse(entry) : null;
+        } catch(err) { //no local storage, or it is disabled
+            return null;
+        }
+    },
+    store:function(serviceUrl, entry) {
+        try {
+            localStorage.setItem('JsonRpc.methods ' + serviceUrl, JSON.stringify(entry));
+        } catch(err) {
+        }
+    }
+};
+
 //Converts an iterateable value into an array; similar to Prototype's $A function
 JsonRpc.toArray = function(value) {
     //if(value && value.length){
@@ -571,3 +862,6 @@ JsonRpc.zeroPad = function(value, width) {
         value = '0' + value;
     return value;
 };
+
+if (typeof module != 'undefined' && module.exports)
+    module.exports = JsonRpc;
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Run with: node --test jsonrpc-js/test/*.test.js
+var test = require('node:test');
+var assert = require('node:assert');
+var JsonRpc = require('../jsonrpc.js');
+var stub = require('./server.js');
+
+var server, received;
+
+function answer(request) {
+    if (request.method == 'echo.fail')
+        return {jsonrpc:'2.0', id:request.id, error:{code:-32000, message:'failed ' + request.params[0]}};
+    if (request.method == 'echo.skip')
+        return null;
+    return {jsonrpc:'2.0', id:request.id, result:request.params[0]};
+}
+
+test.before(function(t, done) {
+    stub.start(answer, function(s) {
+        server = s;
+        done();
+    });
+});
+
+test.after(function() {
+    server.close();
+});
+
+test.beforeEach(function() {
+    received = server.received = [];
+});
+
+function proxy(options) {
+    options = options || {};
+    options.methods = ['echo.echo', 'echo.fail', 'echo.skip'];
+    return new JsonRpc.ServiceProxy(server.url, options);
+}
+
+function call(method, value) {
+    return new Promise(function(resolve) {
+        method({
+            params:[value],
+            onSuccess:function(result) {
+                resolve({result:result});
+            },
+            onException:function(err) {
+                resolve({error:err});
+                return true;
+            }
+        });
+    });
+}
+
+test('calls made in the same tick are sent as one batch', async function() {
+    var service = proxy();
+    var results = await Promise.all([
+        call(service.echo.echo, 'a'),
+        call(service.echo.echo, 'b'),
+        call(service.echo.echo, 'c')
+    ]);
+    assert.deepStrictEqual(results.map(function(r) {
+        return r.result;
+    }), ['a', 'b', 'c']);
+    assert.strictEqual(received.length, 1);
+    assert.ok(received[0] instanceof Array);
+    assert.strictEqual(received[0].length, 3);
+});
+
+test('errors go to the failing call only', async function() {
+    var service = proxy();
+    var results = await Promise.all([
+        call(service.echo.echo, 'a'),
+        call(service.echo.fail, 'b')
+    ]);
+    assert.strictEqual(results[0].result, 'a');
+    assert.strictEqual(results[1].error.message, 'failed b');
+    assert.strictEqual(results[1].error.code, -32000);
+});
+
+test('calls without a response get an error', async function() {
+    var service = proxy();
+    var results = await Promise.all([
+        call(service.echo.skip, 'a'),
+        call(service.echo.echo, 'b')
+    ]);
+    assert.ok(results[0].error);
+    assert.strictEqual(results[1].result, 'b');
+});
+
+test('a single call is sent as a plain request', async function() {
+    var service = proxy();
+    assert.strictEqual((await call(service.echo.echo, 1)).result, 1);
+    assert.strictEqual((await call(service.echo.echo, 2)).result, 2);
+    assert.strictEqual(received.length, 2);
+    assert.ok(!(received[0] instanceof Array));
+});
+
+test('batches are split at maxBatchSize', async function() {
+    var service = proxy({maxBatchSize:2});
+    var calls = [];
+    for (var i = 0; i < 5; i++)
+        calls.push(call(service.echo.echo, i));
+    var results = await Promise.all(calls);
+    assert.deepStrictEqual(results.map(function(r) {
+        return r.result;
+    }), [0, 1, 2, 3, 4]);
+    assert.deepStrictEqual(received.map(function(r) {
+        return r instanceof Array ? r.length : 1;
+    }), [2, 2, 1]);
+});
+
+test('batching can be turned off', async function() {
+    var service = proxy({batch:false});
+    await Promise.all([call(service.echo.echo, 'a'), call(service.echo.echo, 'b')]);
+    assert.strictEqual(received.length, 2);
+});
+
+test('failed requests reach every call', async function() {
+    var service = new JsonRpc.ServiceProxy('http://127.0.0.1:1/rpc', {methods:['echo.echo']});
+    var results = await Promise.all([call(service.echo.echo, 'a'), call(service.echo.echo, 'b')]);
+    assert.ok(results[0].error);
+    assert.ok(results[1].error);
+});
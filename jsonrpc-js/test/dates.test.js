@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Run with: node --test jsonrpc-js/test/*.test.js
+var test = require('node:test');
+var assert = require('node:assert');
+var JsonRpc = require('../jsonrpc.js');
+
+function parse(json, options) {
+    options = options || {};
+    options.methods = [];
+    return new JsonRpc.ServiceProxy('http://127.0.0.1/rpc', options).__parseJSON(json);
+}
+
+test('dates are converted while parsing', function() {
+    var date = new Date(Date.UTC(2011, 4, 17, 8, 30, 15, 250));
+    var result = parse(JSON.stringify({id:1, result:{
+        iso:JsonRpc.dateToISO8601(date),
+        ticks:'@' + date.valueOf() + '@',
+        aspnet:'/Date(' + date.valueOf() + ')/',
+        hinted:{__jsonclass__:['Date', [date.valueOf()]]},
+        nested:[{day:'2011-05-17'}],
+        text:'2011 was a year',
+        number:2011
+    }})).result;
+
+    assert.strictEqual(result.iso.valueOf(), date.valueOf());
+    assert.strictEqual(result.ticks.valueOf(), date.valueOf());
+    assert.strictEqual(result.aspnet.valueOf(), date.valueOf());
+    assert.strictEqual(result.hinted.valueOf(), date.valueOf());
+    assert.strictEqual(result.nested[0].day.valueOf(), Date.UTC(2011, 4, 17));
+    assert.strictEqual(result.text, '2011 was a year');
+    assert.strictEqual(result.number, 2011);
+});
+
+test('ISO8601 decoding can be turned off', function() {
+    var result = parse('{"id":1,"result":["2011-05-17","@0@"]}', {decodeISO8601:false}).result;
+    assert.strictEqual(result[0], '2011-05-17');
+    assert.ok(result[1] instanceof Date);
+});
+
+test('only the listed fields are converted', function() {
+    var result = parse('{"id":1,"result":{"created":"2011-05-17","code":"2011-05-17",'
+            + '"items":[{"created":"@0@","name":"@0@"}],"created_at":["@0@"]}}',
+            {dateFields:['created', 'created_at']}).result;
+    assert.ok(result.created instanceof Date);
+    assert.strictEqual(result.code, '2011-05-17');
+    assert.ok(result.items[0].created instanceof Date);
+    assert.strictEqual(result.items[0].name, '@0@');
+    assert.ok(result.created_at[0] instanceof Date);
+});
+
+test('responses are parsed without native JSON', function() {
+    var json = '{"id":1,"result":{"created":"2011-05-17T10:20:30.5","code":"2011-05-17"}}';
+    var service = new JsonRpc.ServiceProxy('http://127.0.0.1/rpc', {methods:[], dateFields:['created']});
+    var parsed = service.__parseJSON(json);
+    var nativeJSON = JSON;
+    try {
+        JSON = undefined;
+        assert.deepStrictEqual(service.__parseJSON(json), parsed);
+    } finally {
+        JSON = nativeJSON;
+    }
+    assert.strictEqual(parsed.result.created.getUTCMilliseconds(), 500);
+    assert.strictEqual(parsed.result.code, '2011-05-17');
+});
+
+test('malformed responses are reported', function() {
+    assert.throws(function() {
+        parse('{"id":1,');
+    }, SyntaxError);
+});
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Run with: node --test jsonrpc-js/test/*.test.js
+var test = require('node:test');
+var assert = require('node:assert');
+var JsonRpc = require('../jsonrpc.js');
+var stub = require('./server.js');
+
+var server, version, methods, cache;
+
+function answer(request) {
+    var result;
+    if (request.method == 'system.methodsVersion')
+        result = version;
+    else if (request.method == 'system.listMethods')
+        result = methods;
+    else result = request.method + ' ' + request.params[0];
+    return {jsonrpc:'2.0', id:request.id, result:result};
+}
+
+test.before(function(t, done) {
+    JsonRpc.methodCache = {
+        load:function(serviceUrl) {
+            return cache[serviceUrl] ? JSON.parse(cache[serviceUrl]) : null;
+        },
+        store:function(serviceUrl, entry) {
+            cache[serviceUrl] = JSON.stringify(entry);
+        }
+    };
+    stub.start(answer, function(s) {
+        server = s;
+        done();
+    });
+});
+
+test.after(function() {
+    server.close();
+});
+
+test.beforeEach(function() {
+    server.received = [];
+    cache = {};
+    version = 'v1';
+    methods = ['system.listMethods', 'echo.echo'];
+});
+
+function call(method, value) {
+    return new Promise(function(resolve, reject) {
+        method([value], resolve, function(err) {
+            reject(err);
+            return true;
+        });
+    });
+}
+
+test('methods are stubbed lazily without blocking on discovery', async function() {
+    var service = new JsonRpc.ServiceProxy(server.url);
+    assert.strictEqual(server.received.length, 0);
+
+    assert.strictEqual(await call(service.echo.echo, 'a'), 'echo.echo a');
+    assert.strictEqual(await call(service.any.nested.name, 'b'), 'any.nested.name b');
+
+    // discovery went out in the same request as the first call
+    assert.deepStrictEqual(stub.methods(server)[0],
+            ['system.methodsVersion', 'system.listMethods', 'echo.echo']);
+    assert.deepStrictEqual(JSON.parse(cache[server.url]), {version:'v1', methods:methods});
+});
+
+test('cached methods are used while their version is checked', async function() {
+    cache[server.url] = JSON.stringify({version:'v1', methods:methods});
+    var service = new JsonRpc.ServiceProxy(server.url);
+    assert.strictEqual(typeof service.echo.echo, 'function');
+    assert.strictEqual(service.other, undefined);
+
+    assert.strictEqual(await call(service.echo.echo, 'a'), 'echo.echo a');
+    assert.deepStrictEqual(stub.methods(server), [['system.methodsVersion', 'echo.echo']]);
+});
+
+test('a changed version fetches the list again', async function() {
+    cache[server.url] = JSON.stringify({version:'v0', methods:['echo.echo']});
+    version = 'v2';
+    methods = ['system.listMethods', 'echo.echo', 'echo.other'];
+    var service = new JsonRpc.ServiceProxy(server.url);
+
+    await call(service.echo.echo, 'a');
+    while (JSON.parse(cache[server.url]).version != 'v2')
+        await new Promise(function(resolve) {
+            setTimeout(resolve, 5);
+        });
+    assert.deepStrictEqual(stub.methods(server), [['system.methodsVersion', 'echo.echo'], ['system.listMethods']]);
+    assert.strictEqual(await call(service.echo.other, 'b'), 'echo.other b');
+});
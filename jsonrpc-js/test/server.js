@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2011 ritwik.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+var http = require('node:http');
+
+//Starts a JSON-RPC server on a free port answering requests with answer(request),
+//   a null answer leaves the request without response
+exports.start = function(answer, callback) {
+    var server = http.createServer(function(req, resp) {
+        var body = '';
+        req.on('data', function(chunk) {
+            body += chunk;
+        });
+        req.on('end', function() {
+            var request = JSON.parse(body), response;
+            server.received.push(request);
+            if (request instanceof Array)
+                response = request.map(answer).filter(function(r) {
+                    return r;
+                });
+            else response = answer(request);
+            resp.setHeader('Content-Type', 'application/json');
+            resp.end(JSON.stringify(response));
+        });
+    });
+    server.received = [];
+    server.listen(0, '127.0.0.1', function() {
+        server.url = 'http://127.0.0.1:' + server.address().port + '/rpc';
+        callback(server);
+    });
+    return server;
+};
+
+//Method names of the requests received, one list per HTTP request
+exports.methods = function(server) {
+    return server.received.map(function(request) {
+        return [].concat(request).map(function(r) {
+            return r.method;
+        });
+    });
+};